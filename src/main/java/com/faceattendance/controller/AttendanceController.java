@@ -2,7 +2,12 @@ package com.faceattendance.controller;
 
 import com.faceattendance.dto.AttendanceRequest;
 import com.faceattendance.dto.AttendanceResponse;
+import com.faceattendance.model.DroppedPunch;
+import com.faceattendance.model.OutboxMessage;
+import com.faceattendance.service.AttendanceJournal;
 import com.faceattendance.service.AttendanceService;
+import com.faceattendance.service.IdempotencyService;
+import com.faceattendance.service.PunchOutboxService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
@@ -14,6 +19,7 @@ import org.springframework.web.multipart.MultipartFile;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 @RestController
 @RequestMapping("/attendance")
@@ -23,14 +29,29 @@ public class AttendanceController {
     @Autowired
     private AttendanceService attendanceService;
 
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private PunchOutboxService punchOutboxService;
+
+    @Autowired
+    private AttendanceJournal attendanceJournal;
+
     /**
-     * Record attendance using face recognition
+     * Record attendance using face recognition; a retry with the same Idempotency-Key gets the original response
      */
     @PostMapping("/checkin")
-    public ResponseEntity<?> recordAttendance(@Valid @RequestBody AttendanceRequest request) {
+    public ResponseEntity<?> recordAttendance(@Valid @RequestBody AttendanceRequest request,
+                                              @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         try {
-            AttendanceResponse response = attendanceService.recordAttendance(request);
+            AttendanceResponse response = idempotencyService.execute("checkin", request.getTenantId(), idempotencyKey,
+                    () -> attendanceService.recordAttendance(request),
+                    request.getFaceImage(), request.isCheckOut(), request.getImagePath(), request.getNotes());
             return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        } catch (IdempotencyService.KeyReusedException e) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                    .body(new ErrorResponse("Idempotency key reused", e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .body(new ErrorResponse("Attendance recording failed", e.getMessage()));
@@ -41,10 +62,16 @@ public class AttendanceController {
      * Mark attendance using face recognition with image upload
      */
     @PostMapping("/mark")
-    public ResponseEntity<?> markAttendance(@RequestParam("image") MultipartFile image) {
+    public ResponseEntity<?> markAttendance(@RequestParam("image") MultipartFile image,
+                                            @RequestParam(required = false) String tenantId,
+                                            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         try {
-            AttendanceResponse response = attendanceService.recordAttendanceWithImage(image);
+            AttendanceResponse response = idempotencyService.execute("mark", tenantId, idempotencyKey,
+                    () -> attendanceService.recordAttendanceWithImage(image, tenantId), image);
             return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        } catch (IdempotencyService.KeyReusedException e) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                    .body(new ErrorResponse("Idempotency key reused", e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .body(new ErrorResponse("Attendance recording failed", e.getMessage()));
@@ -55,7 +82,8 @@ public class AttendanceController {
      * Mark attendance directly without face recognition (for local recognition success)
      */
     @PostMapping("/mark-direct")
-    public ResponseEntity<?> markAttendanceDirectly(@RequestBody Map<String, Object> request) {
+    public ResponseEntity<?> markAttendanceDirectly(@RequestBody Map<String, Object> request,
+                                                    @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         try {
             System.out.println("=== Direct Attendance Request ===");
             System.out.println("Employee ID: " + request.get("employeeId"));
@@ -66,8 +94,12 @@ public class AttendanceController {
             System.out.println("Confidence: " + request.get("confidence"));
             System.out.println("Source: " + request.get("source"));
 
-            AttendanceResponse response = attendanceService.recordAttendanceDirectly(request);
+            AttendanceResponse response = idempotencyService.execute("mark-direct", Objects.toString(request.get("tenantId"), null), idempotencyKey,
+                    () -> attendanceService.recordAttendanceDirectly(request), request);
             return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        } catch (IdempotencyService.KeyReusedException e) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                    .body(new ErrorResponse("Idempotency key reused", e.getMessage()));
         } catch (Exception e) {
             System.out.println("Direct attendance failed: " + e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
@@ -153,6 +185,48 @@ public class AttendanceController {
         }
     }
 
+    /**
+     * Punches the external MRR system never accepted, with their last error
+     */
+    @GetMapping("/outbox/dead-letters")
+    public ResponseEntity<?> getDeadLetters(@RequestParam(required = false) String tenantId) {
+        try {
+            List<OutboxMessage> deadLetters = punchOutboxService.getDeadLetters(tenantId);
+            return ResponseEntity.ok(deadLetters);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(new ErrorResponse("Failed to fetch dead letters", e.getMessage()));
+        }
+    }
+
+    /**
+     * Queue a dead-lettered punch for delivery again
+     */
+    @PostMapping("/outbox/{id}/retry")
+    public ResponseEntity<?> retryDeadLetter(@PathVariable String id) {
+        try {
+            OutboxMessage message = punchOutboxService.retry(id);
+            return ResponseEntity.ok(message);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(new ErrorResponse("Failed to retry outbox message", e.getMessage()));
+        }
+    }
+
+    /**
+     * Write-behind punches that were acknowledged but rejected when the journal was flushed
+     */
+    @GetMapping("/journal/dropped")
+    public ResponseEntity<?> getDroppedPunches(@RequestParam(required = false) String tenantId) {
+        try {
+            List<DroppedPunch> dropped = attendanceJournal.getDroppedPunches(tenantId);
+            return ResponseEntity.ok(dropped);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(new ErrorResponse("Failed to fetch dropped punches", e.getMessage()));
+        }
+    }
+
     /**
      * Health check endpoint
      */
@@ -2,6 +2,7 @@ package com.faceattendance.controller;
 
 import com.faceattendance.dto.EmployeeRegistrationRequest;
 import com.faceattendance.dto.EmployeeResponse;
+import com.faceattendance.dto.RecognitionCandidateResponse;
 import com.faceattendance.service.EmployeeService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,6 +18,8 @@ import java.util.List;
 @CrossOrigin(origins = "*")
 public class EmployeeController {
 
+    private static final int MAX_RECOGNITION_CANDIDATES = 50;
+
     @Autowired
     private EmployeeService employeeService;
 
@@ -119,6 +122,26 @@ public class EmployeeController {
         }
     }
 
+    /**
+     * Rank the employees most similar to a face image
+     */
+    @PostMapping("/recognize")
+    public ResponseEntity<?> recognizeTopCandidates(
+            @RequestParam("image") MultipartFile image,
+            @RequestParam(value = "tenantId", required = false) String tenantId,
+            @RequestParam(value = "k", defaultValue = "5") int k) {
+        try {
+            if (k < 1 || k > MAX_RECOGNITION_CANDIDATES) {
+                throw new RuntimeException("k must be between 1 and " + MAX_RECOGNITION_CANDIDATES);
+            }
+            List<RecognitionCandidateResponse> candidates = employeeService.recognizeTopCandidates(image, tenantId, k);
+            return ResponseEntity.ok(candidates);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(new ErrorResponse("Recognition failed", e.getMessage()));
+        }
+    }
+
     /**
      * Deactivate employee
      */
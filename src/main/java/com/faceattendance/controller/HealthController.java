@@ -1,5 +1,10 @@
 package com.faceattendance.controller;
 
+import com.faceattendance.service.AttendanceJournal;
+import com.faceattendance.service.FaceGalleryService;
+import com.faceattendance.service.FaceRecognitionService;
+import com.faceattendance.service.PunchOutboxService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -13,6 +18,18 @@ import java.util.Map;
 @RequestMapping("/health")
 public class HealthController {
 
+    @Autowired
+    private FaceGalleryService faceGalleryService;
+
+    @Autowired
+    private FaceRecognitionService faceRecognitionService;
+
+    @Autowired
+    private AttendanceJournal attendanceJournal;
+
+    @Autowired
+    private PunchOutboxService punchOutboxService;
+
     @GetMapping
     public ResponseEntity<Map<String, Object>> health() {
         Map<String, Object> response = new HashMap<>();
@@ -22,4 +39,21 @@ public class HealthController {
         response.put("version", "1.0.0");
         return ResponseEntity.ok(response);
     }
+
+    @GetMapping("/recognition")
+    public ResponseEntity<Map<String, Object>> recognition() {
+        Map<String, Object> response = new HashMap<>(faceGalleryService.getStats());
+        response.put("extraction", faceRecognitionService.getExtractionStats());
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/attendance-journal")
+    public ResponseEntity<Map<String, Object>> attendanceJournal() {
+        return ResponseEntity.ok(attendanceJournal.getStats());
+    }
+
+    @GetMapping("/outbox")
+    public ResponseEntity<Map<String, Object>> outbox() {
+        return ResponseEntity.ok(punchOutboxService.getStats());
+    }
 }
@@ -1,20 +1,23 @@
 package com.faceattendance.dto;
 
-import jakarta.validation.constraints.NotBlank;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import jakarta.validation.constraints.NotEmpty;
 
 public class AttendanceRequest {
 
-    @NotBlank(message = "Face image is required")
-    private String faceImage; // Base64 encoded image
+    @NotEmpty(message = "Face image is required")
+    @JsonDeserialize(using = Base64ImageDeserializer.class)
+    private byte[] faceImage; // Sent as Base64 (or a data URL), held decoded
 
     private String imagePath;
     private String notes;
     private boolean checkOut = false;
+    private String tenantId; // Recognise only this tenant's employees
 
     // Constructors
     public AttendanceRequest() {}
 
-    public AttendanceRequest(String faceImage, String imagePath, String notes, boolean checkOut) {
+    public AttendanceRequest(byte[] faceImage, String imagePath, String notes, boolean checkOut) {
         this.faceImage = faceImage;
         this.imagePath = imagePath;
         this.notes = notes;
@@ -22,11 +25,11 @@ public class AttendanceRequest {
     }
 
     // Getters and Setters
-    public String getFaceImage() {
+    public byte[] getFaceImage() {
         return faceImage;
     }
 
-    public void setFaceImage(String faceImage) {
+    public void setFaceImage(byte[] faceImage) {
         this.faceImage = faceImage;
     }
 
@@ -53,4 +56,12 @@ public class AttendanceRequest {
     public void setCheckOut(boolean checkOut) {
         this.checkOut = checkOut;
     }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public void setTenantId(String tenantId) {
+        this.tenantId = tenantId;
+    }
 }
@@ -0,0 +1,100 @@
+package com.faceattendance.dto;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Decodes a Base64 image field (optionally a data URL such as "data:image/jpeg;base64,...")
+ * straight from the parser's character buffer into bytes.
+ *
+ * No String is built for the field and the data-URL prefix is skipped by offset, so a request
+ * object holds only the decoded image.
+ */
+public class Base64ImageDeserializer extends JsonDeserializer<byte[]> {
+
+    private static final int[] VALUES = new int[128];
+
+    static {
+        Arrays.fill(VALUES, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            VALUES[alphabet.charAt(i)] = i;
+        }
+    }
+
+    @Override
+    public byte[] deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (parser.currentToken() != JsonToken.VALUE_STRING) {
+            return (byte[]) context.handleUnexpectedToken(byte[].class, parser);
+        }
+
+        char[] text = parser.getTextCharacters();
+        int from = parser.getTextOffset();
+        int to = from + parser.getTextLength();
+
+        // Base64 has no commas: anything up to the first one is a data-URL prefix
+        for (int i = from; i < to; i++) {
+            if (text[i] == ',') {
+                from = i + 1;
+                break;
+            }
+        }
+
+        byte[] image = decode(text, from, to);
+        if (image == null) {
+            throw JsonMappingException.from(parser, "Face image is not valid Base64");
+        }
+        return image;
+    }
+
+    /**
+     * Standard-alphabet Base64 with optional padding, or null if malformed
+     */
+    static byte[] decode(char[] text, int from, int to) {
+        int end = to;
+        while (end > from && to - end < 2 && text[end - 1] == '=') {
+            end--;
+        }
+        int length = end - from;
+        if (length % 4 == 1) {
+            return null;
+        }
+
+        byte[] out = new byte[length / 4 * 3 + Math.max(0, length % 4 - 1)];
+        int o = 0;
+        int i = from;
+        for (; i + 4 <= end; i += 4) {
+            int bits = value(text[i]) << 18 | value(text[i + 1]) << 12 | value(text[i + 2]) << 6 | value(text[i + 3]);
+            if (bits < 0) {
+                return null;
+            }
+            out[o++] = (byte) (bits >> 16);
+            out[o++] = (byte) (bits >> 8);
+            out[o++] = (byte) bits;
+        }
+
+        int remaining = end - i;
+        if (remaining > 0) {
+            int bits = value(text[i]) << 18 | value(text[i + 1]) << 12 | (remaining == 3 ? value(text[i + 2]) << 6 : 0);
+            if (bits < 0) {
+                return null;
+            }
+            out[o++] = (byte) (bits >> 16);
+            if (remaining == 3) {
+                out[o] = (byte) (bits >> 8);
+            }
+        }
+        return out;
+    }
+
+    private static int value(char c) {
+        // Any invalid character makes the combined bits negative
+        return c < VALUES.length ? VALUES[c] : -1;
+    }
+}
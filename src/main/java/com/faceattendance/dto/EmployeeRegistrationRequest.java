@@ -1,7 +1,9 @@
 package com.faceattendance.dto;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.Size;
 
 public class EmployeeRegistrationRequest {
@@ -23,14 +25,15 @@ public class EmployeeRegistrationRequest {
     private String department;
     private String position;
 
-    @NotBlank(message = "Face image is required")
-    private String faceImage; // Base64 encoded image
+    @NotEmpty(message = "Face image is required")
+    @JsonDeserialize(using = Base64ImageDeserializer.class)
+    private byte[] faceImage; // Sent as Base64 (or a data URL), held decoded
 
     // Constructors
     public EmployeeRegistrationRequest() {}
 
     public EmployeeRegistrationRequest(String tenantId, String name, String email, String employeeId,
-                                     String department, String position, String faceImage) {
+                                     String department, String position, byte[] faceImage) {
         this.tenantId = tenantId;
         this.name = name;
         this.email = email;
@@ -89,11 +92,11 @@ public class EmployeeRegistrationRequest {
         this.position = position;
     }
 
-    public String getFaceImage() {
+    public byte[] getFaceImage() {
         return faceImage;
     }
 
-    public void setFaceImage(String faceImage) {
+    public void setFaceImage(byte[] faceImage) {
         this.faceImage = faceImage;
     }
 }
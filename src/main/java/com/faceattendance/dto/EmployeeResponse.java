@@ -12,6 +12,7 @@ public class EmployeeResponse {
     private String position;
     private Boolean isActive;
     private String faceEncoding;
+    private byte[] faceTemplate;
     private Boolean hasFaceImage;
     private String externalId;
     private LocalDateTime createdAt;
@@ -119,6 +120,14 @@ public class EmployeeResponse {
         this.faceEncoding = faceEncoding;
     }
 
+    public byte[] getFaceTemplate() {
+        return faceTemplate;
+    }
+
+    public void setFaceTemplate(byte[] faceTemplate) {
+        this.faceTemplate = faceTemplate;
+    }
+
     public Boolean getHasFaceImage() {
         return hasFaceImage;
     }
@@ -0,0 +1,81 @@
+package com.faceattendance.dto;
+
+public class RecognitionCandidateResponse {
+
+    private int rank;
+    private double confidence;
+    private boolean aboveThreshold;
+    private String id;
+    private String employeeId;
+    private String name;
+    private String department;
+    private String position;
+
+    // Constructors
+    public RecognitionCandidateResponse() {}
+
+    // Getters and Setters
+    public int getRank() {
+        return rank;
+    }
+
+    public void setRank(int rank) {
+        this.rank = rank;
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    public void setConfidence(double confidence) {
+        this.confidence = confidence;
+    }
+
+    public boolean isAboveThreshold() {
+        return aboveThreshold;
+    }
+
+    public void setAboveThreshold(boolean aboveThreshold) {
+        this.aboveThreshold = aboveThreshold;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getEmployeeId() {
+        return employeeId;
+    }
+
+    public void setEmployeeId(String employeeId) {
+        this.employeeId = employeeId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getDepartment() {
+        return department;
+    }
+
+    public void setDepartment(String department) {
+        this.department = department;
+    }
+
+    public String getPosition() {
+        return position;
+    }
+
+    public void setPosition(String position) {
+        this.position = position;
+    }
+}
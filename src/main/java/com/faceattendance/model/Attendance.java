@@ -27,6 +27,9 @@ public class Attendance {
 
     private LocalDate attendanceDate;
 
+    // True until checked out; at most one open session per employee and day (unique partial index)
+    private Boolean open;
+
     private AttendanceStatus status;
 
     private Double confidenceScore;
@@ -37,6 +40,9 @@ public class Attendance {
 
     private String notes;
 
+    // Set on insert when the check-in is to be sent to the external MRR system; cleared once it is queued
+    private Boolean mrrPending;
+
     @CreatedDate
     private LocalDateTime createdAt;
 
@@ -101,6 +107,14 @@ public class Attendance {
         this.attendanceDate = attendanceDate;
     }
 
+    public Boolean getOpen() {
+        return open;
+    }
+
+    public void setOpen(Boolean open) {
+        this.open = open;
+    }
+
     public AttendanceStatus getStatus() {
         return status;
     }
@@ -141,6 +155,14 @@ public class Attendance {
         this.notes = notes;
     }
 
+    public Boolean getMrrPending() {
+        return mrrPending;
+    }
+
+    public void setMrrPending(Boolean mrrPending) {
+        this.mrrPending = mrrPending;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
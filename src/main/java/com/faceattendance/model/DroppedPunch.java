@@ -0,0 +1,119 @@
+package com.faceattendance.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * A write-behind punch that was acknowledged to the kiosk but rejected when its journal was
+ * flushed, kept so it can be reviewed and entered by hand.
+ */
+@Document(collection = "dropped_punches")
+public class DroppedPunch {
+
+    @Id
+    private String id;
+
+    private String tenantId;
+
+    // Id the session was journaled under; it was never written
+    private String attendanceId;
+
+    private String employeeId;
+
+    private LocalDate attendanceDate;
+
+    private boolean checkOut;
+
+    private LocalDateTime punchTime;
+
+    private String imagePath;
+
+    private String reason;
+
+    private LocalDateTime droppedAt;
+
+    public DroppedPunch() {}
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public void setTenantId(String tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    public String getAttendanceId() {
+        return attendanceId;
+    }
+
+    public void setAttendanceId(String attendanceId) {
+        this.attendanceId = attendanceId;
+    }
+
+    public String getEmployeeId() {
+        return employeeId;
+    }
+
+    public void setEmployeeId(String employeeId) {
+        this.employeeId = employeeId;
+    }
+
+    public LocalDate getAttendanceDate() {
+        return attendanceDate;
+    }
+
+    public void setAttendanceDate(LocalDate attendanceDate) {
+        this.attendanceDate = attendanceDate;
+    }
+
+    public boolean isCheckOut() {
+        return checkOut;
+    }
+
+    public void setCheckOut(boolean checkOut) {
+        this.checkOut = checkOut;
+    }
+
+    public LocalDateTime getPunchTime() {
+        return punchTime;
+    }
+
+    public void setPunchTime(LocalDateTime punchTime) {
+        this.punchTime = punchTime;
+    }
+
+    public String getImagePath() {
+        return imagePath;
+    }
+
+    public void setImagePath(String imagePath) {
+        this.imagePath = imagePath;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public void setReason(String reason) {
+        this.reason = reason;
+    }
+
+    public LocalDateTime getDroppedAt() {
+        return droppedAt;
+    }
+
+    public void setDroppedAt(LocalDateTime droppedAt) {
+        this.droppedAt = droppedAt;
+    }
+}
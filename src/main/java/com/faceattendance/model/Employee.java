@@ -38,7 +38,9 @@ public class Employee {
 
     private String position;
 
-    private String faceEncoding;
+    private String faceEncoding; // Legacy string encoding (read-only, kept for older records)
+
+    private byte[] faceTemplate; // Binary face template, stored as BSON binary
 
     private Boolean isActive = true;
 
@@ -138,6 +140,14 @@ public class Employee {
         this.faceEncoding = faceEncoding;
     }
 
+    public byte[] getFaceTemplate() {
+        return faceTemplate;
+    }
+
+    public void setFaceTemplate(byte[] faceTemplate) {
+        this.faceTemplate = faceTemplate;
+    }
+
 
 
     public Boolean getIsActive() {
@@ -0,0 +1,90 @@
+package com.faceattendance.model;
+
+import com.faceattendance.dto.AttendanceResponse;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Response of a completed punch, stored under the client's Idempotency-Key so a resubmitted
+ * request gets the same answer. Removed by a TTL index on createdAt.
+ */
+@Document(collection = "idempotency_keys")
+public class IdempotencyRecord {
+
+    // Endpoint, tenant and key, e.g. "checkin:12345:3f1c..." ("-" when no tenant was given)
+    @Id
+    private String id;
+
+    private String endpoint;
+
+    private String tenantId;
+
+    // SHA-256 of the request the response belongs to; a replay must match it
+    private String fingerprint;
+
+    private AttendanceResponse response;
+
+    private LocalDateTime createdAt;
+
+    public IdempotencyRecord() {}
+
+    public IdempotencyRecord(String id, String endpoint, String tenantId, String fingerprint,
+                             AttendanceResponse response, LocalDateTime createdAt) {
+        this.id = id;
+        this.endpoint = endpoint;
+        this.tenantId = tenantId;
+        this.fingerprint = fingerprint;
+        this.response = response;
+        this.createdAt = createdAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public void setTenantId(String tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public AttendanceResponse getResponse() {
+        return response;
+    }
+
+    public void setResponse(AttendanceResponse response) {
+        this.response = response;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
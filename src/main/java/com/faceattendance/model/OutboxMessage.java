@@ -0,0 +1,147 @@
+package com.faceattendance.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * A punch waiting to be delivered to the external MRR system, written next to its attendance
+ * session and sent by a background dispatcher.
+ */
+@Document(collection = "mrr_outbox")
+public class OutboxMessage {
+
+    public enum Status {
+        PENDING,
+        DELIVERED,
+        DEAD
+    }
+
+    // Attendance id and direction, e.g. "66f0...:IN", so a punch is queued at most once
+    @Id
+    private String id;
+
+    private String tenantId;
+
+    private String attendanceId;
+
+    // External (MRR) employee ID
+    private String employeeId;
+
+    private boolean checkOut;
+
+    // When the employee punched, sent as the MRR punch date and time
+    private LocalDateTime punchTime;
+
+    private Status status;
+
+    private int attempts;
+
+    // Earliest time of the next attempt; while an attempt runs, the end of its lease
+    private LocalDateTime nextAttemptAt;
+
+    private String lastError;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime deliveredAt;
+
+    public OutboxMessage() {}
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public void setTenantId(String tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    public String getAttendanceId() {
+        return attendanceId;
+    }
+
+    public void setAttendanceId(String attendanceId) {
+        this.attendanceId = attendanceId;
+    }
+
+    public String getEmployeeId() {
+        return employeeId;
+    }
+
+    public void setEmployeeId(String employeeId) {
+        this.employeeId = employeeId;
+    }
+
+    public boolean isCheckOut() {
+        return checkOut;
+    }
+
+    public void setCheckOut(boolean checkOut) {
+        this.checkOut = checkOut;
+    }
+
+    public LocalDateTime getPunchTime() {
+        return punchTime;
+    }
+
+    public void setPunchTime(LocalDateTime punchTime) {
+        this.punchTime = punchTime;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public LocalDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(LocalDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getDeliveredAt() {
+        return deliveredAt;
+    }
+
+    public void setDeliveredAt(LocalDateTime deliveredAt) {
+        this.deliveredAt = deliveredAt;
+    }
+}
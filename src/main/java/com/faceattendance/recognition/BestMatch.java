@@ -0,0 +1,75 @@
+package com.faceattendance.recognition;
+
+/**
+ * Running best / second-best similarity of a gallery scan.
+ *
+ * Mirrors the sequential rule used by face matching: a candidate replaces the best only when it
+ * is strictly better, so ties keep the earlier candidate, and the second best counts duplicates.
+ */
+public final class BestMatch {
+
+    private String employeeId;
+    private double bestSimilarity;
+    private double secondBestSimilarity;
+    private int candidates;
+    private int pruned;
+
+    public void offer(String candidateId, double similarity) {
+        candidates++;
+        if (similarity > bestSimilarity) {
+            secondBestSimilarity = bestSimilarity;
+            bestSimilarity = similarity;
+            employeeId = candidateId;
+        } else if (similarity > secondBestSimilarity) {
+            secondBestSimilarity = similarity;
+        }
+    }
+
+    /**
+     * Count a candidate that was proven unable to beat the second best
+     */
+    public void prune() {
+        prune(1);
+    }
+
+    public void prune(int count) {
+        candidates += count;
+        pruned += count;
+    }
+
+    /**
+     * Fold in the result of a scan over candidates that come after this one's
+     */
+    public BestMatch merge(BestMatch later) {
+        if (later.bestSimilarity > bestSimilarity) {
+            secondBestSimilarity = Math.max(bestSimilarity, later.secondBestSimilarity);
+            bestSimilarity = later.bestSimilarity;
+            employeeId = later.employeeId;
+        } else {
+            secondBestSimilarity = Math.max(secondBestSimilarity, later.bestSimilarity);
+        }
+        candidates += later.candidates;
+        pruned += later.pruned;
+        return this;
+    }
+
+    public String getEmployeeId() {
+        return employeeId;
+    }
+
+    public double getBestSimilarity() {
+        return bestSimilarity;
+    }
+
+    public double getSecondBestSimilarity() {
+        return secondBestSimilarity;
+    }
+
+    public int getCandidates() {
+        return candidates;
+    }
+
+    public int getPruned() {
+        return pruned;
+    }
+}
@@ -0,0 +1,94 @@
+package com.faceattendance.recognition;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Per-thread working memory for scaling planes, detecting faces and extracting templates.
+ *
+ * Buffers grow to the largest size seen on their thread and are reused after that, so in steady
+ * state these steps allocate only what they return. A buffer is only valid inside the call that
+ * borrowed it and must never be handed out.
+ */
+final class ExtractionScratch {
+
+    private static final ThreadLocal<ExtractionScratch> SCRATCH = ThreadLocal.withInitial(ExtractionScratch::new);
+
+    // Feature counters, cleared by the extractor before each use
+    final int[] histogram = new int[FaceTemplate.HIST_LENGTH];
+    final int[] lbp = new int[FaceTemplate.LBP_LENGTH];
+    final double[] edges = new double[FaceTemplate.EDGE_LENGTH];
+    final double[] deviations = new double[FaceTemplate.TEXT_LENGTH];
+
+    final ByteBuffer digestInput = ByteBuffer.allocate(
+            (FaceTemplate.HIST_LENGTH + FaceTemplate.LBP_LENGTH + FaceTemplate.EDGE_LENGTH + FaceTemplate.TEXT_LENGTH) * Float.BYTES);
+    final byte[] digestOutput = new byte[32];
+    final MessageDigest sha256;
+
+    private long[] sums = new long[0];
+    private long[] row = new long[0];
+    private int[] columnStarts = new int[0];
+    private int[] columnPairs = new int[0];
+    private int[] rowStarts = new int[0];
+    private int[] rowPairs = new int[0];
+    private byte[] facePlane = new byte[0];
+    private byte[] detectionPlane = new byte[0];
+    private int[] integral = new int[0];
+    private long[] squaredIntegral = new long[0];
+
+    private ExtractionScratch() {
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+    }
+
+    static ExtractionScratch get() {
+        return SCRATCH.get();
+    }
+
+    long[] sums(int length) {
+        return sums = sums.length >= length ? sums : new long[length];
+    }
+
+    long[] row(int length) {
+        return row = row.length >= length ? row : new long[length];
+    }
+
+    int[] columnStarts(int length) {
+        return columnStarts = columnStarts.length >= length ? columnStarts : new int[length];
+    }
+
+    int[] columnPairs(int length) {
+        return columnPairs = columnPairs.length >= length ? columnPairs : new int[length];
+    }
+
+    int[] rowStarts(int length) {
+        return rowStarts = rowStarts.length >= length ? rowStarts : new int[length];
+    }
+
+    int[] rowPairs(int length) {
+        return rowPairs = rowPairs.length >= length ? rowPairs : new int[length];
+    }
+
+    /**
+     * Standardised face region, scaled and then extracted within one call
+     */
+    byte[] facePlane(int length) {
+        return facePlane = facePlane.length >= length ? facePlane : new byte[length];
+    }
+
+    byte[] detectionPlane(int length) {
+        return detectionPlane = detectionPlane.length >= length ? detectionPlane : new byte[length];
+    }
+
+    int[] integral(int length) {
+        return integral = integral.length >= length ? integral : new int[length];
+    }
+
+    long[] squaredIntegral(int length) {
+        return squaredIntegral = squaredIntegral.length >= length ? squaredIntegral : new long[length];
+    }
+}
@@ -0,0 +1,284 @@
+package com.faceattendance.recognition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Viola-Jones face detector over a grayscale plane.
+ *
+ * The plane is first scaled down so its longer side is at most {@link #DETECTION_SIZE}; a face
+ * filling a check-in photo is still several times the cascade window there. Sums and squared sums
+ * come from integral images, so every Haar rectangle costs four lookups at any window size, and
+ * each window is normalised by its own standard deviation. Windows passing every stage are
+ * grouped by overlap, groups with too few hits are dropped and the largest remaining one is the
+ * face. Stateless apart from the cascade, so one instance serves concurrent requests; the scaled
+ * plane and the {@link IntegralImage} (shared with texture extraction) are per-thread scratch.
+ */
+public final class FaceDetector {
+
+    private static final int DETECTION_SIZE = 200;
+    private static final double SCALE_FACTOR = 1.2;
+    // Smallest face searched for, relative to the shorter image side
+    private static final double MIN_FACE_FRACTION = 0.2;
+    private static final int MIN_NEIGHBOURS = 3;
+    private static final double GROUP_EPS = 0.2;
+
+    private final HaarCascade cascade;
+
+    public FaceDetector(HaarCascade cascade) {
+        this.cascade = cascade;
+    }
+
+    /**
+     * Bounding box of the most prominent face in image coordinates, or null if there is none
+     */
+    public Region detect(GrayImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        GrayImage plane = image;
+        double ratio = 1.0;
+        int longSide = Math.max(width, height);
+        if (longSide > DETECTION_SIZE) {
+            ratio = (double) longSide / DETECTION_SIZE;
+            int planeWidth = Math.max(1, (int) Math.round(width / ratio));
+            int planeHeight = Math.max(1, (int) Math.round(height / ratio));
+            byte[] scaled = ExtractionScratch.get().detectionPlane(planeWidth * planeHeight);
+            image.resizeRegion(0, 0, width, height, planeWidth, planeHeight, scaled);
+            plane = new GrayImage(scaled, planeWidth, planeHeight);
+        }
+
+        List<int[]> hits = scan(plane);
+        int[] face = largestGroup(hits);
+        if (face == null) {
+            return null;
+        }
+
+        int x = (int) Math.round(face[0] * ratio);
+        int y = (int) Math.round(face[1] * ratio);
+        int right = Math.min(width, (int) Math.round((face[0] + face[2]) * ratio));
+        int bottom = Math.min(height, (int) Math.round((face[1] + face[3]) * ratio));
+        return new Region(x, y, right - x, bottom - y);
+    }
+
+    /**
+     * Every window (x, y, width, height) accepted by all stages
+     */
+    private List<int[]> scan(GrayImage plane) {
+        int width = plane.getWidth();
+        int height = plane.getHeight();
+        IntegralImage integral = IntegralImage.of(plane.getPixels(), width, height);
+        int stride = integral.getStride();
+        int[] sums = integral.getSums();
+        long[] squares = integral.getSquares();
+
+        List<int[]> hits = new ArrayList<>();
+        int baseWidth = cascade.getWindowWidth();
+        int baseHeight = cascade.getWindowHeight();
+        double minFace = Math.min(width, height) * MIN_FACE_FRACTION;
+        for (double scale = Math.max(1.0, minFace / baseWidth);
+             baseWidth * scale <= width && baseHeight * scale <= height; scale *= SCALE_FACTOR) {
+            int windowWidth = (int) (baseWidth * scale);
+            int windowHeight = (int) (baseHeight * scale);
+            ScaledFeatures features = new ScaledFeatures(cascade, scale, stride, windowWidth, windowHeight);
+            int step = Math.max(1, (int) Math.round(scale));
+            double inverseArea = 1.0 / (windowWidth * windowHeight);
+            int windowBottom = windowHeight * stride;
+
+            for (int y = 0; y + windowHeight <= height; y += step) {
+                for (int x = 0; x + windowWidth <= width; x += step) {
+                    int base = y * stride + x;
+                    int corner = base + windowBottom + windowWidth;
+                    double mean = (sums[corner] - sums[base + windowBottom] - sums[base + windowWidth] + sums[base]) * inverseArea;
+                    double variance = (squares[corner] - squares[base + windowBottom] - squares[base + windowWidth] + squares[base]) * inverseArea - mean * mean;
+                    double deviation = variance > 0 ? Math.sqrt(variance) : 1.0;
+                    if (passes(sums, base, deviation, features)) {
+                        hits.add(new int[] {x, y, windowWidth, windowHeight});
+                    }
+                }
+            }
+        }
+        return hits;
+    }
+
+    private boolean passes(int[] sums, int base, double deviation, ScaledFeatures features) {
+        int[] corners = features.corners;
+        double[] weights = features.weights;
+        for (HaarCascade.Stage stage : cascade.getStages()) {
+            double total = 0;
+            for (HaarCascade.Tree tree : stage.trees) {
+                HaarCascade.TreeNode node = tree.nodes[0];
+                while (true) {
+                    double value = 0;
+                    for (int r = node.firstRect, end = node.firstRect + node.rectCount; r < end; r++) {
+                        int c = r * 4;
+                        value += weights[r] * (sums[base + corners[c + 3]] - sums[base + corners[c + 1]]
+                                - sums[base + corners[c + 2]] + sums[base + corners[c]]);
+                    }
+                    if (value < node.threshold * deviation) {
+                        if (node.left < 0) {
+                            total += node.leftValue;
+                            break;
+                        }
+                        node = tree.nodes[node.left];
+                    } else {
+                        if (node.right < 0) {
+                            total += node.rightValue;
+                            break;
+                        }
+                        node = tree.nodes[node.right];
+                    }
+                }
+            }
+            if (total < stage.threshold) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cluster overlapping hits and return the mean box of the largest group with enough hits
+     */
+    private static int[] largestGroup(List<int[]> hits) {
+        int count = hits.size();
+        int[] parent = new int[count];
+        for (int i = 0; i < count; i++) {
+            parent[i] = i;
+            for (int j = 0; j < i; j++) {
+                if (similar(hits.get(i), hits.get(j))) {
+                    parent[root(parent, i)] = root(parent, j);
+                }
+            }
+        }
+
+        long[][] groups = new long[count][5];
+        for (int i = 0; i < count; i++) {
+            long[] group = groups[root(parent, i)];
+            int[] hit = hits.get(i);
+            group[0] += hit[0];
+            group[1] += hit[1];
+            group[2] += hit[2];
+            group[3] += hit[3];
+            group[4]++;
+        }
+
+        int[] best = null;
+        long bestArea = -1;
+        for (long[] group : groups) {
+            long members = group[4];
+            if (members < MIN_NEIGHBOURS) {
+                continue;
+            }
+            int[] box = {
+                    (int) ((group[0] + members / 2) / members), (int) ((group[1] + members / 2) / members),
+                    (int) ((group[2] + members / 2) / members), (int) ((group[3] + members / 2) / members)};
+            long area = (long) box[2] * box[3];
+            if (area > bestArea) {
+                bestArea = area;
+                best = box;
+            }
+        }
+        return best;
+    }
+
+    private static boolean similar(int[] a, int[] b) {
+        double delta = GROUP_EPS * (Math.min(a[2], b[2]) + Math.min(a[3], b[3])) * 0.5;
+        return Math.abs(a[0] - b[0]) <= delta && Math.abs(a[1] - b[1]) <= delta &&
+                Math.abs(a[0] + a[2] - b[0] - b[2]) <= delta && Math.abs(a[1] + a[3] - b[1] - b[3]) <= delta;
+    }
+
+    private static int root(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * The cascade's rectangles at one window size: integral-image offsets of each rectangle's
+     * corners relative to the window origin, and weights scaled by the window area. The first
+     * weight of every feature is recomputed from the others so the rounded rectangles still
+     * balance.
+     */
+    private static final class ScaledFeatures {
+        final int[] corners;
+        final double[] weights;
+
+        ScaledFeatures(HaarCascade cascade, double scale, int stride, int windowWidth, int windowHeight) {
+            int[] rects = cascade.getRects();
+            float[] baseWeights = cascade.getWeights();
+            int rectCount = baseWeights.length;
+            corners = new int[rectCount * 4];
+            weights = new double[rectCount];
+            int[] areas = new int[rectCount];
+            double inverseArea = 1.0 / (windowWidth * windowHeight);
+
+            for (int r = 0; r < rectCount; r++) {
+                int x = (int) Math.round(rects[r * 4] * scale);
+                int y = (int) Math.round(rects[r * 4 + 1] * scale);
+                int w = Math.min((int) Math.round(rects[r * 4 + 2] * scale), windowWidth - x);
+                int h = Math.min((int) Math.round(rects[r * 4 + 3] * scale), windowHeight - y);
+                int topLeft = y * stride + x;
+                corners[r * 4] = topLeft;
+                corners[r * 4 + 1] = topLeft + w;
+                corners[r * 4 + 2] = topLeft + h * stride;
+                corners[r * 4 + 3] = topLeft + h * stride + w;
+                areas[r] = w * h;
+                weights[r] = baseWeights[r] * inverseArea;
+            }
+
+            for (HaarCascade.Stage stage : cascade.getStages()) {
+                for (HaarCascade.Tree tree : stage.trees) {
+                    for (HaarCascade.TreeNode node : tree.nodes) {
+                        double others = 0;
+                        for (int r = node.firstRect + 1; r < node.firstRect + node.rectCount; r++) {
+                            others += weights[r] * areas[r];
+                        }
+                        if (node.rectCount > 1 && areas[node.firstRect] > 0) {
+                            weights[node.firstRect] = -others / areas[node.firstRect];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Face bounding box in pixels
+     */
+    public static final class Region {
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+
+        public Region(int x, int y, int width, int height) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public String toString() {
+            return width + "x" + height + " at (" + x + ", " + y + ")";
+        }
+    }
+}
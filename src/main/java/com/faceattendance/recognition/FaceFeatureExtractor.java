@@ -0,0 +1,186 @@
+package com.faceattendance.recognition;
+
+import java.util.Arrays;
+
+/**
+ * Extracts the four template sections from a grayscale plane.
+ *
+ * Histogram, LBP, edge and texture statistics are gathered in a single pass over the plane:
+ * every pixel feeds the histogram and the summed-area tables, interior pixels also their LBP
+ * code and gradient. Texture block variances then come from the tables in constant time per
+ * block, so other grids cost almost nothing extra ({@link #textureFeatures}); the template keeps
+ * the 4x4 grid its TEXT section has always had. Each feature still accumulates in row-major
+ * order, so the sections (and the template digest) are the same as extracting them in separate
+ * passes over the plane.
+ *
+ * Counters and the scaled face plane live in per-thread scratch, so in steady state an
+ * extraction allocates only the template it returns.
+ *
+ * Gradients are integer differences in [-255, 255], so the edge orientation bin and magnitude
+ * come from tables built once from the original {@code atan2} binning and {@code sqrt}: no
+ * trigonometry per pixel, and the EDGE section is identical to computing them directly.
+ */
+public final class FaceFeatureExtractor {
+
+    private static final int TEXTURE_GRID = 4;
+    private static final int EDGE_BINS = FaceTemplate.EDGE_LENGTH;
+
+    private static final int MAX_GRADIENT = 255;
+    private static final int GRADIENT_SPAN = 2 * MAX_GRADIENT + 1;
+    // Orientation bin of gradient (gx, gy) at (gx + 255) * 511 + (gy + 255)
+    private static final byte[] ORIENTATION_BINS = new byte[GRADIENT_SPAN * GRADIENT_SPAN];
+    // Euclidean magnitude indexed by gx * gx + gy * gy
+    private static final double[] MAGNITUDES = new double[2 * MAX_GRADIENT * MAX_GRADIENT + 1];
+
+    static {
+        for (int gx = -MAX_GRADIENT; gx <= MAX_GRADIENT; gx++) {
+            for (int gy = -MAX_GRADIENT; gy <= MAX_GRADIENT; gy++) {
+                double angle = Math.atan2(gy, gx);
+                // Quantize angle into 8 bins
+                int bin = (int) ((angle + Math.PI) / (2 * Math.PI / EDGE_BINS)) % EDGE_BINS;
+                ORIENTATION_BINS[(gx + MAX_GRADIENT) * GRADIENT_SPAN + gy + MAX_GRADIENT] = (byte) bin;
+            }
+        }
+        for (int i = 0; i < MAGNITUDES.length; i++) {
+            MAGNITUDES[i] = Math.sqrt(i);
+        }
+    }
+
+    private FaceFeatureExtractor() {}
+
+    /**
+     * Template of a grayscale face image
+     */
+    public static FaceTemplate extract(GrayImage image) {
+        return extract(image.getPixels(), image.getWidth(), image.getHeight(), false);
+    }
+
+    /**
+     * Template of a region of a plane (such as a detected face), area-averaged to size x size first
+     */
+    public static FaceTemplate extract(GrayImage image, int x, int y, int width, int height, int size) {
+        byte[] plane = ExtractionScratch.get().facePlane(size * size);
+        image.resizeRegion(x, y, width, height, size, size, plane);
+        return extract(plane, size, size, true);
+    }
+
+    private static FaceTemplate extract(byte[] pixels, int width, int height, boolean faceCrop) {
+        ExtractionScratch scratch = ExtractionScratch.get();
+        int[] histogram = scratch.histogram;
+        int[] lbpHistogram = scratch.lbp;
+        double[] edges = scratch.edges;
+        Arrays.fill(histogram, 0);
+        Arrays.fill(lbpHistogram, 0);
+        Arrays.fill(edges, 0);
+        IntegralImage integral = IntegralImage.allocate(width, height);
+
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            boolean interiorRow = y > 0 && y < height - 1;
+            integral.fillRow(pixels, y);
+            for (int x = 0; x < width; x++) {
+                int idx = row + x;
+                int center = pixels[idx] & 0xFF;
+                histogram[center]++;
+
+                if (!interiorRow || x == 0 || x == width - 1) {
+                    continue;
+                }
+                int up = idx - width;
+                int down = idx + width;
+                int left = pixels[idx - 1] & 0xFF;
+                int right = pixels[idx + 1] & 0xFF;
+                int top = pixels[up] & 0xFF;
+                int bottom = pixels[down] & 0xFF;
+
+                // Neighbours in clockwise order from the top left
+                int lbp = 0;
+                if ((pixels[up - 1] & 0xFF) >= center) lbp |= 1;
+                if (top >= center) lbp |= 2;
+                if ((pixels[up + 1] & 0xFF) >= center) lbp |= 4;
+                if (right >= center) lbp |= 8;
+                if ((pixels[down + 1] & 0xFF) >= center) lbp |= 16;
+                if (bottom >= center) lbp |= 32;
+                if ((pixels[down - 1] & 0xFF) >= center) lbp |= 64;
+                if (left >= center) lbp |= 128;
+                lbpHistogram[lbp]++;
+
+                int gx = right - left;
+                int gy = bottom - top;
+                edges[ORIENTATION_BINS[(gx + MAX_GRADIENT) * GRADIENT_SPAN + gy + MAX_GRADIENT]] += MAGNITUDES[gx * gx + gy * gy];
+            }
+        }
+
+        return FaceTemplate.fromFeatures(
+                histogram(histogram),
+                lbp(lbpHistogram, (width - 2) * (height - 2)),
+                edge(edges),
+                texture(integral, TEXTURE_GRID, scratch.deviations),
+                faceCrop);
+    }
+
+    /**
+     * Texture sections for several grids (such as 2, 4 and 8), concatenated in the order given;
+     * each grid's block deviations are scaled by that grid's largest
+     */
+    public static float[] textureFeatures(GrayImage image, int... grids) {
+        IntegralImage integral = IntegralImage.of(image.getPixels(), image.getWidth(), image.getHeight());
+        int length = 0;
+        for (int grid : grids) {
+            length += grid * grid;
+        }
+        float[] features = new float[length];
+        int offset = 0;
+        for (int grid : grids) {
+            float[] section = texture(integral, grid, new double[grid * grid]);
+            System.arraycopy(section, 0, features, offset, section.length);
+            offset += section.length;
+        }
+        return features;
+    }
+
+    private static float[] histogram(int[] counts) {
+        float[] values = new float[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            values[i] = counts[i];
+        }
+        return values;
+    }
+
+    private static float[] lbp(int[] counts, int totalPixels) {
+        float[] normalized = new float[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            normalized[i] = (float) ((double) counts[i] / totalPixels);
+        }
+        return normalized;
+    }
+
+    private static float[] edge(double[] edges) {
+        double sum = 0;
+        for (double feature : edges) {
+            sum += feature;
+        }
+        float[] normalized = new float[edges.length];
+        for (int i = 0; i < edges.length; i++) {
+            normalized[i] = (float) (sum > 0 ? edges[i] / sum : edges[i]);
+        }
+        return normalized;
+    }
+
+    /**
+     * Standard deviation of each block of a grid, scaled by the largest
+     */
+    private static float[] texture(IntegralImage integral, int grid, double[] deviations) {
+        integral.blockDeviations(grid, deviations);
+
+        double maxVariance = 0;
+        for (double deviation : deviations) {
+            maxVariance = Math.max(maxVariance, deviation);
+        }
+        float[] normalized = new float[deviations.length];
+        for (int i = 0; i < deviations.length; i++) {
+            normalized[i] = (float) (maxVariance > 0 ? deviations[i] / maxVariance : deviations[i]);
+        }
+        return normalized;
+    }
+}
@@ -0,0 +1,114 @@
+package com.faceattendance.recognition;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Parsed face template: the four feature sections used for matching
+ * (HIST, LBP, EDGE, TEXT) plus a short digest used for the identical-image shortcut.
+ * Templates extracted from a detected face crop and from a whole frame describe different
+ * pixels and are never compared with each other.
+ */
+public final class FaceTemplate {
+
+    public static final int HIST_LENGTH = 256;
+    public static final int LBP_LENGTH = 256;
+    public static final int EDGE_LENGTH = 8;
+    public static final int TEXT_LENGTH = 16;
+
+    public static final int DIGEST_LENGTH = 16;
+
+    private final byte[] digest;
+    private final float[] histogram;
+    private final float[] lbp;
+    private final float[] edge;
+    private final float[] texture;
+    private final boolean faceCrop;
+
+    public FaceTemplate(byte[] digest, float[] histogram, float[] lbp, float[] edge, float[] texture) {
+        this(digest, histogram, lbp, edge, texture, false);
+    }
+
+    public FaceTemplate(byte[] digest, float[] histogram, float[] lbp, float[] edge, float[] texture, boolean faceCrop) {
+        this.faceCrop = faceCrop;
+        this.digest = digest;
+        this.histogram = histogram;
+        this.lbp = lbp;
+        this.edge = edge;
+        this.texture = texture;
+    }
+
+    /**
+     * Build a template from freshly extracted features, computing its digest
+     */
+    public static FaceTemplate fromFeatures(float[] histogram, float[] lbp, float[] edge, float[] texture, boolean faceCrop) {
+        return new FaceTemplate(computeDigest(histogram, lbp, edge, texture), histogram, lbp, edge, texture, faceCrop);
+    }
+
+    private static byte[] computeDigest(float[] histogram, float[] lbp, float[] edge, float[] texture) {
+        try {
+            ExtractionScratch scratch = ExtractionScratch.get();
+            ByteBuffer buffer = scratch.digestInput;
+            buffer.clear();
+            putAll(buffer, histogram);
+            putAll(buffer, lbp);
+            putAll(buffer, edge);
+            putAll(buffer, texture);
+            MessageDigest md = scratch.sha256;
+            md.reset();
+            md.update(buffer.array(), 0, buffer.position());
+            md.digest(scratch.digestOutput, 0, scratch.digestOutput.length);
+            return Arrays.copyOf(scratch.digestOutput, DIGEST_LENGTH);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to compute face template digest", e);
+        }
+    }
+
+    private static void putAll(ByteBuffer buffer, float[] section) {
+        for (float value : section) {
+            buffer.putFloat(value);
+        }
+    }
+
+    public byte[] getDigest() {
+        return digest;
+    }
+
+    public float[] getHistogram() {
+        return histogram;
+    }
+
+    public float[] getLbp() {
+        return lbp;
+    }
+
+    public float[] getEdge() {
+        return edge;
+    }
+
+    public float[] getTexture() {
+        return texture;
+    }
+
+    /**
+     * True if extracted from a detected face region, false if from the whole frame
+     */
+    public boolean isFaceCrop() {
+        return faceCrop;
+    }
+
+    /**
+     * True when both templates were extracted the same way and can be compared
+     */
+    public boolean sameExtraction(FaceTemplate other) {
+        return faceCrop == other.faceCrop;
+    }
+
+    /**
+     * True when both templates carry the same non-empty digest (identical source image)
+     */
+    public boolean sameDigest(FaceTemplate other) {
+        return digest != null && digest.length > 0 && other.digest != null && Arrays.equals(digest, other.digest);
+    }
+}
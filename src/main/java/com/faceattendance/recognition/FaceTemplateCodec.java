@@ -0,0 +1,277 @@
+package com.faceattendance.recognition;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Binary face template format.
+ *
+ * Layout (big-endian):
+ * <pre>
+ *   0  magic 'F' 'T'
+ *   2  version (1)
+ *   3  element type (1 = float32, 2 = float16)
+ *   4  flags (bit 0: extracted from a detected face crop; other bits 0)
+ *   5  digest length in bytes
+ *   6  HIST, LBP, EDGE, TEXT section lengths (uint16 each)
+ *  14  digest bytes
+ *  ..  section values, in section order
+ * </pre>
+ *
+ * Each section is written scaled by its own maximum. Every consumer compares sections with
+ * cosine similarity, which ignores a positive scale factor, and the scaling keeps raw HIST
+ * counts inside the float16 range.
+ *
+ * Legacy "hash:HIST:..,LBP:..,EDGE:..,TEXT:.." strings are still readable through
+ * {@link #parseLegacy(String)} and {@link #read(byte[], String)}.
+ */
+public final class FaceTemplateCodec {
+
+    public static final byte VERSION = 1;
+    public static final byte ELEMENT_FLOAT32 = 1;
+    public static final byte ELEMENT_FLOAT16 = 2;
+
+    private static final byte MAGIC_0 = 'F';
+    private static final byte MAGIC_1 = 'T';
+    private static final int HEADER_LENGTH = 14;
+    private static final byte FLAG_FACE_CROP = 0x01;
+
+    private FaceTemplateCodec() {}
+
+    /**
+     * Encode a template using float16 sections
+     */
+    public static byte[] encode(FaceTemplate template) {
+        return encode(template, ELEMENT_FLOAT16);
+    }
+
+    public static byte[] encode(FaceTemplate template, byte elementType) {
+        if (elementType != ELEMENT_FLOAT32 && elementType != ELEMENT_FLOAT16) {
+            throw new IllegalArgumentException("Unsupported element type: " + elementType);
+        }
+
+        byte[] digest = template.getDigest() != null ? template.getDigest() : new byte[0];
+        float[][] sections = sectionsOf(template);
+        int elementSize = elementType == ELEMENT_FLOAT32 ? Float.BYTES : Short.BYTES;
+
+        int valueCount = 0;
+        for (float[] section : sections) {
+            valueCount += section.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + digest.length + valueCount * elementSize);
+        buffer.put(MAGIC_0).put(MAGIC_1).put(VERSION).put(elementType)
+                .put(template.isFaceCrop() ? FLAG_FACE_CROP : 0).put((byte) digest.length);
+        for (float[] section : sections) {
+            buffer.putShort((short) section.length);
+        }
+        buffer.put(digest);
+
+        for (float[] section : sections) {
+            float scale = maxOf(section);
+            float inverse = scale > 0 ? 1.0f / scale : 0.0f;
+            for (float value : section) {
+                float scaled = value * inverse;
+                if (elementType == ELEMENT_FLOAT32) {
+                    buffer.putFloat(scaled);
+                } else {
+                    buffer.putShort(toHalf(scaled));
+                }
+            }
+        }
+
+        return buffer.array();
+    }
+
+    /**
+     * Decode a binary template produced by {@link #encode(FaceTemplate)}
+     */
+    public static FaceTemplate decode(byte[] data) {
+        if (!isBinaryTemplate(data)) {
+            throw new IllegalArgumentException("Not a binary face template");
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.position(2);
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported face template version: " + version);
+        }
+        byte elementType = buffer.get();
+        byte flags = buffer.get();
+        int digestLength = buffer.get() & 0xFF;
+
+        int[] lengths = new int[4];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = buffer.getShort() & 0xFFFF;
+        }
+
+        byte[] digest = new byte[digestLength];
+        buffer.get(digest);
+
+        float[][] sections = new float[4][];
+        for (int s = 0; s < sections.length; s++) {
+            float[] section = new float[lengths[s]];
+            for (int i = 0; i < section.length; i++) {
+                if (elementType == ELEMENT_FLOAT32) {
+                    section[i] = buffer.getFloat();
+                } else if (elementType == ELEMENT_FLOAT16) {
+                    section[i] = fromHalf(buffer.getShort());
+                } else {
+                    throw new IllegalArgumentException("Unsupported element type: " + elementType);
+                }
+            }
+            sections[s] = section;
+        }
+
+        return new FaceTemplate(digest, sections[0], sections[1], sections[2], sections[3],
+                (flags & FLAG_FACE_CROP) != 0);
+    }
+
+    public static boolean isBinaryTemplate(byte[] data) {
+        return data != null && data.length >= HEADER_LENGTH && data[0] == MAGIC_0 && data[1] == MAGIC_1;
+    }
+
+    /**
+     * Read whichever representation an employee record carries, preferring the binary template
+     */
+    public static FaceTemplate read(byte[] binary, String legacyEncoding) {
+        if (binary != null && binary.length > 0) {
+            return decode(binary);
+        }
+        if (legacyEncoding != null && !legacyEncoding.isEmpty()) {
+            return parseLegacy(legacyEncoding);
+        }
+        return null;
+    }
+
+    /**
+     * Parse a legacy "hash:HIST:..,LBP:..,EDGE:..,TEXT:.." encoding string
+     */
+    public static FaceTemplate parseLegacy(String encoding) {
+        int firstColon = encoding.indexOf(':');
+        if (firstColon == -1) {
+            throw new IllegalArgumentException("Invalid encoding format - no colon found");
+        }
+
+        String hash = encoding.substring(0, firstColon);
+        String features = encoding.substring(firstColon + 1);
+
+        return new FaceTemplate(
+                hash.getBytes(StandardCharsets.US_ASCII),
+                parseLegacySection(features, "HIST:"),
+                parseLegacySection(features, "LBP:"),
+                parseLegacySection(features, "EDGE:"),
+                parseLegacySection(features, "TEXT:"));
+    }
+
+    private static float[] parseLegacySection(String features, String featureType) {
+        int startIdx = features.indexOf(featureType);
+        if (startIdx == -1) {
+            return new float[0];
+        }
+
+        startIdx += featureType.length();
+        int endIdx = features.indexOf(':', startIdx);
+        if (endIdx == -1) {
+            endIdx = features.length();
+        }
+
+        float[] values = new float[64];
+        int count = 0;
+        int tokenStart = startIdx;
+        for (int i = startIdx; i <= endIdx; i++) {
+            if (i == endIdx || features.charAt(i) == ',') {
+                if (i > tokenStart) {
+                    try {
+                        float value = Float.parseFloat(features.substring(tokenStart, i));
+                        if (count == values.length) {
+                            values = Arrays.copyOf(values, values.length * 2);
+                        }
+                        values[count++] = value;
+                    } catch (NumberFormatException e) {
+                        // Trailing label of the next section (e.g. "LBP") - skip
+                    }
+                }
+                tokenStart = i + 1;
+            }
+        }
+
+        return Arrays.copyOf(values, count);
+    }
+
+    private static float[][] sectionsOf(FaceTemplate template) {
+        return new float[][] {
+                template.getHistogram(), template.getLbp(), template.getEdge(), template.getTexture()
+        };
+    }
+
+    private static float maxOf(float[] values) {
+        float max = 0.0f;
+        for (float value : values) {
+            max = Math.max(max, Math.abs(value));
+        }
+        return max;
+    }
+
+    /**
+     * IEEE 754 binary32 to binary16, round to nearest even
+     */
+    static short toHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xFF;
+        int mantissa = bits & 0x7FFFFF;
+
+        if (exponent == 0xFF) {
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+        }
+
+        int halfExponent = exponent - 127 + 15;
+        if (halfExponent >= 0x1F) {
+            return (short) (sign | 0x7C00);
+        }
+
+        if (halfExponent <= 0) {
+            if (halfExponent < -10) {
+                return (short) sign;
+            }
+            mantissa |= 0x800000;
+            int shift = 14 - halfExponent;
+            int half = mantissa >> shift;
+            int remainder = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+
+        int half = (halfExponent << 10) | (mantissa >> 13);
+        int remainder = mantissa & 0x1FFF;
+        if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) {
+            half++;
+        }
+        return (short) (sign | half);
+    }
+
+    /**
+     * IEEE 754 binary16 to binary32
+     */
+    static float fromHalf(short half) {
+        int bits = half & 0xFFFF;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1F;
+        int mantissa = bits & 0x3FF;
+
+        if (exponent == 0) {
+            float magnitude = mantissa * 0x1p-24f;
+            return sign != 0 ? -magnitude : magnitude;
+        }
+        if (exponent == 0x1F) {
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+}
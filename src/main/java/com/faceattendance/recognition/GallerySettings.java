@@ -0,0 +1,134 @@
+package com.faceattendance.recognition;
+
+/**
+ * Tuning knobs shared by all tenant galleries
+ */
+public class GallerySettings {
+
+    private int parallelThreshold = 4096;
+    private int parallelChunkSize = 1024;
+    private boolean hnswEnabled = false;
+    private int hnswMinSize = 10000;
+    private int hnswM = 16;
+    private int hnswEfConstruction = 100;
+    private int hnswEfSearch = 64;
+    private int hnswRerank = 32;
+    private double hnswRecallSampleRate = 0.01;
+    private boolean quantized = false;
+    private int quantizedRerank = 32;
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Galleries with at least this many live entries are scanned on the fork/join pool
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    public int getParallelChunkSize() {
+        return parallelChunkSize;
+    }
+
+    /**
+     * Slots scanned sequentially by one fork/join leaf task
+     */
+    public void setParallelChunkSize(int parallelChunkSize) {
+        this.parallelChunkSize = Math.max(1, parallelChunkSize);
+    }
+
+    public boolean isHnswEnabled() {
+        return hnswEnabled;
+    }
+
+    /**
+     * Search large galleries through an HNSW graph instead of scanning every slot
+     */
+    public void setHnswEnabled(boolean hnswEnabled) {
+        this.hnswEnabled = hnswEnabled;
+    }
+
+    public int getHnswMinSize() {
+        return hnswMinSize;
+    }
+
+    /**
+     * Galleries are indexed once they hold this many live entries
+     */
+    public void setHnswMinSize(int hnswMinSize) {
+        this.hnswMinSize = Math.max(2, hnswMinSize);
+    }
+
+    public int getHnswM() {
+        return hnswM;
+    }
+
+    /**
+     * Links per node on the upper graph layers (twice as many on the base layer)
+     */
+    public void setHnswM(int hnswM) {
+        this.hnswM = Math.max(2, hnswM);
+    }
+
+    public int getHnswEfConstruction() {
+        return hnswEfConstruction;
+    }
+
+    public void setHnswEfConstruction(int hnswEfConstruction) {
+        this.hnswEfConstruction = Math.max(1, hnswEfConstruction);
+    }
+
+    public int getHnswEfSearch() {
+        return hnswEfSearch;
+    }
+
+    public void setHnswEfSearch(int hnswEfSearch) {
+        this.hnswEfSearch = Math.max(1, hnswEfSearch);
+    }
+
+    public int getHnswRerank() {
+        return hnswRerank;
+    }
+
+    /**
+     * Graph candidates re-scored exactly to pick the best and second best
+     */
+    public void setHnswRerank(int hnswRerank) {
+        this.hnswRerank = Math.max(2, hnswRerank);
+    }
+
+    public double getHnswRecallSampleRate() {
+        return hnswRecallSampleRate;
+    }
+
+    /**
+     * Fraction of indexed searches that also run the exact scan to measure recall
+     */
+    public void setHnswRecallSampleRate(double hnswRecallSampleRate) {
+        this.hnswRecallSampleRate = Math.max(0.0, Math.min(1.0, hnswRecallSampleRate));
+    }
+
+    public boolean isQuantized() {
+        return quantized;
+    }
+
+    /**
+     * Keep galleries as int8 vectors plus exact copies for re-ranking; applies to galleries created afterwards
+     */
+    public void setQuantized(boolean quantized) {
+        this.quantized = quantized;
+    }
+
+    public int getQuantizedRerank() {
+        return quantizedRerank;
+    }
+
+    /**
+     * Top int8 candidates re-scored exactly
+     */
+    public void setQuantizedRerank(int quantizedRerank) {
+        this.quantizedRerank = Math.max(2, quantizedRerank);
+    }
+}
@@ -0,0 +1,189 @@
+package com.faceattendance.recognition;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Arrays;
+
+/**
+ * 8-bit grayscale plane, one byte per pixel in row-major order (read values with {@code & 0xFF}).
+ *
+ * Built in one pass straight from the image's data buffer for the packed-int and interleaved-byte
+ * RGB layouts that decoders and the resizer produce, with fixed-point BT.601 luma weights
+ * (0.299, 0.587, 0.114 in 16.16). Other layouts fall back to row-wise {@code getRGB}.
+ */
+public final class GrayImage {
+
+    private static final int R_WEIGHT = 19595;
+    private static final int G_WEIGHT = 38470;
+    private static final int B_WEIGHT = 7471;
+
+    private final byte[] pixels;
+    private final int width;
+    private final int height;
+
+    public GrayImage(byte[] pixels, int width, int height) {
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Grayscale plane of an image
+     */
+    public static GrayImage of(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] gray = new byte[width * height];
+        Raster raster = image.getRaster();
+        // Only top-level rasters: a child raster's data buffer is shared with its parent
+        boolean direct = raster.getParent() == null &&
+                raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0;
+
+        if (direct && (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_INT_ARGB)) {
+            DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+            int[] data = buffer.getData();
+            int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+            for (int y = 0; y < height; y++) {
+                int in = buffer.getOffset() + y * stride;
+                int out = y * width;
+                for (int x = 0; x < width; x++) {
+                    int rgb = data[in + x];
+                    gray[out + x] = luma((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+                }
+            }
+        } else if (direct && (image.getType() == BufferedImage.TYPE_3BYTE_BGR || image.getType() == BufferedImage.TYPE_4BYTE_ABGR)) {
+            DataBufferByte buffer = (DataBufferByte) raster.getDataBuffer();
+            byte[] data = buffer.getData();
+            ComponentSampleModel model = (ComponentSampleModel) raster.getSampleModel();
+            int stride = model.getScanlineStride();
+            int pixelStride = model.getPixelStride();
+            int[] bands = model.getBandOffsets();
+            for (int y = 0; y < height; y++) {
+                int in = buffer.getOffset() + y * stride;
+                int out = y * width;
+                for (int x = 0; x < width; x++, in += pixelStride) {
+                    gray[out + x] = luma(data[in + bands[0]] & 0xFF, data[in + bands[1]] & 0xFF, data[in + bands[2]] & 0xFF);
+                }
+            }
+        } else {
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                int out = y * width;
+                for (int x = 0; x < width; x++) {
+                    int rgb = row[x];
+                    gray[out + x] = luma((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+                }
+            }
+        }
+        return new GrayImage(gray, width, height);
+    }
+
+    /**
+     * Area-averaged resample to the given size: each output pixel is the mean of the source area it
+     * covers, partially covered source pixels weighted by their overlap. Works in integer arithmetic,
+     * one source row at a time.
+     */
+    public GrayImage resize(int targetWidth, int targetHeight) {
+        byte[] resized = new byte[targetWidth * targetHeight];
+        resizeRegion(0, 0, width, height, targetWidth, targetHeight, resized);
+        return new GrayImage(resized, targetWidth, targetHeight);
+    }
+
+    /**
+     * Area-averaged resample of a region into {@code out}; working buffers come from the
+     * per-thread scratch
+     */
+    void resizeRegion(int left, int top, int regionWidth, int regionHeight, int targetWidth, int targetHeight, byte[] out) {
+        if (left < 0 || top < 0 || regionWidth <= 0 || regionHeight <= 0 || left + regionWidth > width || top + regionHeight > height) {
+            throw new IllegalArgumentException("Region " + regionWidth + "x" + regionHeight + " at (" + left + ", " + top +
+                    ") is outside the " + width + "x" + height + " image");
+        }
+        ExtractionScratch scratch = ExtractionScratch.get();
+
+        // Source pixel i spans [i * targetWidth, (i + 1) * targetWidth) on the scaled axis, output
+        // pixel o spans [o * width, (o + 1) * width), so every overlap is an integer
+        int[] columnStarts = scratch.columnStarts(regionWidth + 1);
+        int[] columns = scratch.columnPairs(2 * (regionWidth + targetWidth));
+        overlaps(regionWidth, targetWidth, columnStarts, columns);
+        int[] rowStarts = scratch.rowStarts(regionHeight + 1);
+        int[] rows = scratch.rowPairs(2 * (regionHeight + targetHeight));
+        overlaps(regionHeight, targetHeight, rowStarts, rows);
+
+        int length = targetWidth * targetHeight;
+        long[] sums = scratch.sums(length);
+        Arrays.fill(sums, 0, length, 0);
+        long[] row = scratch.row(targetWidth);
+        for (int y = 0; y < regionHeight; y++) {
+            Arrays.fill(row, 0, targetWidth, 0);
+            int in = (top + y) * width + left;
+            for (int x = 0; x < regionWidth; x++) {
+                int value = pixels[in + x] & 0xFF;
+                for (int p = columnStarts[x]; p < columnStarts[x + 1]; p += 2) {
+                    row[columns[p]] += (long) value * columns[p + 1];
+                }
+            }
+            for (int p = rowStarts[y]; p < rowStarts[y + 1]; p += 2) {
+                int outRow = rows[p] * targetWidth;
+                long weight = rows[p + 1];
+                for (int x = 0; x < targetWidth; x++) {
+                    sums[outRow + x] += row[x] * weight;
+                }
+            }
+        }
+
+        long area = (long) regionWidth * regionHeight;
+        for (int i = 0; i < length; i++) {
+            out[i] = (byte) ((sums[i] + area / 2) / area);
+        }
+    }
+
+    /**
+     * For each source pixel, pairs of (output pixel, overlap) along one axis; source pixel i's
+     * pairs are {@code pairs[starts[i]]} up to {@code pairs[starts[i + 1]]}. A source pixel
+     * overlaps at most one more output pixel than its share, so there are fewer than
+     * {@code source + target} pairs.
+     */
+    private static void overlaps(int source, int target, int[] starts, int[] pairs) {
+        int p = 0;
+        for (int i = 0; i < source; i++) {
+            starts[i] = p;
+            long start = (long) i * target;
+            long end = start + target;
+            int first = (int) (start / source);
+            int last = (int) ((end - 1) / source);
+            for (int o = first; o <= last; o++) {
+                pairs[p++] = o;
+                pairs[p++] = (int) (Math.min(end, (long) (o + 1) * source) - Math.max(start, (long) o * source));
+            }
+        }
+        starts[source] = p;
+    }
+
+    private static byte luma(int r, int g, int b) {
+        return (byte) ((R_WEIGHT * r + G_WEIGHT * g + B_WEIGHT * b) >>> 16);
+    }
+
+    public byte[] getPixels() {
+        return pixels;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gray value (0-255) at a pixel
+     */
+    public int get(int x, int y) {
+        return pixels[y * width + x] & 0xFF;
+    }
+}
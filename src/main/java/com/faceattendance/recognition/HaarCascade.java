@@ -0,0 +1,222 @@
+package com.faceattendance.recognition;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Boosted Haar classifier cascade read from an OpenCV (pre-2.4 "opencv-haar-classifier") XML file.
+ *
+ * Every rectangle of every feature is kept in one flat array so the detector can rescale them
+ * all once per window size. Tree nodes reference their children either by node index within the
+ * tree or, for leaves, by the leaf value. Tilted (45 degree) features are not supported.
+ */
+public final class HaarCascade {
+
+    private final int windowWidth;
+    private final int windowHeight;
+    private final Stage[] stages;
+    // x, y, width, height per rectangle
+    private final int[] rects;
+    private final float[] weights;
+
+    private HaarCascade(int windowWidth, int windowHeight, Stage[] stages, int[] rects, float[] weights) {
+        this.windowWidth = windowWidth;
+        this.windowHeight = windowHeight;
+        this.stages = stages;
+        this.rects = rects;
+        this.weights = weights;
+    }
+
+    /**
+     * Parse a cascade; fails if the file is not a complete classifier (every node needs its feature,
+     * threshold and both branches)
+     */
+    public static HaarCascade load(InputStream xml) {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            Document document = builder.parse(xml);
+
+            Element cascade = firstChild(document.getDocumentElement());
+            if (cascade == null) {
+                throw new RuntimeException("No classifier in cascade file");
+            }
+            String[] size = text(cascade, "size").split("\\s+");
+
+            List<Stage> stages = new ArrayList<>();
+            List<int[]> rects = new ArrayList<>();
+            List<Float> weights = new ArrayList<>();
+            for (Element stageElement : children(required(cascade, "stages"))) {
+                List<Tree> trees = new ArrayList<>();
+                for (Element treeElement : children(required(stageElement, "trees"))) {
+                    List<TreeNode> nodes = new ArrayList<>();
+                    for (Element nodeElement : children(treeElement)) {
+                        nodes.add(parseNode(nodeElement, rects, weights));
+                    }
+                    trees.add(new Tree(nodes.toArray(new TreeNode[0])));
+                }
+                float threshold = Float.parseFloat(text(stageElement, "stage_threshold"));
+                stages.add(new Stage(trees.toArray(new Tree[0]), threshold));
+            }
+            if (stages.isEmpty()) {
+                throw new RuntimeException("Cascade has no stages");
+            }
+
+            int[] flatRects = new int[rects.size() * 4];
+            float[] flatWeights = new float[weights.size()];
+            for (int i = 0; i < rects.size(); i++) {
+                System.arraycopy(rects.get(i), 0, flatRects, i * 4, 4);
+                flatWeights[i] = weights.get(i);
+            }
+            return new HaarCascade(Integer.parseInt(size[0]), Integer.parseInt(size[1]),
+                    stages.toArray(new Stage[0]), flatRects, flatWeights);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read Haar cascade: " + e.getMessage(), e);
+        }
+    }
+
+    private static TreeNode parseNode(Element node, List<int[]> rects, List<Float> weights) {
+        Element feature = required(node, "feature");
+        Element tilted = child(feature, "tilted");
+        if (tilted != null && !"0".equals(tilted.getTextContent().trim())) {
+            throw new RuntimeException("Tilted Haar features are not supported");
+        }
+
+        int firstRect = rects.size();
+        for (Element rect : children(required(feature, "rects"))) {
+            String[] values = rect.getTextContent().trim().split("\\s+");
+            rects.add(new int[] {
+                    Integer.parseInt(values[0]), Integer.parseInt(values[1]),
+                    Integer.parseInt(values[2]), Integer.parseInt(values[3])});
+            weights.add(Float.parseFloat(values[4]));
+        }
+        int rectCount = rects.size() - firstRect;
+        if (rectCount == 0) {
+            throw new RuntimeException("Haar feature without rectangles");
+        }
+
+        float threshold = Float.parseFloat(text(node, "threshold"));
+        TreeNode parsed = new TreeNode(firstRect, rectCount, threshold);
+        if (child(node, "left_node") != null) {
+            parsed.left = Integer.parseInt(text(node, "left_node"));
+        } else {
+            parsed.leftValue = Float.parseFloat(text(node, "left_val"));
+        }
+        if (child(node, "right_node") != null) {
+            parsed.right = Integer.parseInt(text(node, "right_node"));
+        } else {
+            parsed.rightValue = Float.parseFloat(text(node, "right_val"));
+        }
+        return parsed;
+    }
+
+    private static List<Element> children(Element parent) {
+        List<Element> elements = new ArrayList<>();
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element) {
+                elements.add((Element) node);
+            }
+        }
+        return elements;
+    }
+
+    private static Element firstChild(Element parent) {
+        List<Element> elements = children(parent);
+        return elements.isEmpty() ? null : elements.get(0);
+    }
+
+    private static Element child(Element parent, String name) {
+        for (Element element : children(parent)) {
+            if (element.getTagName().equals(name)) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    private static Element required(Element parent, String name) {
+        Element element = child(parent, name);
+        if (element == null) {
+            throw new RuntimeException("Incomplete Haar cascade: <" + parent.getTagName() + "> has no <" + name + ">");
+        }
+        return element;
+    }
+
+    private static String text(Element parent, String name) {
+        return required(parent, name).getTextContent().trim();
+    }
+
+    int getWindowWidth() {
+        return windowWidth;
+    }
+
+    int getWindowHeight() {
+        return windowHeight;
+    }
+
+    Stage[] getStages() {
+        return stages;
+    }
+
+    int[] getRects() {
+        return rects;
+    }
+
+    float[] getWeights() {
+        return weights;
+    }
+
+    public int getStageCount() {
+        return stages.length;
+    }
+
+    /**
+     * Boosted stage: a window passes if its trees' leaf values sum to at least the threshold
+     */
+    static final class Stage {
+        final Tree[] trees;
+        final float threshold;
+
+        Stage(Tree[] trees, float threshold) {
+            this.trees = trees;
+            this.threshold = threshold;
+        }
+    }
+
+    static final class Tree {
+        final TreeNode[] nodes;
+
+        Tree(TreeNode[] nodes) {
+            this.nodes = nodes;
+        }
+    }
+
+    /**
+     * Splits on one feature; a branch is a node index, or -1 with the leaf value set
+     */
+    static final class TreeNode {
+        final int firstRect;
+        final int rectCount;
+        final float threshold;
+        int left = -1;
+        int right = -1;
+        float leftValue;
+        float rightValue;
+
+        TreeNode(int firstRect, int rectCount, float threshold) {
+            this.firstRect = firstRect;
+            this.rectCount = rectCount;
+            this.threshold = threshold;
+        }
+    }
+}
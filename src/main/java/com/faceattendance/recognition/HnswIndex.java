@@ -0,0 +1,295 @@
+package com.faceattendance.recognition;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Hierarchical Navigable Small World graph over gallery slots.
+ *
+ * Nodes are gallery slot numbers and closeness is the weighted template similarity, so every
+ * score seen during a search is exact; only the set of visited candidates is approximate.
+ * Deletes are tombstones: the node keeps guiding searches but is never returned. The owning
+ * gallery rebuilds the index when it compacts its slots.
+ *
+ * Not thread-safe for writers; searches may run concurrently with each other.
+ */
+final class HnswIndex {
+
+    /**
+     * Similarity source for the graph (higher is closer)
+     */
+    interface Similarity {
+        double similarity(ByteBuffer query, int queryOffset, int node);
+
+        double similarity(int nodeA, int nodeB);
+    }
+
+    private static final ThreadLocal<VisitedSet> VISITED = ThreadLocal.withInitial(VisitedSet::new);
+
+    private final Similarity similarity;
+    private final int maxLinks;
+    private final int maxLinksLevel0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+
+    // links[node][level] = { count, neighbour... }
+    private int[][][] links = new int[0][][];
+    private boolean[] deleted = new boolean[0];
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private int nodeCount;
+
+    HnswIndex(Similarity similarity, int m, int efConstruction) {
+        this.similarity = similarity;
+        this.maxLinks = Math.max(2, m);
+        this.maxLinksLevel0 = this.maxLinks * 2;
+        this.efConstruction = Math.max(efConstruction, this.maxLinks);
+        this.levelMultiplier = 1.0 / Math.log(this.maxLinks);
+    }
+
+    int size() {
+        return nodeCount;
+    }
+
+    /**
+     * Add a node; {@code vector} holds the node's own row at {@code offset}
+     */
+    void insert(int node, ByteBuffer vector, int offset) {
+        ensureCapacity(node + 1);
+        int level = (int) Math.floor(-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[1 + (l == 0 ? maxLinksLevel0 : maxLinks)];
+        }
+        links[node] = nodeLinks;
+        deleted[node] = false;
+        nodeCount++;
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int current = entryPoint;
+        double currentSimilarity = similarity.similarity(vector, offset, current);
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(vector, offset, current, currentSimilarity, l);
+            currentSimilarity = similarity.similarity(vector, offset, current);
+        }
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> nearest = searchLayer(vector, offset, current, currentSimilarity, efConstruction, l);
+            int limit = l == 0 ? maxLinksLevel0 : maxLinks;
+            int connected = 0;
+            for (Candidate candidate : nearest) {
+                if (connected == maxLinks) {
+                    break;
+                }
+                if (candidate.node == node) {
+                    continue;
+                }
+                addLink(node, l, candidate.node, limit);
+                addLink(candidate.node, l, node, limit);
+                connected++;
+            }
+            Candidate closest = nearest.get(0);
+            current = closest.node;
+            currentSimilarity = closest.similarity;
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * Tombstone a node; it is skipped in results but still used for navigation
+     */
+    void delete(int node) {
+        if (node < deleted.length && links[node] != null && !deleted[node]) {
+            deleted[node] = true;
+            nodeCount--;
+        }
+    }
+
+    /**
+     * Up to {@code k} live nodes closest to the query, best first
+     */
+    int[] search(ByteBuffer query, int queryOffset, int k, int ef) {
+        if (entryPoint < 0 || nodeCount == 0) {
+            return new int[0];
+        }
+
+        int current = entryPoint;
+        double currentSimilarity = similarity.similarity(query, queryOffset, current);
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedyClosest(query, queryOffset, current, currentSimilarity, l);
+            currentSimilarity = similarity.similarity(query, queryOffset, current);
+        }
+
+        List<Candidate> nearest = searchLayer(query, queryOffset, current, currentSimilarity, Math.max(ef, k), 0);
+        int[] result = new int[Math.min(k, nearest.size())];
+        int count = 0;
+        for (Candidate candidate : nearest) {
+            if (count == result.length) {
+                break;
+            }
+            if (!deleted[candidate.node]) {
+                result[count++] = candidate.node;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private int greedyClosest(ByteBuffer query, int queryOffset, int start, double startSimilarity, int level) {
+        int current = start;
+        double best = startSimilarity;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbours = links[current][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int candidate = neighbours[i];
+                double candidateSimilarity = similarity.similarity(query, queryOffset, candidate);
+                if (candidateSimilarity > best) {
+                    best = candidateSimilarity;
+                    current = candidate;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Beam search on one layer; returns up to ef candidates, most similar first
+     */
+    private List<Candidate> searchLayer(ByteBuffer query, int queryOffset, int entry, double entrySimilarity, int ef, int level) {
+        VisitedSet seen = VISITED.get();
+        seen.reset(links.length);
+
+        PriorityQueue<Candidate> frontier = new PriorityQueue<>(Comparator.comparingDouble((Candidate c) -> c.similarity).reversed());
+        PriorityQueue<Candidate> results = new PriorityQueue<>(Comparator.comparingDouble((Candidate c) -> c.similarity));
+
+        Candidate start = new Candidate(entry, entrySimilarity);
+        seen.add(entry);
+        frontier.add(start);
+        results.add(start);
+
+        while (!frontier.isEmpty()) {
+            Candidate closest = frontier.poll();
+            if (results.size() >= ef && closest.similarity < results.peek().similarity) {
+                break;
+            }
+
+            int[][] nodeLinks = links[closest.node];
+            if (level >= nodeLinks.length) {
+                continue;
+            }
+            int[] neighbours = nodeLinks[level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (!seen.add(neighbour)) {
+                    continue;
+                }
+                double neighbourSimilarity = similarity.similarity(query, queryOffset, neighbour);
+                if (results.size() < ef || neighbourSimilarity > results.peek().similarity) {
+                    Candidate candidate = new Candidate(neighbour, neighbourSimilarity);
+                    frontier.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+
+        List<Candidate> ordered = new ArrayList<>(results);
+        ordered.sort(Comparator.comparingDouble((Candidate c) -> c.similarity).reversed());
+        return ordered;
+    }
+
+    private void addLink(int node, int level, int neighbour, int limit) {
+        int[] neighbours = links[node][level];
+        int count = neighbours[0];
+        for (int i = 1; i <= count; i++) {
+            if (neighbours[i] == neighbour) {
+                return;
+            }
+        }
+        if (count < limit) {
+            neighbours[count + 1] = neighbour;
+            neighbours[0] = count + 1;
+            return;
+        }
+
+        // Full: replace the least similar link if the new one is closer
+        int weakest = -1;
+        double weakestSimilarity = similarity.similarity(node, neighbour);
+        for (int i = 1; i <= count; i++) {
+            double linkSimilarity = similarity.similarity(node, neighbours[i]);
+            if (linkSimilarity < weakestSimilarity) {
+                weakestSimilarity = linkSimilarity;
+                weakest = i;
+            }
+        }
+        if (weakest > 0) {
+            neighbours[weakest] = neighbour;
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= links.length) {
+            return;
+        }
+        int capacity = Math.max(required, Math.max(16, links.length * 2));
+        links = Arrays.copyOf(links, capacity);
+        deleted = Arrays.copyOf(deleted, capacity);
+    }
+
+    private static final class Candidate {
+        private final int node;
+        private final double similarity;
+
+        Candidate(int node, double similarity) {
+            this.node = node;
+            this.similarity = similarity;
+        }
+    }
+
+    /**
+     * Generation-stamped visited marks, reused per thread
+     */
+    private static final class VisitedSet {
+        private int[] marks = new int[0];
+        private int generation;
+
+        void reset(int capacity) {
+            if (marks.length < capacity) {
+                marks = new int[capacity];
+                generation = 0;
+            }
+            generation++;
+            if (generation == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                generation = 1;
+            }
+        }
+
+        boolean add(int node) {
+            if (marks[node] == generation) {
+                return false;
+            }
+            marks[node] = generation;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.faceattendance.recognition;
+
+/**
+ * Summed-area tables of a grayscale plane's values and squared values, so the sum, mean and
+ * variance of any rectangle take four lookups each.
+ *
+ * Tables have one extra leading row and column of zeros: entry (x, y) is the sum over the
+ * pixels above and to the left of it. Value sums are ints, which holds for planes up to
+ * 2^31 / 255 (about 8.4 million) pixels, well above the largest image decoded. The arrays are
+ * per-thread scratch, so an instance is only valid inside the call that built it.
+ */
+final class IntegralImage {
+
+    private final int[] sums;
+    private final long[] squares;
+    private final int width;
+    private final int height;
+
+    private IntegralImage(int[] sums, long[] squares, int width, int height) {
+        this.sums = sums;
+        this.squares = squares;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Tables with row 0 and column 0 cleared, for a caller that fills the rest row by row with {@link #fillRow}
+     */
+    static IntegralImage allocate(int width, int height) {
+        int stride = width + 1;
+        ExtractionScratch scratch = ExtractionScratch.get();
+        int[] sums = scratch.integral(stride * (height + 1));
+        long[] squares = scratch.squaredIntegral(stride * (height + 1));
+        for (int i = 0; i < stride; i++) {
+            sums[i] = 0;
+            squares[i] = 0;
+        }
+        for (int y = 1; y <= height; y++) {
+            sums[y * stride] = 0;
+            squares[y * stride] = 0;
+        }
+        return new IntegralImage(sums, squares, width, height);
+    }
+
+    static IntegralImage of(byte[] pixels, int width, int height) {
+        IntegralImage integral = allocate(width, height);
+        for (int y = 0; y < height; y++) {
+            integral.fillRow(pixels, y);
+        }
+        return integral;
+    }
+
+    /**
+     * Add source row {@code y}; rows must be filled in order
+     */
+    void fillRow(byte[] pixels, int y) {
+        int stride = width + 1;
+        int in = y * width;
+        int out = (y + 1) * stride + 1;
+        int rowSum = 0;
+        long rowSquares = 0;
+        for (int x = 0; x < width; x++) {
+            int value = pixels[in + x] & 0xFF;
+            rowSum += value;
+            rowSquares += value * value;
+            sums[out + x] = sums[out + x - stride] + rowSum;
+            squares[out + x] = squares[out + x - stride] + rowSquares;
+        }
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    int getStride() {
+        return width + 1;
+    }
+
+    /**
+     * Raw value table, indexed {@code y * stride + x}
+     */
+    int[] getSums() {
+        return sums;
+    }
+
+    long[] getSquares() {
+        return squares;
+    }
+
+    long sum(int x, int y, int w, int h) {
+        int stride = width + 1;
+        int topLeft = y * stride + x;
+        int bottomLeft = topLeft + h * stride;
+        return (long) sums[bottomLeft + w] - sums[bottomLeft] - sums[topLeft + w] + sums[topLeft];
+    }
+
+    long squareSum(int x, int y, int w, int h) {
+        int stride = width + 1;
+        int topLeft = y * stride + x;
+        int bottomLeft = topLeft + h * stride;
+        return squares[bottomLeft + w] - squares[bottomLeft] - squares[topLeft + w] + squares[topLeft];
+    }
+
+    /**
+     * Standard deviation of every cell of a grid x grid partition into {@code out} (row-major).
+     * Cells are width / grid by height / grid pixels from the top left, any remainder is left out,
+     * and all cells are 0 if the plane is smaller than the grid.
+     */
+    void blockDeviations(int grid, double[] out) {
+        int cellWidth = width / grid;
+        int cellHeight = height / grid;
+        int count = cellWidth * cellHeight;
+        for (int row = 0; row < grid; row++) {
+            for (int column = 0; column < grid; column++) {
+                int cell = row * grid + column;
+                if (count == 0) {
+                    out[cell] = 0;
+                    continue;
+                }
+                int x = column * cellWidth;
+                int y = row * cellHeight;
+                double mean = (double) sum(x, y, cellWidth, cellHeight) / count;
+                double variance = ((double) squareSum(x, y, cellWidth, cellHeight) / count) - (mean * mean);
+                out[cell] = Math.sqrt(variance);
+            }
+        }
+    }
+}
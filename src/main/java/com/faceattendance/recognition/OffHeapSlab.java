@@ -0,0 +1,87 @@
+package com.faceattendance.recognition;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Fixed-width rows in one contiguous, 64-byte aligned direct buffer.
+ *
+ * Keeps gallery templates out of the Java heap: the GC sees one buffer object per slab no
+ * matter how many rows it holds. Reads use absolute accessors only, so any number of threads
+ * may read while no thread writes. Growing or shrinking copies into a fresh buffer; the old
+ * one is released when it is garbage collected.
+ */
+public final class OffHeapSlab {
+
+    private static final int ALIGNMENT = 64;
+
+    private final int rowBytes;
+    private ByteBuffer buffer;
+    private int capacity;
+
+    public OffHeapSlab(int rowBytes, int capacity) {
+        this.rowBytes = rowBytes;
+        this.buffer = allocate(rowBytes, capacity);
+        this.capacity = capacity;
+    }
+
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int rowBytes() {
+        return rowBytes;
+    }
+
+    /**
+     * Byte offset of a row
+     */
+    public int offset(int row) {
+        return row * rowBytes;
+    }
+
+    public long bytes() {
+        return (long) capacity * rowBytes;
+    }
+
+    /**
+     * Grow (doubling) until at least {@code rows} rows fit
+     */
+    public void ensureCapacity(int rows) {
+        if (rows > capacity) {
+            resize(Math.max(rows, capacity * 2), capacity);
+        }
+    }
+
+    /**
+     * Reallocate to {@code rows} rows, keeping the first {@code used}
+     */
+    public void resize(int rows, int used) {
+        ByteBuffer resized = allocate(rowBytes, rows);
+        resized.put(0, buffer, 0, Math.min(used, rows) * rowBytes);
+        buffer = resized;
+        capacity = rows;
+    }
+
+    /**
+     * Copy one row over another
+     */
+    public void move(int from, int to) {
+        buffer.put(offset(to), buffer, offset(from), rowBytes);
+    }
+
+    private static ByteBuffer allocate(int rowBytes, int rows) {
+        long bytes = (long) rowBytes * rows;
+        // Both ends of an aligned slice are rounded inwards; two alignments of slack keep every row
+        if (bytes + 2 * ALIGNMENT > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Gallery slab too large: " + rows + " rows of " + rowBytes + " bytes");
+        }
+        return ByteBuffer.allocateDirect((int) bytes + 2 * ALIGNMENT)
+                .alignedSlice(ALIGNMENT)
+                .order(ByteOrder.nativeOrder());
+    }
+}
@@ -0,0 +1,116 @@
+package com.faceattendance.recognition;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Int8 copy of normalised template vectors, for a cheap first pass over a gallery.
+ *
+ * Each section of a normalised vector is stored as signed bytes with its own scale
+ * (largest magnitude maps to 127), so a section dot product is an integer sum times the two
+ * scales. Scores are approximate and only used to pick candidates for an exact re-rank.
+ *
+ * A quantised row is {@link #ROW_BYTES} bytes: the codes, then the four section scales.
+ */
+public final class QuantizedKernel {
+
+    public static final int SECTIONS = 4;
+    public static final int SCALES_OFFSET = SimilarityKernel.VECTOR_LENGTH;
+    public static final int ROW_BYTES = SCALES_OFFSET + SECTIONS * Float.BYTES;
+
+    private static final int[] OFFSETS = {
+            SimilarityKernel.HIST_OFFSET, SimilarityKernel.LBP_OFFSET,
+            SimilarityKernel.EDGE_OFFSET, SimilarityKernel.TEXT_OFFSET
+    };
+    private static final int[] LENGTHS = {
+            FaceTemplate.HIST_LENGTH, FaceTemplate.LBP_LENGTH,
+            FaceTemplate.EDGE_LENGTH, FaceTemplate.TEXT_LENGTH
+    };
+
+    private QuantizedKernel() {}
+
+    /**
+     * Quantise a normalised vector into a row starting at byte {@code offset}
+     */
+    public static void quantize(float[] vector, ByteBuffer row, int offset) {
+        for (int s = 0; s < SECTIONS; s++) {
+            int from = OFFSETS[s];
+            int to = from + LENGTHS[s];
+            float max = 0.0f;
+            for (int i = from; i < to; i++) {
+                max = Math.max(max, Math.abs(vector[i]));
+            }
+            float inverse = max > 0 ? 127.0f / max : 0.0f;
+            for (int i = from; i < to; i++) {
+                row.put(offset + i, (byte) Math.round(vector[i] * inverse));
+            }
+            row.putFloat(offset + SCALES_OFFSET + s * Float.BYTES, max / 127.0f);
+        }
+    }
+
+    /**
+     * Approximate weighted similarity (0-100) between two quantised rows
+     */
+    public static double score(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset) {
+        return SimilarityKernel.weighted(
+                section(a, aOffset, b, bOffset, 0), section(a, aOffset, b, bOffset, 1),
+                section(a, aOffset, b, bOffset, 2), section(a, aOffset, b, bOffset, 3));
+    }
+
+    /**
+     * Approximate weighted similarity between a float row (at float index {@code aOffset}) and a quantised row
+     */
+    public static double mixedScore(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset) {
+        return SimilarityKernel.weighted(
+                mixedSection(a, aOffset, b, bOffset, 0), mixedSection(a, aOffset, b, bOffset, 1),
+                mixedSection(a, aOffset, b, bOffset, 2), mixedSection(a, aOffset, b, bOffset, 3));
+    }
+
+    private static double section(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset, int s) {
+        int dot = dot(a, aOffset + OFFSETS[s], b, bOffset + OFFSETS[s], LENGTHS[s]);
+        return SimilarityKernel.section(dot * scale(a, aOffset, s) * scale(b, bOffset, s));
+    }
+
+    private static double mixedSection(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset, int s) {
+        float dot = 0.0f;
+        int ai = (aOffset + OFFSETS[s]) * Float.BYTES;
+        int bi = bOffset + OFFSETS[s];
+        for (int i = 0; i < LENGTHS[s]; i++) {
+            dot += a.getFloat(ai + i * Float.BYTES) * b.get(bi + i);
+        }
+        return SimilarityKernel.section(dot * scale(b, bOffset, s));
+    }
+
+    private static float scale(ByteBuffer row, int offset, int section) {
+        return row.getFloat(offset + SCALES_OFFSET + section * Float.BYTES);
+    }
+
+    /**
+     * Integer dot product, on the Vector API when the similarity kernel uses it (integer sums are
+     * exact, so both paths agree)
+     */
+    static int dot(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset, int length) {
+        if (SimilarityKernel.isVectorEnabled()) {
+            return VectorSimilarityKernel.quantizedDot(a, aOffset, b, bOffset, length);
+        }
+        return scalarDot(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Four independent accumulators keep the loop free of carried dependencies
+     */
+    static int scalarDot(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset, int length) {
+        int s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int upper = length & ~3;
+        int i = 0;
+        for (; i < upper; i += 4) {
+            s0 += a.get(aOffset + i) * b.get(bOffset + i);
+            s1 += a.get(aOffset + i + 1) * b.get(bOffset + i + 1);
+            s2 += a.get(aOffset + i + 2) * b.get(bOffset + i + 2);
+            s3 += a.get(aOffset + i + 3) * b.get(bOffset + i + 3);
+        }
+        for (; i < length; i++) {
+            s0 += a.get(aOffset + i) * b.get(bOffset + i);
+        }
+        return s0 + s1 + s2 + s3;
+    }
+}
@@ -0,0 +1,64 @@
+package com.faceattendance.recognition;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Employees ranked by similarity, best first
+ */
+public final class RankedCandidates {
+
+    private final String[] employeeIds;
+    private final double[] similarities;
+
+    public RankedCandidates(String[] employeeIds, double[] similarities) {
+        this.employeeIds = employeeIds;
+        this.similarities = similarities;
+    }
+
+    /**
+     * Best {@code k} across several rankings; equal scores keep the earlier ranking's entry first
+     */
+    public static RankedCandidates merge(Collection<RankedCandidates> rankings, int k) {
+        int total = 0;
+        for (RankedCandidates ranking : rankings) {
+            total += ranking.size();
+        }
+        String[] ids = new String[total];
+        double[] scores = new double[total];
+        int count = 0;
+        for (RankedCandidates ranking : rankings) {
+            System.arraycopy(ranking.employeeIds, 0, ids, count, ranking.size());
+            System.arraycopy(ranking.similarities, 0, scores, count, ranking.size());
+            count += ranking.size();
+        }
+
+        Integer[] order = new Integer[total];
+        for (int i = 0; i < total; i++) {
+            order[i] = i;
+        }
+        // Stable sort, so ties stay in ranking order
+        Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+
+        int size = Math.min(k, total);
+        String[] mergedIds = new String[size];
+        double[] mergedScores = new double[size];
+        for (int i = 0; i < size; i++) {
+            mergedIds[i] = ids[order[i]];
+            mergedScores[i] = scores[order[i]];
+        }
+        return new RankedCandidates(mergedIds, mergedScores);
+    }
+
+    public int size() {
+        return employeeIds.length;
+    }
+
+    public String getEmployeeId(int rank) {
+        return employeeIds[rank];
+    }
+
+    public double getSimilarity(int rank) {
+        return similarities[rank];
+    }
+}
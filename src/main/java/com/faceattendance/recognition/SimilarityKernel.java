@@ -0,0 +1,328 @@
+package com.faceattendance.recognition;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Weighted section similarity over pre-normalised template vectors.
+ *
+ * A normalised vector is the four template sections laid out back to back, each scaled to
+ * unit length, so the per-section cosine similarity is a plain dot product. Gallery slabs and
+ * probes hold a vector as a native-order row of {@link #ROW_LENGTH} floats: the vector followed
+ * by its {@link #tailNorms}. Scores are computed straight from such rows, wherever the buffer
+ * lives (heap or direct).
+ *
+ * Dot products run on {@link VectorSimilarityKernel} (jdk.incubator.vector) when the module is
+ * present and enabled. The scalar path accumulates in the same {@link #LANES} interleaved
+ * partial sums and adds them up in the same order, so both paths return bit-identical results.
+ *
+ * {@link #cascadeScore} scores the small EDGE and TEXT sections first, then LBP and HIST block
+ * by block. After each block the unseen part of a section is bounded by the product of both
+ * vectors' remaining norms (Cauchy-Schwarz), and a candidate is dropped once its best possible
+ * score cannot beat a floor. The accumulation order is that of {@link #dot}, so any score it
+ * does finish equals {@link #score}.
+ */
+public final class SimilarityKernel {
+
+    public static final int HIST_OFFSET = 0;
+    public static final int LBP_OFFSET = HIST_OFFSET + FaceTemplate.HIST_LENGTH;
+    public static final int EDGE_OFFSET = LBP_OFFSET + FaceTemplate.LBP_LENGTH;
+    public static final int TEXT_OFFSET = EDGE_OFFSET + FaceTemplate.EDGE_LENGTH;
+    public static final int VECTOR_LENGTH = TEXT_OFFSET + FaceTemplate.TEXT_LENGTH;
+
+    public static final double HIST_WEIGHT = 0.3;
+    public static final double LBP_WEIGHT = 0.4;
+    public static final double EDGE_WEIGHT = 0.2;
+    public static final double TEXT_WEIGHT = 0.1;
+
+    /**
+     * Width of the interleaved accumulation, matching a 256-bit float vector
+     */
+    public static final int LANES = 8;
+
+    /**
+     * HIST and LBP are accumulated in blocks of this many values; the cascade checks its bound
+     * between blocks
+     */
+    public static final int BLOCK = 32;
+    public static final int HIST_BLOCKS = FaceTemplate.HIST_LENGTH / BLOCK;
+    public static final int LBP_BLOCKS = FaceTemplate.LBP_LENGTH / BLOCK;
+    public static final int TAIL_NORMS = HIST_BLOCKS + LBP_BLOCKS;
+
+    /**
+     * Floats per row: the vector, then its tail norms
+     */
+    public static final int ROW_LENGTH = VECTOR_LENGTH + TAIL_NORMS;
+    public static final int ROW_BYTES = ROW_LENGTH * Float.BYTES;
+
+    /**
+     * Returned by {@link #cascadeScore} for candidates that cannot beat the floor
+     */
+    public static final double PRUNED = -1.0;
+
+    // Slack on a bounded dot product, well above the float rounding of a 256-term sum of unit vectors
+    static final double BOUND_SLACK = 1e-4;
+
+    private static final boolean VECTOR_MODULE_PRESENT =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private static volatile boolean vectorEnabled = VECTOR_MODULE_PRESENT;
+
+    private SimilarityKernel() {}
+
+    /**
+     * Enable or disable the vector path; it stays off when jdk.incubator.vector is not resolved
+     */
+    public static void configure(boolean useVectorApi) {
+        vectorEnabled = useVectorApi && VECTOR_MODULE_PRESENT;
+    }
+
+    public static boolean isVectorEnabled() {
+        return vectorEnabled;
+    }
+
+    public static boolean isVectorModulePresent() {
+        return VECTOR_MODULE_PRESENT;
+    }
+
+    /**
+     * Lay out a template's sections into a unit-length-per-section vector
+     */
+    public static float[] normalize(FaceTemplate template) {
+        return normalizeLayout(layout(template));
+    }
+
+    /**
+     * A template's raw section values in the normalised layout; wrong-length sections are left zero
+     */
+    public static float[] layout(FaceTemplate template) {
+        float[] raw = new float[VECTOR_LENGTH];
+        copyInto(template.getHistogram(), raw, HIST_OFFSET, FaceTemplate.HIST_LENGTH);
+        copyInto(template.getLbp(), raw, LBP_OFFSET, FaceTemplate.LBP_LENGTH);
+        copyInto(template.getEdge(), raw, EDGE_OFFSET, FaceTemplate.EDGE_LENGTH);
+        copyInto(template.getTexture(), raw, TEXT_OFFSET, FaceTemplate.TEXT_LENGTH);
+        return raw;
+    }
+
+    /**
+     * Normalise a {@link #layout} in place, each section to unit length
+     */
+    public static float[] normalizeLayout(float[] raw) {
+        normalizeInPlace(raw, HIST_OFFSET, FaceTemplate.HIST_LENGTH);
+        normalizeInPlace(raw, LBP_OFFSET, FaceTemplate.LBP_LENGTH);
+        normalizeInPlace(raw, EDGE_OFFSET, FaceTemplate.EDGE_LENGTH);
+        normalizeInPlace(raw, TEXT_OFFSET, FaceTemplate.TEXT_LENGTH);
+        return raw;
+    }
+
+    private static void copyInto(float[] section, float[] raw, int offset, int length) {
+        // Sections of the wrong length never matched before (similarity 0); an all-zero slice keeps that
+        if (section != null && section.length == length) {
+            System.arraycopy(section, 0, raw, offset, length);
+        }
+    }
+
+    private static void normalizeInPlace(float[] vector, int offset, int length) {
+        double norm = 0.0;
+        for (int i = offset; i < offset + length; i++) {
+            norm += (double) vector[i] * vector[i];
+        }
+        if (norm <= 0) {
+            return;
+        }
+        float inverse = (float) (1.0 / Math.sqrt(norm));
+        for (int i = offset; i < offset + length; i++) {
+            vector[i] = vector[i] * inverse;
+        }
+    }
+
+    /**
+     * Norms of what remains of the HIST and LBP sections after each block (the last entry is 0)
+     */
+    public static float[] tailNorms(float[] vector) {
+        float[] norms = new float[TAIL_NORMS];
+        tailNormsInto(vector, HIST_OFFSET, HIST_BLOCKS, norms, 0);
+        tailNormsInto(vector, LBP_OFFSET, LBP_BLOCKS, norms, HIST_BLOCKS);
+        return norms;
+    }
+
+    private static void tailNormsInto(float[] vector, int offset, int blocks, float[] norms, int normsOffset) {
+        double remaining = 0.0;
+        for (int block = blocks - 1; block >= 0; block--) {
+            norms[normsOffset + block] = (float) Math.sqrt(remaining);
+            int from = offset + block * BLOCK;
+            for (int i = from; i < from + BLOCK; i++) {
+                remaining += (double) vector[i] * vector[i];
+            }
+        }
+    }
+
+    /**
+     * A normalised vector as a standalone heap row
+     */
+    public static ByteBuffer row(float[] vector) {
+        ByteBuffer row = ByteBuffer.allocate(ROW_BYTES).order(ByteOrder.nativeOrder());
+        writeRow(vector, row, 0);
+        return row;
+    }
+
+    /**
+     * Write a normalised vector and its tail norms as a row starting at float index {@code offset}
+     */
+    public static void writeRow(float[] vector, ByteBuffer buffer, int offset) {
+        int index = offset * Float.BYTES;
+        for (float value : vector) {
+            buffer.putFloat(index, value);
+            index += Float.BYTES;
+        }
+        for (float norm : tailNorms(vector)) {
+            buffer.putFloat(index, norm);
+            index += Float.BYTES;
+        }
+    }
+
+    /**
+     * Weighted similarity (0-100) between two rows; offsets are float indexes
+     */
+    public static double score(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset) {
+        if (vectorEnabled) {
+            return VectorSimilarityKernel.score(a, aOffset, b, bOffset);
+        }
+        return scalarScore(a, aOffset, b, bOffset);
+    }
+
+    /**
+     * Per-section similarities (HIST, LBP, EDGE, TEXT) as clamped percentages
+     */
+    public static double[] sectionSimilarities(float[] a, float[] b) {
+        ByteBuffer rowA = row(a);
+        ByteBuffer rowB = row(b);
+        return new double[] {
+                section(dot(rowA, HIST_OFFSET, rowB, HIST_OFFSET, FaceTemplate.HIST_LENGTH)),
+                section(dot(rowA, LBP_OFFSET, rowB, LBP_OFFSET, FaceTemplate.LBP_LENGTH)),
+                section(dot(rowA, EDGE_OFFSET, rowB, EDGE_OFFSET, FaceTemplate.EDGE_LENGTH)),
+                section(dot(rowA, TEXT_OFFSET, rowB, TEXT_OFFSET, FaceTemplate.TEXT_LENGTH))
+        };
+    }
+
+    /**
+     * Same result as {@link #score}, or {@link #PRUNED} as soon as the score provably cannot
+     * exceed {@code floor}
+     */
+    public static double cascadeScore(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset, double floor) {
+        double edge = section(dot(a, aOffset + EDGE_OFFSET, b, bOffset + EDGE_OFFSET, FaceTemplate.EDGE_LENGTH));
+        double text = section(dot(a, aOffset + TEXT_OFFSET, b, bOffset + TEXT_OFFSET, FaceTemplate.TEXT_LENGTH));
+        if (weighted(100, 100, edge, text) <= floor) {
+            return PRUNED;
+        }
+
+        // LBP carries the largest weight, so it goes first; HIST is bounded by 100 meanwhile
+        float lbpDot = boundedDot(a, aOffset + LBP_OFFSET, aOffset + VECTOR_LENGTH + HIST_BLOCKS,
+                b, bOffset + LBP_OFFSET, bOffset + VECTOR_LENGTH + HIST_BLOCKS,
+                LBP_BLOCKS, weighted(100, 0, edge, text), LBP_WEIGHT, floor);
+        if (Float.isNaN(lbpDot)) {
+            return PRUNED;
+        }
+        double lbp = section(lbpDot);
+
+        float histDot = boundedDot(a, aOffset + HIST_OFFSET, aOffset + VECTOR_LENGTH,
+                b, bOffset + HIST_OFFSET, bOffset + VECTOR_LENGTH,
+                HIST_BLOCKS, weighted(0, lbp, edge, text), HIST_WEIGHT, floor);
+        if (Float.isNaN(histDot)) {
+            return PRUNED;
+        }
+        return weighted(section(histDot), lbp, edge, text);
+    }
+
+    /**
+     * Dot product of one section, or NaN once {@code rest + weight * section(bound) <= floor}
+     */
+    static float boundedDot(ByteBuffer a, int aOffset, int aNormsOffset, ByteBuffer b, int bOffset, int bNormsOffset,
+                            int blocks, double rest, double weight, double floor) {
+        if (vectorEnabled) {
+            return VectorSimilarityKernel.boundedDot(a, aOffset, aNormsOffset, b, bOffset, bNormsOffset,
+                    blocks, rest, weight, floor);
+        }
+        float s0 = 0.0f, s1 = 0.0f, s2 = 0.0f, s3 = 0.0f, s4 = 0.0f, s5 = 0.0f, s6 = 0.0f, s7 = 0.0f;
+        for (int block = 0; block < blocks; block++) {
+            int end = (block + 1) * BLOCK;
+            for (int i = block * BLOCK; i < end; i += LANES) {
+                int ai = (aOffset + i) * Float.BYTES;
+                int bi = (bOffset + i) * Float.BYTES;
+                s0 += a.getFloat(ai) * b.getFloat(bi);
+                s1 += a.getFloat(ai + 4) * b.getFloat(bi + 4);
+                s2 += a.getFloat(ai + 8) * b.getFloat(bi + 8);
+                s3 += a.getFloat(ai + 12) * b.getFloat(bi + 12);
+                s4 += a.getFloat(ai + 16) * b.getFloat(bi + 16);
+                s5 += a.getFloat(ai + 20) * b.getFloat(bi + 20);
+                s6 += a.getFloat(ai + 24) * b.getFloat(bi + 24);
+                s7 += a.getFloat(ai + 28) * b.getFloat(bi + 28);
+            }
+            if (block < blocks - 1) {
+                double partial = (double) s0 + s1 + s2 + s3 + s4 + s5 + s6 + s7;
+                if (cannotBeat(partial, a.getFloat((aNormsOffset + block) * Float.BYTES),
+                        b.getFloat((bNormsOffset + block) * Float.BYTES), rest, weight, floor)) {
+                    return Float.NaN;
+                }
+            }
+        }
+        return s0 + s1 + s2 + s3 + s4 + s5 + s6 + s7;
+    }
+
+    static boolean cannotBeat(double partial, float aRemaining, float bRemaining, double rest, double weight, double floor) {
+        double bound = partial + (double) aRemaining * bRemaining + BOUND_SLACK;
+        return rest + weight * Math.max(0, Math.min(100, bound * 100.0)) <= floor;
+    }
+
+    static double scalarScore(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset) {
+        double hist = section(scalarDot(a, aOffset + HIST_OFFSET, b, bOffset + HIST_OFFSET, FaceTemplate.HIST_LENGTH));
+        double lbp = section(scalarDot(a, aOffset + LBP_OFFSET, b, bOffset + LBP_OFFSET, FaceTemplate.LBP_LENGTH));
+        double edge = section(scalarDot(a, aOffset + EDGE_OFFSET, b, bOffset + EDGE_OFFSET, FaceTemplate.EDGE_LENGTH));
+        double text = section(scalarDot(a, aOffset + TEXT_OFFSET, b, bOffset + TEXT_OFFSET, FaceTemplate.TEXT_LENGTH));
+        return weighted(hist, lbp, edge, text);
+    }
+
+    static double weighted(double hist, double lbp, double edge, double text) {
+        return (hist * HIST_WEIGHT) + (lbp * LBP_WEIGHT) + (edge * EDGE_WEIGHT) + (text * TEXT_WEIGHT);
+    }
+
+    /**
+     * Convert a section dot product into a clamped percentage
+     */
+    static double section(float dot) {
+        return Math.max(0, Math.min(100, dot * 100.0));
+    }
+
+    static float dot(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset, int length) {
+        if (vectorEnabled) {
+            return VectorSimilarityKernel.dot(a, aOffset, b, bOffset, length);
+        }
+        return scalarDot(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Dot product with {@link #LANES} interleaved accumulators, summed lane 0 to 7, then the tail
+     */
+    static float scalarDot(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset, int length) {
+        float s0 = 0.0f, s1 = 0.0f, s2 = 0.0f, s3 = 0.0f, s4 = 0.0f, s5 = 0.0f, s6 = 0.0f, s7 = 0.0f;
+        int upper = length - (length % LANES);
+        int i = 0;
+        for (; i < upper; i += LANES) {
+            int ai = (aOffset + i) * Float.BYTES;
+            int bi = (bOffset + i) * Float.BYTES;
+            s0 += a.getFloat(ai) * b.getFloat(bi);
+            s1 += a.getFloat(ai + 4) * b.getFloat(bi + 4);
+            s2 += a.getFloat(ai + 8) * b.getFloat(bi + 8);
+            s3 += a.getFloat(ai + 12) * b.getFloat(bi + 12);
+            s4 += a.getFloat(ai + 16) * b.getFloat(bi + 16);
+            s5 += a.getFloat(ai + 20) * b.getFloat(bi + 20);
+            s6 += a.getFloat(ai + 24) * b.getFloat(bi + 24);
+            s7 += a.getFloat(ai + 28) * b.getFloat(bi + 28);
+        }
+        float sum = s0 + s1 + s2 + s3 + s4 + s5 + s6 + s7;
+        for (; i < length; i++) {
+            sum += a.getFloat((aOffset + i) * Float.BYTES) * b.getFloat((bOffset + i) * Float.BYTES);
+        }
+        return sum;
+    }
+}
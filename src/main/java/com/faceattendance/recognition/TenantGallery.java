@@ -0,0 +1,657 @@
+package com.faceattendance.recognition;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Resident gallery of one tenant's enrolled faces.
+ *
+ * Templates are held pre-normalised in an {@link OffHeapSlab}, one row per employee, and scans
+ * score straight from that direct memory, so the heap only carries ids and digests however many
+ * faces are enrolled. Removing an employee leaves a tombstone (null id) that scans skip; the
+ * slab is compacted once tombstones outnumber live entries, and shrunk when it has become much
+ * larger than needed. Scans take the read lock, changes take the write lock.
+ *
+ * Large galleries are scanned in slot-range chunks on the common fork/join pool; each chunk
+ * keeps its own best/second-best and chunks are merged in slot order, so the result is the
+ * same as a sequential scan.
+ *
+ * Each row also carries the tail norms of its HIST and LBP sections, so scans use the cascade
+ * score and stop scoring candidates that cannot beat the running second best.
+ *
+ * With HNSW enabled, galleries past the configured size are searched through an {@link HnswIndex}
+ * that follows every put and remove. The top graph candidates are re-scored exactly and offered
+ * in slot order, so best, second best and the confidence gap come from exact scores. A sample of
+ * indexed searches also runs the exact scan and records whether both picked the same employee.
+ *
+ * In quantised mode a row is the int8 copy with per-section scales ({@link QuantizedKernel})
+ * followed by the face's raw section values as float16; the rare template for which float16 is
+ * not lossless (never one stored by {@link FaceTemplateCodec}) keeps a float copy on the heap
+ * instead. Scans rank all slots
+ * on the int8 copy, keep the top candidates in a {@link TopKHeap} and re-score those exactly.
+ */
+public class TenantGallery {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Quantised rows: the int8 row, then the raw values as float16
+    private static final int HALVES_OFFSET = QuantizedKernel.ROW_BYTES;
+    private static final int QUANTIZED_ROW_BYTES = HALVES_OFFSET + SimilarityKernel.VECTOR_LENGTH * Short.BYTES;
+
+    private final String tenantId;
+    private final GallerySettings settings;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> slotsByEmployeeId = new HashMap<>();
+
+    private String[] employeeIds = new String[INITIAL_CAPACITY];
+    private byte[][] digests = new byte[INITIAL_CAPACITY][];
+    private final boolean quantized;
+
+    // Float rows (vector and tail norms) or quantised rows, depending on the mode
+    private final OffHeapSlab slab;
+
+    // Quantised mode: raw values of templates that float16 cannot hold exactly
+    private float[][] floatCopies;
+
+    private int slotCount;
+    private int liveCount;
+    private HnswIndex index;
+
+    private final AtomicLong recallSamples = new AtomicLong();
+    private final AtomicLong recallHits = new AtomicLong();
+
+    public TenantGallery(String tenantId, GallerySettings settings) {
+        this.tenantId = tenantId;
+        this.settings = settings;
+        this.quantized = settings.isQuantized();
+        if (quantized) {
+            slab = new OffHeapSlab(QUANTIZED_ROW_BYTES, INITIAL_CAPACITY);
+            floatCopies = new float[INITIAL_CAPACITY][];
+        } else {
+            slab = new OffHeapSlab(SimilarityKernel.ROW_BYTES, INITIAL_CAPACITY);
+        }
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    /**
+     * Add or replace an employee's template
+     */
+    public void put(String employeeId, FaceTemplate template) {
+        float[] raw = SimilarityKernel.layout(template);
+        float[] vector = SimilarityKernel.normalizeLayout(raw.clone());
+        short[] halves = quantized ? toHalves(raw) : null;
+        lock.writeLock().lock();
+        try {
+            removeSlot(employeeId);
+            ensureCapacity(slotCount + 1);
+            int slot = slotCount++;
+            employeeIds[slot] = employeeId;
+            digests[slot] = template.getDigest();
+            if (quantized) {
+                QuantizedKernel.quantize(vector, slab.buffer(), slab.offset(slot));
+                if (halves != null) {
+                    int offset = slab.offset(slot) + HALVES_OFFSET;
+                    for (int i = 0; i < halves.length; i++) {
+                        slab.buffer().putShort(offset + i * Short.BYTES, halves[i]);
+                    }
+                }
+                floatCopies[slot] = halves == null ? raw : null;
+            } else {
+                SimilarityKernel.writeRow(vector, slab.buffer(), rowOffset(slot));
+            }
+            slotsByEmployeeId.put(employeeId, slot);
+            liveCount++;
+            if (index != null) {
+                insertIntoIndex(slot, vector);
+            } else if (settings.isHnswEnabled() && liveCount >= settings.getHnswMinSize()) {
+                buildIndex();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove an employee's template, returning whether one was present
+     */
+    public boolean remove(String employeeId) {
+        lock.writeLock().lock();
+        try {
+            boolean removed = removeSlot(employeeId);
+            if (removed && slotCount - liveCount > Math.max(INITIAL_CAPACITY, liveCount)) {
+                compact();
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Approximate bytes held by templates, off-heap slab included
+     */
+    public long getTemplateBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = slab.bytes();
+            if (quantized) {
+                for (int slot = 0; slot < slotCount; slot++) {
+                    if (floatCopies[slot] != null) {
+                        bytes += (long) floatCopies[slot].length * Float.BYTES;
+                    }
+                }
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Bytes reserved by the off-heap template slab
+     */
+    public long getOffHeapBytes() {
+        lock.readLock().lock();
+        try {
+            return slab.bytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Whether searches currently go through the HNSW index
+     */
+    public boolean isIndexed() {
+        lock.readLock().lock();
+        try {
+            return useIndex();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Indexed searches that were checked against the exact scan
+     */
+    public long getRecallSamples() {
+        return recallSamples.get();
+    }
+
+    /**
+     * Checked searches where the index found the same best employee as the exact scan
+     */
+    public long getRecallHits() {
+        return recallHits.get();
+    }
+
+    /**
+     * Best and second-best candidates, through the HNSW index when the gallery is indexed
+     */
+    public BestMatch findBest(float[] probe, byte[] probeDigest) {
+        lock.readLock().lock();
+        try {
+            ByteBuffer probeRow = SimilarityKernel.row(probe);
+            if (!useIndex()) {
+                return fullScan(probe, probeRow, probeDigest);
+            }
+            BestMatch match = indexedSearch(probeRow, probeDigest);
+            double sampleRate = settings.getHnswRecallSampleRate();
+            if (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+                recordRecall(match, fullScan(probe, probeRow, probeDigest));
+            }
+            return match;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The k most similar employees with exact similarities, best first
+     */
+    public RankedCandidates findTop(float[] probe, byte[] probeDigest, int k) {
+        lock.readLock().lock();
+        try {
+            ByteBuffer probeRow = SimilarityKernel.row(probe);
+            TopKHeap top;
+            if (useIndex() || quantized) {
+                int[] candidates;
+                if (useIndex()) {
+                    candidates = index.search(probeRow, 0, Math.max(k, settings.getHnswRerank()), Math.max(k, settings.getHnswEfSearch()));
+                } else {
+                    candidates = rank(Ranking.approximate(probe, probeDigest, Math.max(2 * k, settings.getQuantizedRerank()))).slotsInOrder();
+                }
+                top = new TopKHeap(k);
+                for (int slot : candidates) {
+                    top.offer(slot, exactScore(probeRow, probeDigest, slot));
+                }
+            } else {
+                top = rank(Ranking.exact(probeRow, probeDigest, k));
+            }
+
+            top.sortDescending();
+            String[] ids = new String[top.size()];
+            double[] similarities = new double[top.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = employeeIds[top.slotAt(i)];
+                similarities[i] = top.scoreAt(i);
+            }
+            return new RankedCandidates(ids, similarities);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean useIndex() {
+        return index != null && settings.isHnswEnabled() && liveCount >= settings.getHnswMinSize();
+    }
+
+    private BestMatch indexedSearch(ByteBuffer probeRow, byte[] probeDigest) {
+        int[] candidates = index.search(probeRow, 0, settings.getHnswRerank(), settings.getHnswEfSearch());
+        Arrays.sort(candidates);
+        BestMatch result = new BestMatch();
+        for (int slot : candidates) {
+            offer(result, probeRow, probeDigest, slot);
+        }
+        return result;
+    }
+
+    private void recordRecall(BestMatch indexed, BestMatch exact) {
+        long samples = recallSamples.incrementAndGet();
+        long hits = exact.getEmployeeId() == null || exact.getEmployeeId().equals(indexed.getEmployeeId())
+                ? recallHits.incrementAndGet() : recallHits.get();
+        if (samples % 100 == 0) {
+            System.out.println("HNSW recall for tenant '" + tenantId + "': " + hits + "/" + samples +
+                    String.format(" (%.2f%%)", hits * 100.0 / samples));
+        }
+    }
+
+    /**
+     * Exhaustive scan, on the fork/join pool for large galleries
+     */
+    private BestMatch fullScan(float[] probe, ByteBuffer probeRow, byte[] probeDigest) {
+        if (quantized) {
+            return quantizedScan(probe, probeRow, probeDigest);
+        }
+        if (liveCount >= settings.getParallelThreshold() && slotCount > settings.getParallelChunkSize()) {
+            return ForkJoinPool.commonPool().invoke(new ScanTask(probeRow, probeDigest, 0, slotCount));
+        }
+        return scanRange(probeRow, probeDigest, 0, slotCount);
+    }
+
+    private BestMatch scanRange(ByteBuffer probeRow, byte[] probeDigest, int from, int to) {
+        BestMatch result = new BestMatch();
+        for (int slot = from; slot < to; slot++) {
+            if (employeeIds[slot] == null) {
+                continue;
+            }
+            offer(result, probeRow, probeDigest, slot);
+        }
+        return result;
+    }
+
+    /**
+     * Rank every slot on the int8 copy, then re-score the top candidates exactly in slot order
+     */
+    private BestMatch quantizedScan(float[] probe, ByteBuffer probeRow, byte[] probeDigest) {
+        TopKHeap top = rank(Ranking.approximate(probe, probeDigest, settings.getQuantizedRerank()));
+
+        BestMatch result = new BestMatch();
+        for (int slot : top.slotsInOrder()) {
+            offer(result, probeRow, probeDigest, slot);
+        }
+        result.prune(liveCount - top.size());
+        return result;
+    }
+
+    /**
+     * Keep the highest-ranked slots of the whole gallery, on the fork/join pool for large galleries
+     */
+    private TopKHeap rank(Ranking ranking) {
+        if (liveCount >= settings.getParallelThreshold() && slotCount > settings.getParallelChunkSize()) {
+            return ForkJoinPool.commonPool().invoke(new RankTask(ranking, 0, slotCount));
+        }
+        return rankRange(ranking, 0, slotCount);
+    }
+
+    private TopKHeap rankRange(Ranking ranking, int from, int to) {
+        TopKHeap top = new TopKHeap(ranking.capacity);
+        ByteBuffer rows = slab.buffer();
+        for (int slot = from; slot < to; slot++) {
+            if (employeeIds[slot] == null) {
+                continue;
+            }
+            if (ranking.probeCodes != null) {
+                if (isIdentical(ranking.probeDigest, slot)) {
+                    // Always re-ranked, so the identical-image shortcut still applies
+                    top.offer(slot, Double.MAX_VALUE);
+                } else {
+                    top.offer(slot, QuantizedKernel.score(ranking.probeCodes, 0, rows, slab.offset(slot)));
+                }
+                continue;
+            }
+            if (isIdentical(ranking.probeDigest, slot)) {
+                top.offer(slot, 100.0);
+                continue;
+            }
+            // Slots arrive in ascending order, so a candidate merely equal to the floor would not get in either
+            double similarity = SimilarityKernel.cascadeScore(ranking.probeRow, 0, rows, rowOffset(slot), top.floor());
+            if (similarity != SimilarityKernel.PRUNED) {
+                top.offer(slot, similarity);
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Exact similarity of one slot, including the identical-image shortcut
+     */
+    private double exactScore(ByteBuffer probeRow, byte[] probeDigest, int slot) {
+        if (isIdentical(probeDigest, slot)) {
+            return 100.0;
+        }
+        if (quantized) {
+            return SimilarityKernel.score(probeRow, 0, SimilarityKernel.row(exactVector(slot)), 0);
+        }
+        return SimilarityKernel.score(probeRow, 0, slab.buffer(), rowOffset(slot));
+    }
+
+    private void offer(BestMatch result, ByteBuffer probeRow, byte[] probeDigest, int slot) {
+        // Identical image shortcut, as in FaceRecognitionService.compareFaces
+        if (isIdentical(probeDigest, slot)) {
+            result.offer(employeeIds[slot], 100.0);
+            return;
+        }
+        if (quantized) {
+            result.offer(employeeIds[slot], exactScore(probeRow, probeDigest, slot));
+            return;
+        }
+        double similarity = SimilarityKernel.cascadeScore(probeRow, 0, slab.buffer(), rowOffset(slot),
+                result.getSecondBestSimilarity());
+        if (similarity == SimilarityKernel.PRUNED) {
+            result.prune();
+        } else {
+            result.offer(employeeIds[slot], similarity);
+        }
+    }
+
+    private boolean isIdentical(byte[] probeDigest, int slot) {
+        return probeDigest != null && probeDigest.length > 0 && Arrays.equals(probeDigest, digests[slot]);
+    }
+
+    /**
+     * Float index of a slot's row in float mode
+     */
+    private static int rowOffset(int slot) {
+        return slot * SimilarityKernel.ROW_LENGTH;
+    }
+
+    /**
+     * A quantised slot's normalised float vector, rebuilt from its exact copy
+     */
+    private float[] exactVector(int slot) {
+        float[] raw = floatCopies[slot];
+        if (raw == null) {
+            ByteBuffer rows = slab.buffer();
+            int offset = slab.offset(slot) + HALVES_OFFSET;
+            raw = new float[SimilarityKernel.VECTOR_LENGTH];
+            for (int i = 0; i < raw.length; i++) {
+                raw[i] = FaceTemplateCodec.fromHalf(rows.getShort(offset + i * Short.BYTES));
+            }
+        } else {
+            raw = raw.clone();
+        }
+        return SimilarityKernel.normalizeLayout(raw);
+    }
+
+    /**
+     * Raw values as float16, or null if any value would not survive the round trip
+     */
+    private static short[] toHalves(float[] raw) {
+        short[] halves = new short[raw.length];
+        for (int i = 0; i < raw.length; i++) {
+            halves[i] = FaceTemplateCodec.toHalf(raw[i]);
+            if (Float.floatToIntBits(FaceTemplateCodec.fromHalf(halves[i])) != Float.floatToIntBits(raw[i])) {
+                return null;
+            }
+        }
+        return halves;
+    }
+
+    private boolean removeSlot(String employeeId) {
+        Integer slot = slotsByEmployeeId.remove(employeeId);
+        if (slot == null) {
+            return false;
+        }
+        employeeIds[slot] = null;
+        digests[slot] = null;
+        if (quantized) {
+            floatCopies[slot] = null;
+        }
+        liveCount--;
+        if (index != null) {
+            // The row stays in place so the graph can still route through the node
+            index.delete(slot);
+        }
+        return true;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= employeeIds.length) {
+            return;
+        }
+        int capacity = Math.max(required, employeeIds.length * 2);
+        employeeIds = Arrays.copyOf(employeeIds, capacity);
+        digests = Arrays.copyOf(digests, capacity);
+        if (quantized) {
+            floatCopies = Arrays.copyOf(floatCopies, capacity);
+        }
+        slab.ensureCapacity(capacity);
+    }
+
+    private void compact() {
+        int target = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (employeeIds[slot] == null) {
+                continue;
+            }
+            if (slot != target) {
+                employeeIds[target] = employeeIds[slot];
+                digests[target] = digests[slot];
+                slab.move(slot, target);
+                if (quantized) {
+                    floatCopies[target] = floatCopies[slot];
+                }
+                slotsByEmployeeId.put(employeeIds[target], target);
+            }
+            target++;
+        }
+        Arrays.fill(employeeIds, target, slotCount, null);
+        Arrays.fill(digests, target, slotCount, null);
+        if (quantized) {
+            Arrays.fill(floatCopies, target, slotCount, null);
+        }
+        slotCount = target;
+        shrink();
+        if (index != null) {
+            buildIndex();
+        }
+    }
+
+    /**
+     * Give memory back after a mass removal: halve the arrays and the slab while a quarter or less is used
+     */
+    private void shrink() {
+        int capacity = employeeIds.length;
+        while (capacity > INITIAL_CAPACITY && slotCount <= capacity / 4) {
+            capacity /= 2;
+        }
+        if (capacity == employeeIds.length) {
+            return;
+        }
+        employeeIds = Arrays.copyOf(employeeIds, capacity);
+        digests = Arrays.copyOf(digests, capacity);
+        if (quantized) {
+            floatCopies = Arrays.copyOf(floatCopies, capacity);
+        }
+        slab.resize(capacity, slotCount);
+    }
+
+    /**
+     * (Re)build the graph over all live slots
+     */
+    private void buildIndex() {
+        long start = System.currentTimeMillis();
+        index = new HnswIndex(new SlotSimilarity(), settings.getHnswM(), settings.getHnswEfConstruction());
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (employeeIds[slot] == null) {
+                continue;
+            }
+            insertIntoIndex(slot, quantized ? exactVector(slot) : null);
+        }
+        System.out.println("HNSW index built for tenant '" + tenantId + "': " + index.size() + " faces in " +
+                (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Float-mode nodes are inserted from their slab row; quantised nodes from a row of their exact vector
+     */
+    private void insertIntoIndex(int slot, float[] vector) {
+        if (quantized) {
+            index.insert(slot, SimilarityKernel.row(vector), 0);
+        } else {
+            index.insert(slot, slab.buffer(), rowOffset(slot));
+        }
+    }
+
+    /**
+     * Graph similarity read straight from the slab (the int8 copy in quantised mode); the slab
+     * buffer may be replaced as it grows
+     */
+    private class SlotSimilarity implements HnswIndex.Similarity {
+
+        @Override
+        public double similarity(ByteBuffer query, int queryOffset, int node) {
+            if (quantized) {
+                return QuantizedKernel.mixedScore(query, queryOffset, slab.buffer(), slab.offset(node));
+            }
+            return SimilarityKernel.score(query, queryOffset, slab.buffer(), rowOffset(node));
+        }
+
+        @Override
+        public double similarity(int nodeA, int nodeB) {
+            if (quantized) {
+                return QuantizedKernel.score(slab.buffer(), slab.offset(nodeA), slab.buffer(), slab.offset(nodeB));
+            }
+            return SimilarityKernel.score(slab.buffer(), rowOffset(nodeA), slab.buffer(), rowOffset(nodeB));
+        }
+    }
+
+    /**
+     * Fork/join scan of a slot range; runs while the caller holds the read lock
+     */
+    private class ScanTask extends RecursiveTask<BestMatch> {
+
+        private final ByteBuffer probeRow;
+        private final byte[] probeDigest;
+        private final int from;
+        private final int to;
+
+        ScanTask(ByteBuffer probeRow, byte[] probeDigest, int from, int to) {
+            this.probeRow = probeRow;
+            this.probeDigest = probeDigest;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected BestMatch compute() {
+            if (to - from <= settings.getParallelChunkSize()) {
+                return scanRange(probeRow, probeDigest, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            ScanTask earlier = new ScanTask(probeRow, probeDigest, from, middle);
+            ScanTask later = new ScanTask(probeRow, probeDigest, middle, to);
+            later.fork();
+            BestMatch result = earlier.compute();
+            return result.merge(later.join());
+        }
+    }
+
+    /**
+     * Probe of a top-k ranking: exact (float slab, cascade-pruned) or approximate (int8 copy)
+     */
+    private static final class Ranking {
+
+        private final ByteBuffer probeRow;
+        private final ByteBuffer probeCodes;
+        private final byte[] probeDigest;
+        private final int capacity;
+
+        private Ranking(ByteBuffer probeRow, ByteBuffer probeCodes, byte[] probeDigest, int capacity) {
+            this.probeRow = probeRow;
+            this.probeCodes = probeCodes;
+            this.probeDigest = probeDigest;
+            this.capacity = capacity;
+        }
+
+        static Ranking exact(ByteBuffer probeRow, byte[] probeDigest, int capacity) {
+            return new Ranking(probeRow, null, probeDigest, capacity);
+        }
+
+        static Ranking approximate(float[] probe, byte[] probeDigest, int capacity) {
+            ByteBuffer probeCodes = ByteBuffer.allocate(QuantizedKernel.ROW_BYTES).order(ByteOrder.nativeOrder());
+            QuantizedKernel.quantize(probe, probeCodes, 0);
+            return new Ranking(null, probeCodes, probeDigest, capacity);
+        }
+    }
+
+    /**
+     * Fork/join top-k ranking of a slot range; runs while the caller holds the read lock
+     */
+    private class RankTask extends RecursiveTask<TopKHeap> {
+
+        private final Ranking ranking;
+        private final int from;
+        private final int to;
+
+        RankTask(Ranking ranking, int from, int to) {
+            this.ranking = ranking;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected TopKHeap compute() {
+            if (to - from <= settings.getParallelChunkSize()) {
+                return rankRange(ranking, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            RankTask earlier = new RankTask(ranking, from, middle);
+            RankTask later = new RankTask(ranking, middle, to);
+            later.fork();
+            TopKHeap result = earlier.compute();
+            return result.merge(later.join());
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.faceattendance.recognition;
+
+import java.util.Arrays;
+
+/**
+ * Bounded min-heap of the k highest-scoring gallery slots.
+ *
+ * Primitive arrays only, so a scan allocates nothing per candidate. Equal scores prefer the
+ * lower slot, which keeps sequential and fork/join scans in agreement.
+ */
+public final class TopKHeap {
+
+    private final int capacity;
+    private final int[] slots;
+    private final double[] scores;
+    private int size;
+
+    public TopKHeap(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.slots = new int[this.capacity];
+        this.scores = new double[this.capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void offer(int slot, double score) {
+        if (size < capacity) {
+            slots[size] = slot;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (worse(0, slot, score)) {
+            slots[0] = slot;
+            scores[0] = score;
+            siftDown(0, size);
+        }
+    }
+
+    /**
+     * Fold in the entries of another heap
+     */
+    public TopKHeap merge(TopKHeap other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.slots[i], other.scores[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Retained slots in ascending slot order
+     */
+    public int[] slotsInOrder() {
+        int[] result = Arrays.copyOf(slots, size);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Score a candidate must beat to get in, or negative infinity while there is room
+     */
+    public double floor() {
+        return size < capacity ? Double.NEGATIVE_INFINITY : scores[0];
+    }
+
+    /**
+     * Order the entries best first (ends heap use); read them back with slotAt / scoreAt
+     */
+    public void sortDescending() {
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    public int slotAt(int index) {
+        return slots[index];
+    }
+
+    public double scoreAt(int index) {
+        return scores[index];
+    }
+
+    /**
+     * Whether the entry at {@code index} ranks below (slot, score)
+     */
+    private boolean worse(int index, int slot, double score) {
+        return scores[index] < score || (scores[index] == score && slots[index] > slot);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!worse(index, slots[parent], scores[parent])) {
+                break;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index, int limit) {
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= limit) {
+                return;
+            }
+            int right = left + 1;
+            int worst = right < limit && worse(right, slots[left], scores[left]) ? right : left;
+            if (!worse(worst, slots[index], scores[index])) {
+                return;
+            }
+            swap(index, worst);
+            index = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int slot = slots[a];
+        slots[a] = slots[b];
+        slots[b] = slot;
+        double score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
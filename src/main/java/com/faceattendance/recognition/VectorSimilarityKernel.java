@@ -0,0 +1,102 @@
+package com.faceattendance.recognition;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Vector API implementation of {@link SimilarityKernel}.
+ *
+ * Only loaded when jdk.incubator.vector is resolved (run with
+ * {@code --add-modules jdk.incubator.vector}). Uses a fixed 256-bit species and plain
+ * multiply-then-add (no FMA, no lane reduction) so results match the scalar path exactly.
+ * Rows are loaded straight from their buffers, heap or direct; offsets are float indexes.
+ */
+final class VectorSimilarityKernel {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_256;
+    // Eight int8 codes widened to eight int lanes
+    private static final VectorSpecies<Byte> CODES = ByteVector.SPECIES_64;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_256;
+    private static final ByteOrder ORDER = ByteOrder.nativeOrder();
+
+    private VectorSimilarityKernel() {}
+
+    static double score(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset) {
+        double hist = SimilarityKernel.section(dot(a, aOffset + SimilarityKernel.HIST_OFFSET,
+                b, bOffset + SimilarityKernel.HIST_OFFSET, FaceTemplate.HIST_LENGTH));
+        double lbp = SimilarityKernel.section(dot(a, aOffset + SimilarityKernel.LBP_OFFSET,
+                b, bOffset + SimilarityKernel.LBP_OFFSET, FaceTemplate.LBP_LENGTH));
+        double edge = SimilarityKernel.section(dot(a, aOffset + SimilarityKernel.EDGE_OFFSET,
+                b, bOffset + SimilarityKernel.EDGE_OFFSET, FaceTemplate.EDGE_LENGTH));
+        double text = SimilarityKernel.section(dot(a, aOffset + SimilarityKernel.TEXT_OFFSET,
+                b, bOffset + SimilarityKernel.TEXT_OFFSET, FaceTemplate.TEXT_LENGTH));
+        return SimilarityKernel.weighted(hist, lbp, edge, text);
+    }
+
+    static float dot(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset, int length) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int upper = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < upper; i += SimilarityKernel.LANES) {
+            FloatVector va = FloatVector.fromByteBuffer(SPECIES, a, (aOffset + i) * Float.BYTES, ORDER);
+            FloatVector vb = FloatVector.fromByteBuffer(SPECIES, b, (bOffset + i) * Float.BYTES, ORDER);
+            acc = acc.add(va.mul(vb));
+        }
+        // Sum lanes in order (reduceLanes does not fix the order for floats)
+        float sum = acc.lane(0) + acc.lane(1) + acc.lane(2) + acc.lane(3)
+                + acc.lane(4) + acc.lane(5) + acc.lane(6) + acc.lane(7);
+        for (; i < length; i++) {
+            sum += a.getFloat((aOffset + i) * Float.BYTES) * b.getFloat((bOffset + i) * Float.BYTES);
+        }
+        return sum;
+    }
+
+    static float boundedDot(ByteBuffer a, int aOffset, int aNormsOffset, ByteBuffer b, int bOffset, int bNormsOffset,
+                            int blocks, double rest, double weight, double floor) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        for (int block = 0; block < blocks; block++) {
+            int end = (block + 1) * SimilarityKernel.BLOCK;
+            for (int i = block * SimilarityKernel.BLOCK; i < end; i += SimilarityKernel.LANES) {
+                FloatVector va = FloatVector.fromByteBuffer(SPECIES, a, (aOffset + i) * Float.BYTES, ORDER);
+                FloatVector vb = FloatVector.fromByteBuffer(SPECIES, b, (bOffset + i) * Float.BYTES, ORDER);
+                acc = acc.add(va.mul(vb));
+            }
+            if (block < blocks - 1) {
+                // Same lane order and precision as the scalar path, so both prune the same candidates
+                double partial = (double) acc.lane(0) + acc.lane(1) + acc.lane(2) + acc.lane(3)
+                        + acc.lane(4) + acc.lane(5) + acc.lane(6) + acc.lane(7);
+                if (SimilarityKernel.cannotBeat(partial, a.getFloat((aNormsOffset + block) * Float.BYTES),
+                        b.getFloat((bNormsOffset + block) * Float.BYTES), rest, weight, floor)) {
+                    return Float.NaN;
+                }
+            }
+        }
+        return acc.lane(0) + acc.lane(1) + acc.lane(2) + acc.lane(3)
+                + acc.lane(4) + acc.lane(5) + acc.lane(6) + acc.lane(7);
+    }
+
+    /**
+     * Dot product of int8 codes, widened to int lanes; offsets are byte indexes
+     */
+    static int quantizedDot(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset, int length) {
+        IntVector acc = IntVector.zero(INTS);
+        int upper = CODES.loopBound(length);
+        int i = 0;
+        for (; i < upper; i += CODES.length()) {
+            IntVector va = (IntVector) ByteVector.fromByteBuffer(CODES, a, aOffset + i, ORDER).castShape(INTS, 0);
+            IntVector vb = (IntVector) ByteVector.fromByteBuffer(CODES, b, bOffset + i, ORDER).castShape(INTS, 0);
+            acc = acc.add(va.mul(vb));
+        }
+        int sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a.get(aOffset + i) * b.get(bOffset + i);
+        }
+        return sum;
+    }
+}
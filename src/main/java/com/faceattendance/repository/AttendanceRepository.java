@@ -11,7 +11,7 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface AttendanceRepository extends MongoRepository<Attendance, String> {
+public interface AttendanceRepository extends MongoRepository<Attendance, String>, AttendanceRepositoryCustom {
 
     // Tenant-specific queries
     List<Attendance> findByTenantIdOrderByAttendanceDateDesc(String tenantId);
@@ -0,0 +1,55 @@
+package com.faceattendance.repository;
+
+import com.faceattendance.model.Attendance;
+import com.faceattendance.model.Employee;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Punches as single atomic findAndModify calls on the attendances collection.
+ *
+ * A session is open from check-in until check-out. A unique partial index on
+ * (tenantId, employee, attendanceDate, open) covering open sessions only means an employee has
+ * at most one open session per day, so two kiosks punching the same employee at once cannot
+ * both open one.
+ */
+public interface AttendanceRepositoryCustom {
+
+    /**
+     * Close the employee's open session for the day; null if there is none
+     */
+    Attendance checkOut(String tenantId, Employee employee, LocalDate date,
+                        LocalDateTime checkOutTime, String checkOutImagePath);
+
+    /**
+     * Open {@code attendance} unless the employee already has an open session that day
+     */
+    CheckIn checkIn(Attendance attendance);
+
+    /**
+     * Open {@code attendance} unless the employee already has any session that day
+     */
+    CheckIn checkInOncePerDay(Attendance attendance);
+
+    /**
+     * Result of a check-in: the new session, or the one that prevented it
+     */
+    class CheckIn {
+        private final Attendance attendance;
+        private final boolean created;
+
+        public CheckIn(Attendance attendance, boolean created) {
+            this.attendance = attendance;
+            this.created = created;
+        }
+
+        public Attendance getAttendance() {
+            return attendance;
+        }
+
+        public boolean isCreated() {
+            return created;
+        }
+    }
+}
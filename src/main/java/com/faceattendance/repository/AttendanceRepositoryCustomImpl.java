@@ -0,0 +1,155 @@
+package com.faceattendance.repository;
+
+import com.faceattendance.model.Attendance;
+import com.faceattendance.model.Employee;
+import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Date;
+
+public class AttendanceRepositoryCustomImpl implements AttendanceRepositoryCustom {
+
+    private static final String OPEN_SESSION_INDEX = "open_session_per_day";
+    private static final String MIGRATIONS_COLLECTION = "migrations";
+    private static final String OPEN_FLAG_MIGRATION = "attendance_open_flag";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * Flag sessions written before the open field existed (once), then create the open-session index
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            backfillOpenFlag();
+
+            mongoTemplate.indexOps(Attendance.class).ensureIndex(new Index()
+                    .on("tenantId", Sort.Direction.ASC)
+                    .on("employee", Sort.Direction.ASC)
+                    .on("attendanceDate", Sort.Direction.ASC)
+                    .on("open", Sort.Direction.ASC)
+                    .named(OPEN_SESSION_INDEX)
+                    .unique()
+                    .partial(PartialIndexFilter.of(Criteria.where("open").is(true))));
+        } catch (Exception e) {
+            // Typically existing duplicate open sessions; punches still work, just without the guarantee
+            System.out.println("Open-session index not created: " + e.getMessage());
+        }
+    }
+
+    /**
+     * One-off back-fill, recorded in the migrations collection so later starts skip the scan
+     */
+    private void backfillOpenFlag() {
+        Query marker = Query.query(Criteria.where("_id").is(OPEN_FLAG_MIGRATION));
+        if (mongoTemplate.exists(marker, MIGRATIONS_COLLECTION)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        mongoTemplate.updateMulti(
+                Query.query(Criteria.where("open").exists(false).and("checkOutTime").is(null)),
+                new Update().set("open", true), Attendance.class);
+        mongoTemplate.updateMulti(
+                Query.query(Criteria.where("open").exists(false)),
+                new Update().set("open", false), Attendance.class);
+        try {
+            mongoTemplate.insert(new Document("_id", OPEN_FLAG_MIGRATION).append("appliedAt", new Date()), MIGRATIONS_COLLECTION);
+        } catch (DuplicateKeyException e) {
+            // Another instance finished the same back-fill
+        }
+        System.out.println("Attendance open flag back-filled in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    @Override
+    public Attendance checkOut(String tenantId, Employee employee, LocalDate date,
+                               LocalDateTime checkOutTime, String checkOutImagePath) {
+        Query openSession = Query.query(Criteria.where("tenantId").is(tenantId)
+                .and("employee").is(employee)
+                .and("attendanceDate").is(date)
+                .and("open").is(true));
+        Update close = new Update()
+                .set("checkOutTime", checkOutTime)
+                .set("open", false);
+        if (checkOutImagePath != null) {
+            close.set("checkOutImagePath", checkOutImagePath);
+        }
+        return withEmployee(mongoTemplate.findAndModify(withoutEmployee(openSession), close,
+                FindAndModifyOptions.options().returnNew(true), Attendance.class), employee);
+    }
+
+    @Override
+    public CheckIn checkIn(Attendance attendance) {
+        return upsert(Criteria.where("tenantId").is(attendance.getTenantId())
+                .and("employee").is(attendance.getEmployee())
+                .and("attendanceDate").is(attendance.getAttendanceDate())
+                .and("open").is(true), attendance);
+    }
+
+    @Override
+    public CheckIn checkInOncePerDay(Attendance attendance) {
+        return upsert(Criteria.where("tenantId").is(attendance.getTenantId())
+                .and("employee").is(attendance.getEmployee())
+                .and("attendanceDate").is(attendance.getAttendanceDate()), attendance);
+    }
+
+    /**
+     * Insert the session unless a document matches; the equality fields of the query are copied
+     * into an inserted document by MongoDB, the rest are set only on insert
+     */
+    private CheckIn upsert(Criteria existing, Attendance attendance) {
+        ObjectId id = new ObjectId();
+        LocalDateTime createdAt = attendance.getCreatedAt() != null ? attendance.getCreatedAt() : LocalDateTime.now();
+        Update insert = new Update()
+                .setOnInsert("_id", id)
+                .setOnInsert("open", true)
+                .setOnInsert("checkInTime", attendance.getCheckInTime())
+                .setOnInsert("status", attendance.getStatus())
+                .setOnInsert("confidenceScore", attendance.getConfidenceScore())
+                .setOnInsert("checkInImagePath", attendance.getCheckInImagePath())
+                .setOnInsert("notes", attendance.getNotes())
+                .setOnInsert("createdAt", createdAt);
+        if (Boolean.TRUE.equals(attendance.getMrrPending())) {
+            insert.setOnInsert("mrrPending", true);
+        }
+        FindAndModifyOptions options = FindAndModifyOptions.options().upsert(true).returnNew(true);
+
+        Attendance stored;
+        try {
+            stored = mongoTemplate.findAndModify(withoutEmployee(Query.query(existing)), insert, options, Attendance.class);
+        } catch (DuplicateKeyException e) {
+            // A concurrent punch opened the session between our match and insert: it now matches
+            stored = mongoTemplate.findAndModify(withoutEmployee(Query.query(existing)), insert, options, Attendance.class);
+        }
+        withEmployee(stored, attendance.getEmployee());
+        return new CheckIn(stored, stored != null && id.toHexString().equals(stored.getId()));
+    }
+
+    /**
+     * The caller already holds the employee, so the reference is not returned and resolved again
+     */
+    private static Query withoutEmployee(Query query) {
+        query.fields().exclude("employee");
+        return query;
+    }
+
+    private static Attendance withEmployee(Attendance attendance, Employee employee) {
+        if (attendance != null) {
+            attendance.setEmployee(employee);
+        }
+        return attendance;
+    }
+}
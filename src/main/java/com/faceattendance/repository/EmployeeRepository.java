@@ -25,7 +25,7 @@ public interface EmployeeRepository extends MongoRepository<Employee, String> {
 
     Optional<Employee> findByTenantIdAndEmployeeId(String tenantId, String employeeId);
 
-    @Query("{ 'tenantId': ?0, 'isActive': true, 'faceEncoding': { $ne: null } }")
+    @Query("{ 'tenantId': ?0, 'isActive': true, $or: [ { 'faceTemplate': { $ne: null } }, { 'faceEncoding': { $ne: null } } ] }")
     List<Employee> findActiveEmployeesWithFaceEncodingByTenantId(String tenantId);
 
     @Query("{ 'tenantId': ?0, 'department': ?1, 'isActive': true }")
@@ -53,7 +53,7 @@ public interface EmployeeRepository extends MongoRepository<Employee, String> {
     List<Employee> findByIsActiveTrue();
 
     @Deprecated
-    @Query("{ 'isActive': true, 'faceEncoding': { $ne: null } }")
+    @Query("{ 'isActive': true, $or: [ { 'faceTemplate': { $ne: null } }, { 'faceEncoding': { $ne: null } } ] }")
     List<Employee> findActiveEmployeesWithFaceEncoding();
 
     @Deprecated
@@ -0,0 +1,185 @@
+package com.faceattendance.service;
+
+import com.faceattendance.model.Attendance;
+import com.faceattendance.repository.AttendanceRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Today's session state of every employee, per tenant, so punches can be routed (and duplicate
+ * check-ins rejected) without reading the day's attendance first.
+ *
+ * A tenant's day is loaded from {@code findTodayAttendanceByTenantId}, plus the sessions still
+ * waiting in the write-behind journal, on first use and then kept current by every punch. At local midnight the day rolls over: the old states are dropped and
+ * the tenants seen that day are loaded afresh for the new date. Tenants and employees per tenant
+ * are bounded; past either bound the state is simply unknown and the caller goes to the
+ * database, where the open-session index keeps the final say.
+ */
+@Component
+public class AttendanceDayCache {
+
+    /**
+     * Employee's sessions today: none, one open, or only closed ones
+     */
+    public enum SessionState {
+        NONE,
+        OPEN,
+        CLOSED
+    }
+
+    @Autowired
+    private AttendanceRepository attendanceRepository;
+
+    @Autowired
+    private AttendanceJournal attendanceJournal;
+
+    @Value("${attendance.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${attendance.cache.max-tenants:1000}")
+    private int maxTenants;
+
+    @Value("${attendance.cache.max-employees:100000}")
+    private int maxEmployees;
+
+    private final Map<String, TenantDay> days = new ConcurrentHashMap<>();
+
+    // Decides what "today" is; replaced in tests to cross midnight
+    private Clock clock = Clock.systemDefaultZone();
+
+    /**
+     * Today's state of an employee, or null if it is not known (other day, disabled or over a bound)
+     */
+    public SessionState get(String tenantId, String employeeId, LocalDate date) {
+        TenantDay day = day(tenantId, date);
+        if (day == null) {
+            return null;
+        }
+        SessionState state = day.states.get(employeeId);
+        if (state == null) {
+            return day.complete ? SessionState.NONE : null;
+        }
+        return state;
+    }
+
+    public void checkedIn(String tenantId, String employeeId, LocalDate date) {
+        put(tenantId, employeeId, date, SessionState.OPEN);
+    }
+
+    public void checkedOut(String tenantId, String employeeId, LocalDate date) {
+        put(tenantId, employeeId, date, SessionState.CLOSED);
+    }
+
+    /**
+     * Record a session found in the database (such as the one that blocked a check-in)
+     */
+    public void observed(Attendance attendance) {
+        if (attendance.getEmployee() != null) {
+            put(attendance.getTenantId(), attendance.getEmployee().getId(), attendance.getAttendanceDate(),
+                    Boolean.TRUE.equals(attendance.getOpen()) ? SessionState.OPEN : SessionState.CLOSED);
+        }
+    }
+
+    /**
+     * Local midnight: drop yesterday and load today for every tenant that was active
+     */
+    @Scheduled(cron = "${attendance.cache.rollover-cron:0 0 0 * * *}")
+    public void rollover() {
+        List<String> tenants = new ArrayList<>(days.keySet());
+        days.clear();
+        LocalDate today = LocalDate.now(clock);
+        for (String tenantKey : tenants) {
+            try {
+                day(tenantKey, today);
+            } catch (Exception e) {
+                System.out.println("Attendance day cache: failed to load tenant " + tenantKey + ": " + e.getMessage());
+            }
+        }
+        System.out.println("Attendance day cache rolled over to " + today + " for " + tenants.size() + " tenants");
+    }
+
+    private void put(String tenantId, String employeeId, LocalDate date, SessionState state) {
+        TenantDay day = day(tenantId, date);
+        if (day == null || employeeId == null) {
+            return;
+        }
+        set(day, employeeId, state);
+    }
+
+    private void set(TenantDay day, String employeeId, SessionState state) {
+        if (day.states.containsKey(employeeId) || day.states.size() < maxEmployees) {
+            day.states.put(employeeId, state);
+        } else {
+            day.complete = false;
+        }
+    }
+
+    /**
+     * The tenant's cached day for {@code date}, loading it if needed; null if it cannot be cached
+     */
+    private TenantDay day(String tenantId, LocalDate date) {
+        if (!enabled || tenantId == null || !date.equals(LocalDate.now(clock))) {
+            return null;
+        }
+        TenantDay day = days.get(tenantId);
+        if (day != null && day.date.equals(date)) {
+            return day;
+        }
+        if (day == null && days.size() >= maxTenants) {
+            return null;
+        }
+        // Loading inside compute makes concurrent punches for the tenant wait for the load, so no
+        // update made meanwhile is lost by publishing an older snapshot over it
+        return days.compute(tenantId, (key, current) ->
+                current != null && current.date.equals(date) ? current : load(tenantId, date));
+    }
+
+    private TenantDay load(String tenantId, LocalDate date) {
+        TenantDay day = new TenantDay(date);
+        for (Attendance attendance : attendanceRepository.findTodayAttendanceByTenantId(tenantId, date)) {
+            if (attendance.getEmployee() == null || attendance.getEmployee().getId() == null) {
+                continue;
+            }
+            boolean open = attendance.getCheckOutTime() == null;
+            String employeeId = attendance.getEmployee().getId();
+            if (open) {
+                day.states.put(employeeId, SessionState.OPEN);
+            } else if (day.states.size() < maxEmployees || day.states.containsKey(employeeId)) {
+                day.states.putIfAbsent(employeeId, SessionState.CLOSED);
+            } else {
+                day.complete = false;
+            }
+        }
+        // Journaled punches are not in the database until flushed (or replayed after a restart),
+        // and are newer than what it holds
+        attendanceJournal.getUnflushedSessions(tenantId, date).forEach((employeeId, open) ->
+                set(day, employeeId, open ? SessionState.OPEN : SessionState.CLOSED));
+        if (day.states.size() > maxEmployees) {
+            day.complete = false;
+        }
+        System.out.println("Attendance day cache: loaded " + day.states.size() + " sessions for tenant " + tenantId + " on " + date);
+        return day;
+    }
+
+    /**
+     * One tenant's states for one date; complete while every employee with a session is present
+     */
+    private static final class TenantDay {
+        private final LocalDate date;
+        private final Map<String, SessionState> states = new ConcurrentHashMap<>();
+        private volatile boolean complete = true;
+
+        TenantDay(LocalDate date) {
+            this.date = date;
+        }
+    }
+}
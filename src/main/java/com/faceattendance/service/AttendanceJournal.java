@@ -0,0 +1,672 @@
+package com.faceattendance.service;
+
+import com.faceattendance.model.Attendance;
+import com.faceattendance.model.DroppedPunch;
+import com.faceattendance.model.Employee;
+import com.faceattendance.repository.AttendanceRepositoryCustom;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind persistence of punches (attendance.write-behind.enabled).
+ *
+ * An accepted punch is appended to a local journal segment and fsync'd before it is acknowledged;
+ * a flusher thread writes queued punches to MongoDB with ordered bulk writes every
+ * {@code flush-interval-ms} or as soon as {@code batch-size} are queued, then deletes the flushed
+ * segments. Check-ins are upserts by their pre-assigned _id and check-outs only close a session
+ * that is still open, so a punch written twice (after a crash, or a retried batch) changes
+ * nothing. Segments left by a previous run are replayed at startup.
+ *
+ * Sessions not yet flushed, replayed ones included, are kept here so a punch can find them and
+ * the day cache can count them. A check-in is only journaled when the day cache knows the
+ * employee's state, and is decided from that state and these sessions without a database read;
+ * an unknown state sends the punch to the database instead. If the cache is stale (another
+ * instance punched the employee) or two instances journal the same employee's check-in within
+ * one flush interval, the loser is rejected at flush time by the open-session index, and it and
+ * its check-out are written to dropped_punches.
+ */
+@Component
+public class AttendanceJournal {
+
+    public enum PunchType {
+        CHECK_IN,
+        CHECK_OUT
+    }
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${attendance.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${attendance.write-behind.journal-dir:./data/journal}")
+    private String journalDir;
+
+    @Value("${attendance.write-behind.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Value("${attendance.write-behind.batch-size:500}")
+    private int batchSize;
+
+    private final Object lock = new Object();
+    private List<Entry> queued = new ArrayList<>();
+    private final List<Path> sealedSegments = new ArrayList<>();
+    // Unflushed sessions by tenant, employee and date
+    private final Map<String, PendingSession> sessions = new HashMap<>();
+    private Path directory;
+    private Path segmentPath;
+    private FileChannel segment;
+    private long sequence;
+
+    // One flush at a time, whether run by the flusher or at shutdown
+    private final Object flushLock = new Object();
+
+    // Sessions whose check-in was rejected at flush time; their later punches are dropped with
+    // them. Guarded by flushLock, kept while such a session is still pending.
+    private final Set<String> droppedSessions = new HashSet<>();
+
+    private Thread flusher;
+    private volatile boolean running;
+
+    private final LongAdder journaled = new LongAdder();
+    private final LongAdder flushed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+    private volatile long lastFlushMillis;
+    private volatile long lastFlushLagMillis;
+    private volatile long maxFlushLagMillis;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        directory = Paths.get(journalDir);
+        Files.createDirectories(directory);
+        replay();
+        synchronized (lock) {
+            openSegment();
+        }
+
+        running = true;
+        flusher = new Thread(this::runFlusher, "attendance-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        System.out.println("Attendance write-behind enabled, journal at " + directory.toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        flusher.join(10_000);
+        if (flusher.isAlive()) {
+            // Still writing: what it has not written stays in the journal for the next start
+            System.out.println("Attendance journal flusher did not stop in time, queued punches stay journaled");
+        } else {
+            // Whatever is still queued stays in the journal for the next start
+            flush();
+        }
+        synchronized (lock) {
+            closeSegment();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Journal {@code session} as a new open session unless an unflushed session of the employee
+     * that day prevents it: any session when {@code oncePerDay}, otherwise an open one. The caller
+     * has already ruled out such a session in the database (the day cache).
+     */
+    public AttendanceRepositoryCustom.CheckIn checkIn(Attendance session, boolean oncePerDay) {
+        String key = key(session.getTenantId(), session.getEmployee().getId(), session.getAttendanceDate());
+        synchronized (lock) {
+            PendingSession pending = sessions.get(key);
+            if (pending != null && (oncePerDay || Boolean.TRUE.equals(pending.attendance.getOpen()))) {
+                return new AttendanceRepositoryCustom.CheckIn(pending.attendance, false);
+            }
+            session.setId(new ObjectId().toHexString());
+            session.setOpen(true);
+            if (session.getCreatedAt() == null) {
+                session.setCreatedAt(LocalDateTime.now());
+            }
+            Entry entry = Entry.of(PunchType.CHECK_IN, session);
+            entry.setTime(session.getCheckInTime());
+            entry.setImagePath(session.getCheckInImagePath());
+            append(entry);
+            sessions.put(key, new PendingSession(session, entry.getSequence()));
+            return new AttendanceRepositoryCustom.CheckIn(session, true);
+        }
+    }
+
+    /**
+     * Journal the check-out of the employee's unflushed open session for the day; null if there is
+     * none here, in which case the session (if any) is in the database
+     */
+    public Attendance checkOut(String tenantId, String employeeId, LocalDate date,
+                               LocalDateTime checkOutTime, String checkOutImagePath) {
+        if (!enabled) {
+            return null;
+        }
+        synchronized (lock) {
+            PendingSession pending = sessions.get(key(tenantId, employeeId, date));
+            if (pending == null || !Boolean.TRUE.equals(pending.attendance.getOpen())) {
+                return null;
+            }
+            Attendance session = pending.attendance;
+            Entry entry = Entry.of(PunchType.CHECK_OUT, session);
+            entry.setTime(checkOutTime);
+            entry.setImagePath(checkOutImagePath);
+            append(entry);
+            session.setCheckOutTime(checkOutTime);
+            if (checkOutImagePath != null) {
+                session.setCheckOutImagePath(checkOutImagePath);
+            }
+            session.setOpen(false);
+            pending.lastSequence = entry.getSequence();
+            return session;
+        }
+    }
+
+    /**
+     * Whether {@code session} was journaled and is not in the database yet; it may still be dropped
+     */
+    public boolean isUnflushed(Attendance session) {
+        if (!enabled || session.getId() == null) {
+            return false;
+        }
+        synchronized (lock) {
+            PendingSession pending = sessions.get(key(session.getTenantId(), session.getEmployee().getId(), session.getAttendanceDate()));
+            return pending != null && session.getId().equals(pending.attendance.getId());
+        }
+    }
+
+    /**
+     * Unflushed sessions of a tenant's day: whether each employee's is open, by employee id
+     */
+    public Map<String, Boolean> getUnflushedSessions(String tenantId, LocalDate date) {
+        Map<String, Boolean> open = new HashMap<>();
+        if (!enabled) {
+            return open;
+        }
+        synchronized (lock) {
+            for (PendingSession pending : sessions.values()) {
+                Attendance session = pending.attendance;
+                if (session.getTenantId() != null && session.getTenantId().equals(tenantId) && date.equals(session.getAttendanceDate())) {
+                    open.put(session.getEmployee().getId(), Boolean.TRUE.equals(session.getOpen()));
+                }
+            }
+        }
+        return open;
+    }
+
+    /**
+     * Acknowledged punches rejected at flush time, newest first, optionally for one tenant
+     */
+    public List<DroppedPunch> getDroppedPunches(String tenantId) {
+        Criteria all = new Criteria();
+        if (tenantId != null) {
+            all = Criteria.where("tenantId").is(tenantId);
+        }
+        return mongoTemplate.find(Query.query(all).with(Sort.by(Sort.Direction.DESC, "droppedAt")).limit(500), DroppedPunch.class);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        long oldest = 0;
+        int queuedCount;
+        synchronized (lock) {
+            queuedCount = queued.size();
+            if (queuedCount > 0) {
+                oldest = System.currentTimeMillis() - queued.get(0).getJournaledAt();
+            }
+        }
+        stats.put("queued", queuedCount);
+        // Age of the oldest punch not yet in MongoDB: the current flush lag
+        stats.put("oldestQueuedMillis", oldest);
+        stats.put("journaled", journaled.sum());
+        stats.put("flushed", flushed.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("flushes", flushes.sum());
+        stats.put("failedFlushes", failedFlushes.sum());
+        stats.put("lastFlushMillis", lastFlushMillis);
+        stats.put("lastFlushLagMillis", lastFlushLagMillis);
+        stats.put("maxFlushLagMillis", maxFlushLagMillis);
+        return stats;
+    }
+
+    /**
+     * Append to the active segment and fsync; the caller holds the lock
+     */
+    private void append(Entry entry) {
+        entry.setSequence(++sequence);
+        entry.setJournaledAt(System.currentTimeMillis());
+        try {
+            ByteBuffer line = ByteBuffer.wrap((objectMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8));
+            while (line.hasRemaining()) {
+                segment.write(line);
+            }
+            segment.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to journal punch: " + e.getMessage(), e);
+        }
+        queued.add(entry);
+        journaled.increment();
+        if (queued.size() >= batchSize) {
+            lock.notifyAll();
+        }
+    }
+
+    private void runFlusher() {
+        boolean healthy = true;
+        while (running) {
+            try {
+                synchronized (lock) {
+                    // After a failed flush always wait out the interval before retrying
+                    if (running && (!healthy || queued.size() < batchSize)) {
+                        lock.wait(flushIntervalMs);
+                    }
+                }
+                healthy = flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.out.println("Attendance journal flusher error: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Write everything queued to MongoDB; on failure it stays queued and is retried next time
+     */
+    private boolean flush() {
+        synchronized (flushLock) {
+            return flushQueued();
+        }
+    }
+
+    private boolean flushQueued() {
+        List<Entry> batch;
+        List<Path> segments;
+        synchronized (lock) {
+            if (queued.isEmpty()) {
+                return true;
+            }
+            batch = queued;
+            queued = new ArrayList<>();
+            if (segment != null) {
+                closeSegment();
+                openSegment();
+            }
+            segments = new ArrayList<>(sealedSegments);
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            write(batch);
+        } catch (Exception e) {
+            failedFlushes.increment();
+            System.out.println("Attendance journal flush of " + batch.size() + " punches failed, will retry: " + e.getMessage());
+            synchronized (lock) {
+                batch.addAll(queued);
+                queued = batch;
+            }
+            return false;
+        }
+
+        long lastSequence = batch.get(batch.size() - 1).getSequence();
+        synchronized (lock) {
+            sealedSegments.removeAll(segments);
+            sessions.values().removeIf(pending -> pending.lastSequence <= lastSequence);
+            droppedSessions.removeIf(id -> sessions.values().stream().noneMatch(pending -> id.equals(pending.attendance.getId())));
+        }
+        for (Path path : segments) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                System.out.println("Failed to delete flushed journal segment " + path + ": " + e.getMessage());
+            }
+        }
+
+        long end = System.currentTimeMillis();
+        flushed.add(batch.size());
+        flushes.increment();
+        lastFlushMillis = end - start;
+        lastFlushLagMillis = end - batch.get(0).getJournaledAt();
+        maxFlushLagMillis = Math.max(maxFlushLagMillis, lastFlushLagMillis);
+        return true;
+    }
+
+    private void write(List<Entry> batch) {
+        for (int from = 0; from < batch.size(); from += batchSize) {
+            List<Entry> chunk = new ArrayList<>();
+            for (Entry entry : batch.subList(from, Math.min(batch.size(), from + batchSize))) {
+                if (droppedSessions.contains(entry.getId())) {
+                    drop(entry, "its check-in was dropped");
+                } else {
+                    chunk.add(entry);
+                }
+            }
+            if (chunk.isEmpty()) {
+                continue;
+            }
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, Attendance.class);
+            for (Entry entry : chunk) {
+                if (entry.getType() == PunchType.CHECK_IN) {
+                    bulk.upsert(byId(entry), checkInUpdate(entry));
+                } else {
+                    bulk.updateOne(openById(entry), checkOutUpdate(entry));
+                }
+            }
+            try {
+                bulk.execute();
+            } catch (DataAccessException e) {
+                // An ordered bulk write stops at the first error; punches are idempotent, so
+                // redo this chunk one by one and drop only the ones the database rejects
+                writeEach(chunk);
+            }
+        }
+    }
+
+    private void writeEach(List<Entry> chunk) {
+        for (Entry entry : chunk) {
+            if (droppedSessions.contains(entry.getId())) {
+                drop(entry, "its check-in was dropped");
+                continue;
+            }
+            try {
+                if (entry.getType() == PunchType.CHECK_IN) {
+                    mongoTemplate.upsert(byId(entry), checkInUpdate(entry), Attendance.class);
+                } else {
+                    mongoTemplate.updateFirst(openById(entry), checkOutUpdate(entry), Attendance.class);
+                }
+            } catch (DuplicateKeyException e) {
+                droppedSessions.add(entry.getId());
+                drop(entry, "another session was open");
+            }
+        }
+    }
+
+    /**
+     * Record an acknowledged punch that will never be written; keyed like the punch, so a replayed
+     * journal records it once
+     */
+    private void drop(Entry entry, String reason) {
+        dropped.increment();
+        System.out.println("Dropped journaled " + entry.getType() + " " + entry.getId() + " for employee " +
+                entry.getEmployeeId() + ": " + reason);
+        DroppedPunch punch = new DroppedPunch();
+        punch.setId(entry.getId() + (entry.getType() == PunchType.CHECK_OUT ? ":OUT" : ":IN"));
+        punch.setTenantId(entry.getTenantId());
+        punch.setAttendanceId(entry.getId());
+        punch.setEmployeeId(entry.getEmployeeId());
+        punch.setAttendanceDate(entry.getAttendanceDate());
+        punch.setCheckOut(entry.getType() == PunchType.CHECK_OUT);
+        punch.setPunchTime(entry.getTime());
+        punch.setImagePath(entry.getImagePath());
+        punch.setReason(reason);
+        punch.setDroppedAt(LocalDateTime.now());
+        // A failure here fails the flush, which is retried with the punch still journaled
+        mongoTemplate.save(punch);
+    }
+
+    private static Query byId(Entry entry) {
+        return Query.query(Criteria.where("_id").is(new ObjectId(entry.getId())));
+    }
+
+    private static Query openById(Entry entry) {
+        return Query.query(Criteria.where("_id").is(new ObjectId(entry.getId())).and("open").is(true));
+    }
+
+    private static Update checkInUpdate(Entry entry) {
+        Employee employee = new Employee();
+        employee.setId(entry.getEmployeeId());
+        Update insert = new Update()
+                .setOnInsert("tenantId", entry.getTenantId())
+                .setOnInsert("employee", employee)
+                .setOnInsert("attendanceDate", entry.getAttendanceDate())
+                .setOnInsert("open", true)
+                .setOnInsert("checkInTime", entry.getTime())
+                .setOnInsert("status", entry.getStatus() != null ? Attendance.AttendanceStatus.valueOf(entry.getStatus()) : null)
+                .setOnInsert("confidenceScore", entry.getConfidenceScore())
+                .setOnInsert("checkInImagePath", entry.getImagePath())
+                .setOnInsert("notes", entry.getNotes())
+                .setOnInsert("createdAt", entry.getCreatedAt());
+        if (Boolean.TRUE.equals(entry.getMrrPending())) {
+            insert.setOnInsert("mrrPending", true);
+        }
+        return insert;
+    }
+
+    private static Update checkOutUpdate(Entry entry) {
+        Update close = new Update()
+                .set("checkOutTime", entry.getTime())
+                .set("open", false);
+        if (entry.getImagePath() != null) {
+            close.set("checkOutImagePath", entry.getImagePath());
+        }
+        return close;
+    }
+
+    /**
+     * Queue the punches of segments left by a previous run, and rebuild their sessions so later
+     * punches find them; they are written by the first flush. A torn last line (a crash
+     * mid-append, never acknowledged) is skipped.
+     */
+    private void replay() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "attendance-*.journal")) {
+            stream.forEach(segments::add);
+        }
+        segments.sort(null);
+        synchronized (lock) {
+            for (Path path : segments) {
+                for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        Entry entry = objectMapper.readValue(line, Entry.class);
+                        queued.add(entry);
+                        sequence = Math.max(sequence, entry.getSequence());
+                        replaySession(entry);
+                    } catch (IOException e) {
+                        System.out.println("Skipping unreadable journal line in " + path + ": " + e.getMessage());
+                    }
+                }
+                sealedSegments.add(path);
+            }
+        }
+        if (!queued.isEmpty()) {
+            System.out.println("Replaying " + queued.size() + " journaled punches from " + segments.size() + " segments");
+        }
+    }
+
+    /**
+     * Apply a replayed punch to the pending sessions; the caller holds the lock
+     */
+    private void replaySession(Entry entry) {
+        String key = key(entry.getTenantId(), entry.getEmployeeId(), entry.getAttendanceDate());
+        if (entry.getType() == PunchType.CHECK_IN) {
+            Employee employee = new Employee();
+            employee.setId(entry.getEmployeeId());
+            employee.setTenantId(entry.getTenantId());
+            Attendance session = new Attendance();
+            session.setId(entry.getId());
+            session.setTenantId(entry.getTenantId());
+            session.setEmployee(employee);
+            session.setAttendanceDate(entry.getAttendanceDate());
+            session.setCheckInTime(entry.getTime());
+            session.setCheckInImagePath(entry.getImagePath());
+            session.setStatus(entry.getStatus() != null ? Attendance.AttendanceStatus.valueOf(entry.getStatus()) : null);
+            session.setConfidenceScore(entry.getConfidenceScore());
+            session.setNotes(entry.getNotes());
+            session.setCreatedAt(entry.getCreatedAt());
+            session.setMrrPending(entry.getMrrPending());
+            session.setOpen(true);
+            sessions.put(key, new PendingSession(session, entry.getSequence()));
+            return;
+        }
+        PendingSession pending = sessions.get(key);
+        if (pending != null && pending.attendance.getId().equals(entry.getId())) {
+            pending.attendance.setCheckOutTime(entry.getTime());
+            if (entry.getImagePath() != null) {
+                pending.attendance.setCheckOutImagePath(entry.getImagePath());
+            }
+            pending.attendance.setOpen(false);
+            pending.lastSequence = entry.getSequence();
+        }
+    }
+
+    private void openSegment() {
+        segmentPath = directory.resolve(String.format("attendance-%019d.journal", sequence + 1));
+        try {
+            segment = FileChannel.open(segmentPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open journal segment " + segmentPath + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Close the active segment; it is kept until its punches are flushed, or deleted if empty
+     */
+    private void closeSegment() {
+        try {
+            boolean empty = segment.size() == 0;
+            segment.close();
+            if (empty) {
+                Files.deleteIfExists(segmentPath);
+            } else {
+                sealedSegments.add(segmentPath);
+            }
+        } catch (IOException e) {
+            System.out.println("Failed to close journal segment " + segmentPath + ": " + e.getMessage());
+        }
+        segment = null;
+    }
+
+    private static String key(String tenantId, String employeeId, LocalDate date) {
+        return tenantId + "|" + employeeId + "|" + date;
+    }
+
+    private static final class PendingSession {
+        private final Attendance attendance;
+        private long lastSequence;
+
+        PendingSession(Attendance attendance, long lastSequence) {
+            this.attendance = attendance;
+            this.lastSequence = lastSequence;
+        }
+    }
+
+    /**
+     * One journal line
+     */
+    public static class Entry {
+        private long sequence;
+        private long journaledAt;
+        private PunchType type;
+        private String id;
+        private String tenantId;
+        private String employeeId;
+        private LocalDate attendanceDate;
+        // Check-in or check-out time, and its image
+        private LocalDateTime time;
+        private String imagePath;
+        private String status;
+        private Double confidenceScore;
+        private String notes;
+        private LocalDateTime createdAt;
+        private Boolean mrrPending;
+
+        static Entry of(PunchType type, Attendance session) {
+            Entry entry = new Entry();
+            entry.type = type;
+            entry.id = session.getId();
+            entry.tenantId = session.getTenantId();
+            entry.employeeId = session.getEmployee().getId();
+            entry.attendanceDate = session.getAttendanceDate();
+            entry.status = session.getStatus() != null ? session.getStatus().name() : null;
+            entry.confidenceScore = session.getConfidenceScore();
+            entry.notes = session.getNotes();
+            entry.createdAt = session.getCreatedAt();
+            entry.mrrPending = session.getMrrPending();
+            return entry;
+        }
+
+        public long getSequence() { return sequence; }
+        public void setSequence(long sequence) { this.sequence = sequence; }
+        public long getJournaledAt() { return journaledAt; }
+        public void setJournaledAt(long journaledAt) { this.journaledAt = journaledAt; }
+        public PunchType getType() { return type; }
+        public void setType(PunchType type) { this.type = type; }
+        public String getId() { return id; }
+        public void setId(String id) { this.id = id; }
+        public String getTenantId() { return tenantId; }
+        public void setTenantId(String tenantId) { this.tenantId = tenantId; }
+        public String getEmployeeId() { return employeeId; }
+        public void setEmployeeId(String employeeId) { this.employeeId = employeeId; }
+        public LocalDate getAttendanceDate() { return attendanceDate; }
+        public void setAttendanceDate(LocalDate attendanceDate) { this.attendanceDate = attendanceDate; }
+        public LocalDateTime getTime() { return time; }
+        public void setTime(LocalDateTime time) { this.time = time; }
+        public String getImagePath() { return imagePath; }
+        public void setImagePath(String imagePath) { this.imagePath = imagePath; }
+        public String getStatus() { return status; }
+        public void setStatus(String status) { this.status = status; }
+        public Double getConfidenceScore() { return confidenceScore; }
+        public void setConfidenceScore(Double confidenceScore) { this.confidenceScore = confidenceScore; }
+        public String getNotes() { return notes; }
+        public void setNotes(String notes) { this.notes = notes; }
+        public LocalDateTime getCreatedAt() { return createdAt; }
+        public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+        public Boolean getMrrPending() { return mrrPending; }
+        public void setMrrPending(Boolean mrrPending) { this.mrrPending = mrrPending; }
+    }
+}
@@ -5,16 +5,17 @@ import com.faceattendance.dto.AttendanceResponse;
 import com.faceattendance.model.Attendance;
 import com.faceattendance.model.Employee;
 import com.faceattendance.repository.AttendanceRepository;
+import com.faceattendance.repository.AttendanceRepositoryCustom;
 import com.faceattendance.repository.EmployeeRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
-import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -37,14 +38,23 @@ public class AttendanceService {
     private FaceRecognitionService faceRecognitionService;
 
     @Autowired
-    private ExternalApiService externalApiService;
+    private PunchOutboxService punchOutboxService;
+
+    @Autowired
+    private AttendanceDayCache dayCache;
+
+    @Autowired
+    private AttendanceJournal attendanceJournal;
 
     /**
      * Record attendance using face recognition
      */
     public AttendanceResponse recordAttendance(AttendanceRequest request) {
+        // Decode once; recognition records its match confidence on the context
+        FaceImageContext faceImage = faceRecognitionService.decodeFaceImage(request.getFaceImage());
+
         // Find employee by face recognition
-        Optional<Employee> employeeOpt = employeeService.findEmployeeByFace(request.getFaceImage());
+        Optional<Employee> employeeOpt = employeeService.findEmployeeByFace(faceImage, request.getTenantId());
 
         if (employeeOpt.isEmpty()) {
             throw new RuntimeException("Face not recognized. Please ensure you are registered.");
@@ -52,56 +62,61 @@ public class AttendanceService {
 
         Employee employee = employeeOpt.get();
         LocalDate today = LocalDate.now();
-
-        // Check if attendance already recorded for today (get latest record)
-        List<Attendance> existingAttendances = attendanceRepository
-                .findByEmployeeAndAttendanceDateOrderByCreatedAtDesc(employee, today);
-
-        if (!existingAttendances.isEmpty()) {
-            // Get the latest attendance record
-            Attendance latestAttendance = existingAttendances.get(0);
-            if (latestAttendance.getCheckOutTime() == null && request.isCheckOut()) {
-                latestAttendance.setCheckOutTime(LocalDateTime.now());
-                latestAttendance.setCheckOutImagePath(request.getImagePath());
-                Attendance updatedAttendance = attendanceRepository.save(latestAttendance);
-                return convertToResponse(updatedAttendance);
-            } else {
-                throw new RuntimeException("Attendance already recorded for today");
+        AttendanceDayCache.SessionState state = dayCache.get(employee.getTenantId(), employee.getId(), today);
+
+        // Check-out closes today's open session in one atomic update; skipped when the day cache
+        // knows there is none, and then done after the check-in below if the cache was stale
+        boolean checkOutSkipped = request.isCheckOut() && !mayBeOpen(state);
+        if (request.isCheckOut() && !checkOutSkipped) {
+            Attendance closedAttendance = checkOut(employee, today, request.getImagePath());
+            if (closedAttendance != null) {
+                dayCache.checkedOut(employee.getTenantId(), employee.getId(), today);
+                return convertToResponse(closedAttendance);
             }
         }
 
-        // Calculate confidence score
-        double confidenceScore = calculateConfidenceScore(employee.getFaceEncoding(), request.getFaceImage());
+        // Known duplicate: rejected without touching the database
+        if (!checkOutSkipped && (state == AttendanceDayCache.SessionState.OPEN || state == AttendanceDayCache.SessionState.CLOSED)) {
+            throw new RuntimeException("Attendance already recorded for today");
+        }
+
+        // Confidence of the match that identified the employee
+        double confidenceScore = faceImage.getMatch().getConfidence();
 
         // Determine attendance status based on time
         Attendance.AttendanceStatus status = determineAttendanceStatus(LocalTime.now());
 
         // Create new attendance record
-        Attendance attendance = new Attendance();
-        attendance.setEmployee(employee);
-        attendance.setTenantId(employee.getTenantId()); // Set tenantId from employee
-        attendance.setCheckInTime(LocalDateTime.now());
-        attendance.setAttendanceDate(today);
-        attendance.setStatus(status);
-        attendance.setConfidenceScore(confidenceScore);
+        Attendance attendance = newSession(employee, today, status, confidenceScore);
         attendance.setCheckInImagePath(request.getImagePath());
         attendance.setNotes(request.getNotes());
 
-        Attendance savedAttendance = attendanceRepository.save(attendance);
-        return convertToResponse(savedAttendance);
+        // One session per day: inserted only if the employee has no record for today
+        AttendanceRepositoryCustom.CheckIn checkIn = checkIn(attendance, state, true);
+        dayCache.observed(checkIn.getAttendance());
+        if (!checkIn.isCreated()) {
+            Attendance closedAttendance = checkOutSkipped ? checkOutMissed(employee, today, checkIn, request.getImagePath()) : null;
+            if (closedAttendance != null) {
+                return convertToResponse(closedAttendance);
+            }
+            throw new RuntimeException("Attendance already recorded for today");
+        }
+        return convertToResponse(checkIn.getAttendance());
     }
 
     /**
      * Record attendance using face recognition with image upload
      */
-    public AttendanceResponse recordAttendanceWithImage(MultipartFile imageFile) {
+    public AttendanceResponse recordAttendanceWithImage(MultipartFile imageFile, String tenantId) {
         try {
-            // Convert MultipartFile to base64 string
-            byte[] imageBytes = imageFile.getBytes();
-            String base64Image = Base64.getEncoder().encodeToString(imageBytes);
+            // Decode once, straight from the upload; recognition records its match confidence on the context
+            FaceImageContext faceImage;
+            try (InputStream imageStream = imageFile.getInputStream()) {
+                faceImage = faceRecognitionService.decodeFaceImage(imageStream);
+            }
 
             // Find employee by face recognition
-            Optional<Employee> employeeOpt = employeeService.findEmployeeByFace(base64Image);
+            Optional<Employee> employeeOpt = employeeService.findEmployeeByFace(faceImage, tenantId);
 
             if (employeeOpt.isEmpty()) {
                 throw new RuntimeException("Face not recognized. Please ensure you are registered.");
@@ -109,49 +124,48 @@ public class AttendanceService {
 
             Employee employee = employeeOpt.get();
             LocalDate today = LocalDate.now();
+            AttendanceDayCache.SessionState state = dayCache.get(employee.getTenantId(), employee.getId(), today);
 
-            // Check if attendance already recorded for today (get latest record)
-            List<Attendance> existingAttendances = attendanceRepository
-                    .findByEmployeeAndAttendanceDateOrderByCreatedAtDesc(employee, today);
-
-            if (!existingAttendances.isEmpty()) {
-                // Get the latest attendance record
-                Attendance latestAttendance = existingAttendances.get(0);
-
-                if (latestAttendance.getCheckOutTime() == null) {
-                    // Update check-out time for the latest record
-                    latestAttendance.setCheckOutTime(LocalDateTime.now());
-                    Attendance updatedAttendance = attendanceRepository.save(latestAttendance);
-
-                    // Call external API for check-out using tenant credentials
-                    // Note: For now, skipping external API call as we need tenant credentials
-                    // TODO: Pass tenant credentials from request or employee data
-                    System.out.println("External API call skipped - tenant credentials needed");
-
-                    return convertToResponse(updatedAttendance);
-                } else {
-                    // For testing: Allow re-entry by creating new attendance record
-                    System.out.println("Employee already has attendance for today, but allowing re-entry for testing");
-                    // Continue to create new attendance record below
-                }
+            // An open session for today is checked out in one atomic update; skipped when
+            // the day cache knows there is none
+            Attendance closedAttendance = null;
+            if (mayBeOpen(state)) {
+                closedAttendance = checkOut(employee, today, null);
+            }
+            if (closedAttendance != null) {
+                dayCache.checkedOut(employee.getTenantId(), employee.getId(), today);
+                // Call external API for check-out using tenant credentials
+                // Note: For now, skipping external API call as we need tenant credentials
+                // TODO: Pass tenant credentials from request or employee data
+                System.out.println("External API call skipped - tenant credentials needed");
+
+                return convertToResponse(closedAttendance);
             }
 
-            // Calculate confidence score
-            double confidenceScore = calculateConfidenceScore(employee.getFaceEncoding(), base64Image);
+            // No open session: check in (re-entry after an earlier check-out is allowed for testing)
+
+            // Confidence of the match that identified the employee
+            double confidenceScore = faceImage.getMatch().getConfidence();
 
             // Determine attendance status based on time
             Attendance.AttendanceStatus status = determineAttendanceStatus(LocalTime.now());
 
             // Create new attendance record
-            Attendance attendance = new Attendance();
-            attendance.setEmployee(employee);
-            attendance.setTenantId(employee.getTenantId()); // Set tenantId from employee
-            attendance.setCheckInTime(LocalDateTime.now());
-            attendance.setAttendanceDate(today);
-            attendance.setStatus(status);
-            attendance.setConfidenceScore(confidenceScore);
-
-            Attendance savedAttendance = attendanceRepository.save(attendance);
+            Attendance attendance = newSession(employee, today, status, confidenceScore);
+
+            AttendanceRepositoryCustom.CheckIn checkIn = checkIn(attendance, state, false);
+            dayCache.observed(checkIn.getAttendance());
+            if (!checkIn.isCreated()) {
+                // The day cache missed the open session: this punch is its check-out
+                Attendance missedCheckOut = mayBeOpen(state) ? null : checkOutMissed(employee, today, checkIn, null);
+                if (missedCheckOut != null) {
+                    return convertToResponse(missedCheckOut);
+                }
+                // Another kiosk opened the session between the two updates: same punch, same session
+                System.out.println("Concurrent check-in detected, returning the open session");
+                return convertToResponse(checkIn.getAttendance());
+            }
+            Attendance savedAttendance = checkIn.getAttendance();
 
             // Call external API for check-in using tenant credentials
             // Note: For now, skipping external API call as we need tenant credentials
@@ -187,70 +201,53 @@ public class AttendanceService {
                 throw new RuntimeException("Employee not found with ID: " + employeeId);
             }
             LocalDate today = LocalDate.parse(punchDate);
+            AttendanceDayCache.SessionState state = dayCache.get(employee.getTenantId(), employee.getId(), today);
 
-            // Check if attendance already recorded for today
-            List<Attendance> existingAttendances = attendanceRepository
-                    .findByEmployeeAndAttendanceDateOrderByCreatedAtDesc(employee, today);
-
-            if (!existingAttendances.isEmpty()) {
-                Attendance latestAttendance = existingAttendances.get(0);
-
-                if (latestAttendance.getCheckOutTime() == null) {
-                    // Update check-out time
-                    latestAttendance.setCheckOutTime(LocalDateTime.now());
-                    Attendance updatedAttendance = attendanceRepository.save(latestAttendance);
-
-                    // Call external API for check-out using tenant credentials
-                    // Note: For now, skipping external API call as we need tenant credentials
-                    // TODO: Pass tenant credentials from request or employee data
-                    System.out.println("🔄 External MRR API call skipped - tenant credentials needed");
-                    System.out.println("⚠️ Check-out saved locally but external sync skipped");
+            // An open session for the day is checked out in one atomic update; skipped when
+            // the day cache knows there is none
+            Attendance closedAttendance = null;
+            if (mayBeOpen(state)) {
+                closedAttendance = checkOut(employee, today, null);
+            }
+            if (closedAttendance != null) {
+                dayCache.checkedOut(employee.getTenantId(), employee.getId(), today);
+                // Call external API for check-out using tenant credentials
+                // Note: For now, skipping external API call as we need tenant credentials
+                // TODO: Pass tenant credentials from request or employee data
+                System.out.println("🔄 External MRR API call skipped - tenant credentials needed");
+                System.out.println("⚠️ Check-out saved locally but external sync skipped");
+
+                return convertToResponse(closedAttendance);
+            }
 
-                    return convertToResponse(updatedAttendance);
-                } else {
-                    // Allow re-entry for testing
-                    System.out.println("Employee already has attendance for today, but allowing re-entry for testing");
+            // No open session: check in (re-entry after an earlier check-out is allowed for testing)
+            Attendance attendance = newSession(employee, today, Attendance.AttendanceStatus.PRESENT, confidence);
+            // Written with the session, so the outbox sweep queues the punch if the enqueue below is lost
+            attendance.setMrrPending(true);
+
+            AttendanceRepositoryCustom.CheckIn checkIn = checkIn(attendance, state, false);
+            dayCache.observed(checkIn.getAttendance());
+            if (!checkIn.isCreated()) {
+                // The day cache missed the open session: this punch is its check-out
+                Attendance missedCheckOut = mayBeOpen(state) ? null : checkOutMissed(employee, today, checkIn, null);
+                if (missedCheckOut != null) {
+                    return convertToResponse(missedCheckOut);
                 }
+                // Another kiosk opened the session between the two updates: same punch, same session
+                System.out.println("Concurrent check-in detected, returning the open session");
+                return convertToResponse(checkIn.getAttendance());
             }
-
-            // Create new attendance record
-            Attendance attendance = new Attendance();
-            attendance.setEmployee(employee);
-            attendance.setTenantId(employee.getTenantId()); // Set tenantId from employee
-            attendance.setCheckInTime(LocalDateTime.now());
-            attendance.setAttendanceDate(today);
-            attendance.setStatus(Attendance.AttendanceStatus.PRESENT);
-            attendance.setConfidenceScore(confidence);
-
-            Attendance savedAttendance = attendanceRepository.save(attendance);
-
-            // Call external API for check-in using tenant credentials
-            System.out.println("🚀 Attempting external MRR API call for attendance sync...");
-            try {
-                // Use hardcoded tenant credentials for testing (should be from database/config in production)
-                String tenantLoginId = "harshita@demomrr.com"; // TODO: Get from tenant config
-                String tenantPassword = "123456"; // TODO: Get from tenant config
-
-                System.out.println("📋 Using tenant credentials for external API call");
-                System.out.println("👤 Tenant Login ID: " + tenantLoginId);
-                System.out.println("🔑 Tenant Password: [HIDDEN]");
-
-                boolean externalSuccess = externalApiService.markAttendanceExternal(
-                    employeeId,
-                    false, // isCheckOut = false for check-in
-                    tenantLoginId,
-                    tenantPassword
-                );
-
-                if (externalSuccess) {
-                    System.out.println("✅ External MRR API call successful!");
-                } else {
-                    System.out.println("❌ External MRR API call failed, but local attendance saved");
+            Attendance savedAttendance = checkIn.getAttendance();
+
+            // Delivered to the external MRR system in the background, with the original punch time.
+            // A journaled session is not in the database yet and may still be dropped: the outbox
+            // sweep queues it once the flush has written it with its mrrPending marker.
+            if (!attendanceJournal.isUnflushed(savedAttendance)) {
+                try {
+                    punchOutboxService.enqueue(savedAttendance, employeeId, false, savedAttendance.getCheckInTime());
+                } catch (Exception e) {
+                    System.out.println("❌ Failed to queue external MRR punch, the outbox sweep will queue it: " + e.getMessage());
                 }
-            } catch (Exception e) {
-                System.out.println("❌ External MRR API call failed with exception: " + e.getMessage());
-                System.out.println("💾 Local attendance saved successfully despite external failure");
-                e.printStackTrace();
             }
 
             System.out.println("✅ Direct attendance recorded successfully for: " + employeeName);
@@ -371,18 +368,6 @@ public class AttendanceService {
         return new AttendanceStats(totalDays, presentDays, lateDays, halfDays);
     }
 
-    /**
-     * Calculate confidence score for face recognition
-     */
-    private double calculateConfidenceScore(String knownEncoding, String testImage) {
-        try {
-            String testEncoding = faceRecognitionService.extractFaceEncoding(testImage);
-            return faceRecognitionService.compareFaces(knownEncoding, testEncoding);
-        } catch (Exception e) {
-            return 0.0;
-        }
-    }
-
     /**
      * Determine attendance status based on check-in time
      */
@@ -400,6 +385,66 @@ public class AttendanceService {
         }
     }
 
+    /**
+     * Whether the day cache leaves room for an open session, so a check-out is worth trying
+     */
+    private static boolean mayBeOpen(AttendanceDayCache.SessionState state) {
+        return state == null || state == AttendanceDayCache.SessionState.OPEN;
+    }
+
+    /**
+     * Check-out skipped because the day cache said there was no open session, while the check-in
+     * ran into one (another instance punched, or the cache was loaded before the write landed):
+     * close it now. Null if the session that blocked the check-in is not open.
+     */
+    private Attendance checkOutMissed(Employee employee, LocalDate date, AttendanceRepositoryCustom.CheckIn checkIn, String imagePath) {
+        if (checkIn.getAttendance() == null || !Boolean.TRUE.equals(checkIn.getAttendance().getOpen())) {
+            return null;
+        }
+        System.out.println("Day cache missed the open session of employee " + employee.getId() + ", checking it out");
+        Attendance closed = checkOut(employee, date, imagePath);
+        if (closed != null) {
+            dayCache.checkedOut(employee.getTenantId(), employee.getId(), date);
+        }
+        return closed;
+    }
+
+    /**
+     * Close the open session, journaled if it is not flushed yet; null if there is none
+     */
+    private Attendance checkOut(Employee employee, LocalDate date, String imagePath) {
+        LocalDateTime now = LocalDateTime.now();
+        Attendance closed = attendanceJournal.checkOut(employee.getTenantId(), employee.getId(), date, now, imagePath);
+        return closed != null ? closed : attendanceRepository.checkOut(employee.getTenantId(), employee, date, now, imagePath);
+    }
+
+    /**
+     * Open the session: journaled (write-behind) when the day cache knows the employee has no
+     * session that prevents it, otherwise straight in the database
+     */
+    private AttendanceRepositoryCustom.CheckIn checkIn(Attendance attendance, AttendanceDayCache.SessionState state, boolean oncePerDay) {
+        if (attendanceJournal.isEnabled() && (state == AttendanceDayCache.SessionState.NONE ||
+                (!oncePerDay && state == AttendanceDayCache.SessionState.CLOSED))) {
+            return attendanceJournal.checkIn(attendance, oncePerDay);
+        }
+        return oncePerDay ? attendanceRepository.checkInOncePerDay(attendance) : attendanceRepository.checkIn(attendance);
+    }
+
+    /**
+     * New open session, checked in now
+     */
+    private Attendance newSession(Employee employee, LocalDate date, Attendance.AttendanceStatus status, Double confidenceScore) {
+        Attendance attendance = new Attendance();
+        attendance.setEmployee(employee);
+        attendance.setTenantId(employee.getTenantId()); // Set tenantId from employee
+        attendance.setCheckInTime(LocalDateTime.now());
+        attendance.setAttendanceDate(date);
+        attendance.setStatus(status);
+        attendance.setConfidenceScore(confidenceScore);
+        attendance.setOpen(true);
+        return attendance;
+    }
+
     /**
      * Convert Attendance entity to AttendanceResponse DTO
      */
@@ -2,15 +2,24 @@ package com.faceattendance.service;
 
 import com.faceattendance.dto.EmployeeRegistrationRequest;
 import com.faceattendance.dto.EmployeeResponse;
+import com.faceattendance.dto.RecognitionCandidateResponse;
 import com.faceattendance.model.Employee;
+import com.faceattendance.recognition.FaceTemplate;
+import com.faceattendance.recognition.FaceTemplateCodec;
+import com.faceattendance.recognition.TenantGallery;
 import com.faceattendance.repository.EmployeeRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.util.Base64;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -24,6 +33,13 @@ public class EmployeeService {
     @Autowired
     private FaceRecognitionService faceRecognitionService;
 
+    @Autowired
+    private FaceGalleryService faceGalleryService;
+
+    // Off: recognition without a tenant id is refused instead of matching every tenant's employees
+    @Value("${face.recognition.cross-tenant.enabled:false}")
+    private boolean crossTenantEnabled;
+
     /**
      * Register a new employee with face recognition
      */
@@ -45,10 +61,11 @@ public class EmployeeService {
             throw new RuntimeException("Employee ID already exists in this tenant");
         }
 
-        // Extract face encoding from image
-        String faceEncoding;
+        // Extract face template from image
+        byte[] faceTemplate;
         try {
-            faceEncoding = faceRecognitionService.extractFaceEncoding(request.getFaceImage());
+            faceTemplate = FaceTemplateCodec.encode(faceRecognitionService.extractFaceTemplate(
+                    faceRecognitionService.decodeFaceImage(request.getFaceImage())));
         } catch (Exception e) {
             throw new RuntimeException("Failed to process face image: " + e.getMessage());
         }
@@ -61,13 +78,14 @@ public class EmployeeService {
         employee.setEmployeeId(request.getEmployeeId());
         employee.setDepartment(request.getDepartment());
         employee.setPosition(request.getPosition());
-        employee.setFaceEncoding(faceEncoding);
+        employee.setFaceTemplate(faceTemplate);
         employee.setIsActive(true);
 
         // Save employee
         System.out.println("Attempting to save employee to MongoDB...");
         try {
             Employee savedEmployee = employeeRepository.save(employee);
+            faceGalleryService.refresh(savedEmployee);
             System.out.println("Employee saved successfully with ID: " + savedEmployee.getId());
             System.out.println("=== Employee Registration Completed ===");
             return convertToResponse(savedEmployee);
@@ -91,13 +109,11 @@ public class EmployeeService {
             throw new RuntimeException("Employee ID already exists in this tenant");
         }
 
-        // Convert MultipartFile to base64 string
-        String faceEncoding = null;
+        // Extract face template straight from the upload
+        byte[] faceTemplate = null;
         if (imageFile != null && !imageFile.isEmpty()) {
             try {
-                byte[] imageBytes = imageFile.getBytes();
-                String base64Image = Base64.getEncoder().encodeToString(imageBytes);
-                faceEncoding = faceRecognitionService.extractFaceEncoding(base64Image);
+                faceTemplate = FaceTemplateCodec.encode(faceRecognitionService.extractFaceTemplate(decodeUpload(imageFile)));
             } catch (Exception e) {
                 throw new RuntimeException("Failed to process face image: " + e.getMessage());
             }
@@ -111,11 +127,12 @@ public class EmployeeService {
         employee.setEmployeeId(request.getEmployeeId());
         employee.setDepartment(request.getDepartment());
         employee.setPosition(request.getPosition());
-        employee.setFaceEncoding(faceEncoding);
+        employee.setFaceTemplate(faceTemplate);
         employee.setIsActive(true);
 
         // Save employee
         Employee savedEmployee = employeeRepository.save(employee);
+        faceGalleryService.refresh(savedEmployee);
 
         return convertToResponse(savedEmployee);
     }
@@ -188,17 +205,20 @@ public class EmployeeService {
         employee.setDepartment(request.getDepartment());
         employee.setPosition(request.getPosition());
 
-        // Update face encoding if new image provided
-        if (request.getFaceImage() != null && !request.getFaceImage().isEmpty()) {
+        // Update face template if new image provided
+        if (request.getFaceImage() != null && request.getFaceImage().length > 0) {
             try {
-                String faceEncoding = faceRecognitionService.extractFaceEncoding(request.getFaceImage());
-                employee.setFaceEncoding(faceEncoding);
+                FaceTemplate faceTemplate = faceRecognitionService.extractFaceTemplate(
+                        faceRecognitionService.decodeFaceImage(request.getFaceImage()));
+                employee.setFaceTemplate(FaceTemplateCodec.encode(faceTemplate));
+                employee.setFaceEncoding(null);
             } catch (Exception e) {
                 throw new RuntimeException("Failed to process face image: " + e.getMessage());
             }
         }
 
         Employee updatedEmployee = employeeRepository.save(employee);
+        faceGalleryService.refresh(updatedEmployee);
         return convertToResponse(updatedEmployee);
     }
 
@@ -209,7 +229,7 @@ public class EmployeeService {
         Employee employee = employeeRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Employee not found"));
         employee.setIsActive(false);
-        employeeRepository.save(employee);
+        faceGalleryService.refresh(employeeRepository.save(employee));
     }
 
     /**
@@ -220,44 +240,35 @@ public class EmployeeService {
     }
 
     /**
-     * Find employee by face image
+     * Find employee by face image in any tenant (needs face.recognition.cross-tenant.enabled)
      */
     public Optional<Employee> findEmployeeByFace(String faceImage) {
-        try {
-            System.out.println("=== EMPLOYEE FACE RECOGNITION DEBUG ===");
-
-            // Extract face encoding from input image
-            String testEncoding = faceRecognitionService.extractFaceEncoding(faceImage);
-            System.out.println("Test encoding extracted successfully");
-
-            // Get all employees with face encodings
-            List<Employee> employees = getEmployeesWithFaceEncoding();
-            System.out.println("Found " + employees.size() + " employees with face encodings");
-
-            if (employees.isEmpty()) {
-                System.out.println("No employees with face encodings found");
-                return Optional.empty();
-            }
-
-            // Print employee details for debugging
-            for (Employee emp : employees) {
-                System.out.println("Employee ID: " + emp.getId() + ", Name: " + emp.getName() + ", Has encoding: " + (emp.getFaceEncoding() != null));
-            }
+        return findEmployeeByFace(faceImage, null);
+    }
 
-            // Prepare data for face matching
-            List<String> knownEncodings = employees.stream()
-                    .map(Employee::getFaceEncoding)
-                    .collect(Collectors.toList());
+    /**
+     * Find employee by face recognition within one tenant; a tenant id is required unless
+     * face.recognition.cross-tenant.enabled is set
+     */
+    public Optional<Employee> findEmployeeByFace(String faceImage, String tenantId) {
+        return findEmployeeByFace(faceRecognitionService.decodeFaceImage(faceImage), tenantId);
+    }
 
-            List<String> employeeIds = employees.stream()
-                    .map(Employee::getId)
-                    .collect(Collectors.toList());
+    /**
+     * Find employee by face recognition on an already decoded image; the match is recorded on the context
+     */
+    public Optional<Employee> findEmployeeByFace(FaceImageContext faceImage, String tenantId) {
+        try {
+            System.out.println("=== EMPLOYEE FACE RECOGNITION DEBUG ===");
 
-            System.out.println("Prepared " + knownEncodings.size() + " encodings for matching");
+            // Extract face template from input image
+            FaceTemplate testTemplate = faceRecognitionService.extractFaceTemplate(faceImage);
+            System.out.println("Test template extracted successfully");
 
-            // Find best match
+            // Match against the tenant's resident gallery
             FaceRecognitionService.FaceMatchResult result =
-                    faceRecognitionService.findBestMatch(testEncoding, knownEncodings, employeeIds);
+                    faceRecognitionService.findBestMatch(testTemplate, galleriesFor(tenantId));
+            faceImage.setMatch(result);
 
             System.out.println("Face matching completed. Match found: " + result.isMatch());
 
@@ -276,6 +287,71 @@ public class EmployeeService {
         }
     }
 
+    /**
+     * Rank the k most similar employees for a face (review screens, multi-face flows)
+     */
+    public List<RecognitionCandidateResponse> recognizeTopCandidates(MultipartFile image, String tenantId, int k) {
+        try {
+            FaceTemplate testTemplate = faceRecognitionService.extractFaceTemplate(decodeUpload(image));
+
+            List<FaceRecognitionService.FaceMatchResult> matches =
+                    faceRecognitionService.findTopMatches(testTemplate, galleriesFor(tenantId), k);
+
+            // One query for all candidates' details
+            Map<String, Employee> employees = new HashMap<>();
+            for (Employee employee : employeeRepository.findAllById(
+                    matches.stream().map(FaceRecognitionService.FaceMatchResult::getEmployeeId).collect(Collectors.toList()))) {
+                employees.put(employee.getId(), employee);
+            }
+
+            List<RecognitionCandidateResponse> candidates = new ArrayList<>();
+            for (FaceRecognitionService.FaceMatchResult match : matches) {
+                Employee employee = employees.get(match.getEmployeeId());
+                if (employee == null) {
+                    continue;
+                }
+                RecognitionCandidateResponse candidate = new RecognitionCandidateResponse();
+                candidate.setRank(candidates.size() + 1);
+                candidate.setConfidence(match.getConfidence());
+                candidate.setAboveThreshold(match.isMatch());
+                candidate.setId(employee.getId());
+                candidate.setEmployeeId(employee.getEmployeeId());
+                candidate.setName(employee.getName());
+                candidate.setDepartment(employee.getDepartment());
+                candidate.setPosition(employee.getPosition());
+                candidates.add(candidate);
+            }
+            return candidates;
+        } catch (Exception e) {
+            System.out.println("Face ranking error: " + e.getMessage());
+            throw new RuntimeException("Failed to rank face candidates: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The tenant's gallery; every tenant's only when no tenant id is given and cross-tenant
+     * recognition is explicitly enabled
+     */
+    private List<TenantGallery> galleriesFor(String tenantId) {
+        if (tenantId != null && !tenantId.isBlank()) {
+            return List.of(faceGalleryService.getGallery(tenantId));
+        }
+        if (!crossTenantEnabled) {
+            throw new RuntimeException("tenantId is required for face recognition");
+        }
+        System.out.println("WARNING: No tenant id given - matching against every tenant's employees");
+        return faceGalleryService.getAllGalleries();
+    }
+
+    /**
+     * Decode an uploaded image straight from its stream, without copying it into a byte array first
+     */
+    private FaceImageContext decodeUpload(MultipartFile imageFile) throws IOException {
+        try (InputStream imageStream = imageFile.getInputStream()) {
+            return faceRecognitionService.decodeFaceImage(imageStream);
+        }
+    }
+
     /**
      * Convert Employee entity to EmployeeResponse DTO
      */
@@ -289,6 +365,7 @@ public class EmployeeService {
         response.setPosition(employee.getPosition());
         response.setIsActive(employee.getIsActive());
         response.setFaceEncoding(employee.getFaceEncoding());
+        response.setFaceTemplate(employee.getFaceTemplate());
         response.setHasFaceImage(employee.getHasFaceImage());
         response.setExternalId(employee.getExternalId());
         response.setCreatedAt(employee.getCreatedAt());
@@ -314,14 +391,18 @@ public class EmployeeService {
      * Save employee (for sync)
      */
     public Employee saveEmployee(Employee employee) {
-        return employeeRepository.save(employee);
+        Employee savedEmployee = employeeRepository.save(employee);
+        faceGalleryService.refresh(savedEmployee);
+        return savedEmployee;
     }
 
     /**
      * Update employee (for sync)
      */
     public Employee updateEmployee(Employee employee) {
-        return employeeRepository.save(employee);
+        Employee updatedEmployee = employeeRepository.save(employee);
+        faceGalleryService.refresh(updatedEmployee);
+        return updatedEmployee;
     }
 
     /**
@@ -361,27 +442,25 @@ public class EmployeeService {
             throw new RuntimeException("Employee does not belong to the specified tenant");
         }
 
-        // Extract face encoding from image
-        String faceEncoding;
+        // Extract face template from image
+        FaceTemplate faceTemplate;
         try {
             if (imageFile != null && !imageFile.isEmpty()) {
                 System.out.println("Processing face image...");
 
-                // Convert to base64 first
-                String base64Image = Base64.getEncoder().encodeToString(imageFile.getBytes());
-
-                // Extract face encoding
-                faceEncoding = faceRecognitionService.extractFaceEncoding(base64Image);
+                // Extract face template straight from the upload
+                faceTemplate = faceRecognitionService.extractFaceTemplate(decodeUpload(imageFile));
 
-                if (faceEncoding == null || faceEncoding.isEmpty()) {
+                if (faceTemplate == null) {
                     throw new RuntimeException("No face detected in the image");
                 }
 
-                // Save encoding and mark as having face image
-                employee.setFaceEncoding(faceEncoding);
+                // Save template (replacing any legacy encoding) and mark as having face image
+                employee.setFaceTemplate(FaceTemplateCodec.encode(faceTemplate));
+                employee.setFaceEncoding(null);
                 employee.setHasFaceImage(true);
 
-                System.out.println("Face encoding extracted successfully");
+                System.out.println("Face template extracted successfully");
             } else {
                 throw new RuntimeException("Image file is required");
             }
@@ -392,6 +471,7 @@ public class EmployeeService {
 
         // Save updated employee
         Employee updatedEmployee = employeeRepository.save(employee);
+        faceGalleryService.refresh(updatedEmployee);
         System.out.println("Employee face updated successfully with ID: " + updatedEmployee.getId());
 
         return convertToResponse(updatedEmployee);
@@ -415,6 +495,7 @@ public class EmployeeService {
         Optional<Employee> employee = employeeRepository.findById(employeeId);
         if (employee.isPresent()) {
             employeeRepository.delete(employee.get());
+            faceGalleryService.remove(employee.get());
             System.out.println("Employee deleted successfully: " + employee.get().getName());
         } else {
             System.out.println("Employee not found with ID: " + employeeId);
@@ -3,6 +3,7 @@ package com.faceattendance.service;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.springframework.http.*;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
@@ -23,8 +24,15 @@ public class ExternalApiService {
     private static final String EXTERNAL_API_URL = "http://103.11.86.192:8083/api/services/app/MarkAttendances/CreatePunchForMRR";
     private static final String AUTH_API_URL = "http://103.11.86.192:8083/api/TokenAuth/MobileAuthenticate";
 
+    // A call that hangs must not hold the outbox dispatcher (or a request thread) indefinitely
+    private static final int CONNECT_TIMEOUT_MS = 10_000;
+    private static final int READ_TIMEOUT_MS = 30_000;
+
     public ExternalApiService() {
-        this.restTemplate = new RestTemplate();
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        requestFactory.setReadTimeout(READ_TIMEOUT_MS);
+        this.restTemplate = new RestTemplate(requestFactory);
         this.objectMapper = new ObjectMapper();
     }
 
@@ -111,15 +119,23 @@ public class ExternalApiService {
      * Call external API to mark attendance with retry mechanism using tenant credentials
      */
     public boolean markAttendanceExternal(String employeeId, boolean isCheckOut, String tenantLoginId, String tenantPassword) {
-        return markAttendanceExternalWithRetry(employeeId, isCheckOut, tenantLoginId, tenantPassword, 0);
+        return markAttendanceExternalWithRetry(employeeId, isCheckOut, LocalDateTime.now(), tenantLoginId, tenantPassword, 0, 1);
     }
 
     /**
-     * Call external API to mark attendance with retry logic using tenant credentials
+     * Single attempt to send a punch made at {@code punchTime}, without the blocking retry; for
+     * callers that schedule their own retries
      */
-    private boolean markAttendanceExternalWithRetry(String employeeId, boolean isCheckOut, String tenantLoginId, String tenantPassword, int retryCount) {
-        final int maxRetries = 1; // Retry once if failed
+    public boolean markAttendanceExternal(String employeeId, boolean isCheckOut, LocalDateTime punchTime,
+                                          String tenantLoginId, String tenantPassword) {
+        return markAttendanceExternalWithRetry(employeeId, isCheckOut, punchTime, tenantLoginId, tenantPassword, 0, 0);
+    }
 
+    /**
+     * Call external API to mark attendance with retry logic using tenant credentials
+     */
+    private boolean markAttendanceExternalWithRetry(String employeeId, boolean isCheckOut, LocalDateTime punchTime,
+                                                    String tenantLoginId, String tenantPassword, int retryCount, int maxRetries) {
         try {
             System.out.println("=== MARKING ATTENDANCE EXTERNALLY (Attempt " + (retryCount + 1) + ") ===");
             System.out.println("Employee ID: " + employeeId);
@@ -133,12 +149,10 @@ public class ExternalApiService {
                 return false;
             }
 
-            LocalDateTime now = LocalDateTime.now();
-
             // Create request body
             Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("punchDate", now.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + "Z");
-            requestBody.put("punchTime", now.format(DateTimeFormatter.ofPattern("HH:mm")));
+            requestBody.put("punchDate", punchTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + "Z");
+            requestBody.put("punchTime", punchTime.format(DateTimeFormatter.ofPattern("HH:mm")));
             requestBody.put("machine", "face recognition");
             requestBody.put("location", "Kashmiri Gate");
 
@@ -275,7 +289,7 @@ public class ExternalApiService {
                 } catch (InterruptedException ie) {
                     Thread.currentThread().interrupt();
                 }
-                return markAttendanceExternalWithRetry(employeeId, isCheckOut, tenantLoginId, tenantPassword, retryCount + 1);
+                return markAttendanceExternalWithRetry(employeeId, isCheckOut, punchTime, tenantLoginId, tenantPassword, retryCount + 1, maxRetries);
             } else {
                 System.err.println("💥 Final failure: Could not mark attendance externally for employee " + employeeId + " after " + (maxRetries + 1) + " attempts");
                 return false;
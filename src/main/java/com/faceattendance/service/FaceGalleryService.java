@@ -0,0 +1,294 @@
+package com.faceattendance.service;
+
+import com.faceattendance.model.Employee;
+import com.faceattendance.recognition.FaceTemplate;
+import com.faceattendance.recognition.FaceTemplateCodec;
+import com.faceattendance.recognition.GallerySettings;
+import com.faceattendance.recognition.TenantGallery;
+import com.faceattendance.repository.EmployeeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory face galleries, one per tenant.
+ *
+ * Each tenant's gallery is loaded from MongoDB the first time that tenant is recognised
+ * against, and kept current by EmployeeService on every employee change, so recognition
+ * never refetches the employee collection. A gallery exists only once its tenant is loaded.
+ */
+@Service
+public class FaceGalleryService {
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private FaceRecognitionService faceRecognitionService;
+
+    @Value("${face.recognition.parallel.threshold:4096}")
+    private int parallelThreshold;
+
+    @Value("${face.recognition.parallel.chunk-size:1024}")
+    private int parallelChunkSize;
+
+    @Value("${face.recognition.hnsw.enabled:false}")
+    private boolean hnswEnabled;
+
+    @Value("${face.recognition.hnsw.min-size:10000}")
+    private int hnswMinSize;
+
+    @Value("${face.recognition.hnsw.m:16}")
+    private int hnswM;
+
+    @Value("${face.recognition.hnsw.ef-construction:100}")
+    private int hnswEfConstruction;
+
+    @Value("${face.recognition.hnsw.ef-search:64}")
+    private int hnswEfSearch;
+
+    @Value("${face.recognition.hnsw.rerank:32}")
+    private int hnswRerank;
+
+    @Value("${face.recognition.hnsw.recall-sample-rate:0.01}")
+    private double hnswRecallSampleRate;
+
+    @Value("${face.recognition.quantized.enabled:false}")
+    private boolean quantized;
+
+    @Value("${face.recognition.quantized.rerank:32}")
+    private int quantizedRerank;
+
+    private final GallerySettings settings = new GallerySettings();
+    private final Map<String, TenantGallery> galleries = new ConcurrentHashMap<>();
+    private final Set<String> loadedTenants = ConcurrentHashMap.newKeySet();
+    private final Object loadLock = new Object();
+    private volatile boolean allLoaded = false;
+    // Employees whose template was extracted in the other mode (crop vs whole frame) and must re-enrol
+    private final Set<String> otherModeEmployees = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        settings.setParallelThreshold(parallelThreshold);
+        settings.setParallelChunkSize(parallelChunkSize);
+        settings.setHnswEnabled(hnswEnabled);
+        settings.setHnswMinSize(hnswMinSize);
+        settings.setHnswM(hnswM);
+        settings.setHnswEfConstruction(hnswEfConstruction);
+        settings.setHnswEfSearch(hnswEfSearch);
+        settings.setHnswRerank(hnswRerank);
+        settings.setHnswRecallSampleRate(hnswRecallSampleRate);
+        settings.setQuantized(quantized);
+        settings.setQuantizedRerank(quantizedRerank);
+    }
+
+    /**
+     * Per-tenant gallery size, index state and sampled HNSW recall against the exact scan
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> tenants = new HashMap<>();
+        galleries.forEach((key, gallery) -> {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("size", gallery.size());
+            stats.put("indexed", gallery.isIndexed());
+            stats.put("templateBytes", gallery.getTemplateBytes());
+            stats.put("offHeapBytes", gallery.getOffHeapBytes());
+            long samples = gallery.getRecallSamples();
+            stats.put("recallSamples", samples);
+            stats.put("recall", samples > 0 ? (double) gallery.getRecallHits() / samples : null);
+            tenants.put(key, stats);
+        });
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("allTenantsLoaded", allLoaded);
+        result.put("hnswEnabled", settings.isHnswEnabled());
+        result.put("quantized", settings.isQuantized());
+        result.put("faceCropMode", faceRecognitionService.isFaceCropMode());
+        result.put("otherModeTemplates", otherModeEmployees.size());
+        result.put("tenants", tenants);
+        return result;
+    }
+
+    /**
+     * Get all tenant galleries, loading every tenant (cross-tenant recognition only)
+     */
+    public List<TenantGallery> getAllGalleries() {
+        ensureAllLoaded();
+        return new ArrayList<>(galleries.values());
+    }
+
+    /**
+     * Get the gallery of one tenant (empty if the tenant has no enrolled faces)
+     */
+    public TenantGallery getGallery(String tenantId) {
+        String tenantKey = tenantKey(tenantId);
+        ensureTenantLoaded(tenantKey);
+        return galleries.get(tenantKey);
+    }
+
+    /**
+     * Reflect a saved employee: active employees with a template are (re)indexed, others removed
+     */
+    public void refresh(Employee employee) {
+        FaceTemplate template = null;
+        if (Boolean.TRUE.equals(employee.getIsActive())) {
+            try {
+                template = FaceTemplateCodec.read(employee.getFaceTemplate(), employee.getFaceEncoding());
+            } catch (Exception e) {
+                System.out.println("Skipping unreadable face template for employee " + employee.getId() + ": " + e.getMessage());
+            }
+            template = currentMode(employee, template);
+        }
+
+        String tenantKey = tenantKey(employee.getTenantId());
+        // Serialised with loads: a tenant loading now either already sees this change or gets it here
+        synchronized (loadLock) {
+            // An employee can only live in one gallery; drop it from any other tenant first
+            galleries.forEach((key, gallery) -> {
+                if (!key.equals(tenantKey)) {
+                    gallery.remove(employee.getId());
+                }
+            });
+
+            TenantGallery gallery = galleries.get(tenantKey);
+            if (gallery == null) {
+                // After the bulk load every tenant with faces is resident, so a tenant missing now
+                // had none: start its gallery here, or cross-tenant matching would never see it.
+                // Otherwise a tenant not loaded yet reads the committed state when it is.
+                if (!allLoaded || template == null) {
+                    return;
+                }
+                gallery = newGallery(tenantKey);
+                galleries.put(tenantKey, gallery);
+                loadedTenants.add(tenantKey);
+            }
+            if (template != null) {
+                gallery.put(employee.getId(), template);
+            } else {
+                gallery.remove(employee.getId());
+            }
+        }
+    }
+
+    /**
+     * Remove a deleted employee from the galleries
+     */
+    public void remove(Employee employee) {
+        synchronized (loadLock) {
+            TenantGallery gallery = galleries.get(tenantKey(employee.getTenantId()));
+            if (gallery != null) {
+                gallery.remove(employee.getId());
+            }
+        }
+    }
+
+    private void ensureTenantLoaded(String tenantKey) {
+        if (loadedTenants.contains(tenantKey)) {
+            return;
+        }
+        synchronized (loadLock) {
+            if (loadedTenants.contains(tenantKey)) {
+                return;
+            }
+
+            long start = System.currentTimeMillis();
+            TenantGallery gallery = newGallery(tenantKey);
+            List<Employee> employees = employeeRepository.findActiveEmployeesWithFaceEncodingByTenantId(tenantKey);
+            int skipped = load(employees, gallery);
+
+            galleries.put(tenantKey, gallery);
+            loadedTenants.add(tenantKey);
+            System.out.println("Face gallery loaded for tenant '" + tenantKey + "': " + gallery.size() + " employees in " +
+                    (System.currentTimeMillis() - start) + "ms" +
+                    (skipped > 0 ? " (" + skipped + " unreadable templates skipped)" : ""));
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void ensureAllLoaded() {
+        if (allLoaded) {
+            return;
+        }
+        synchronized (loadLock) {
+            if (allLoaded) {
+                return;
+            }
+
+            long start = System.currentTimeMillis();
+            Map<String, List<Employee>> byTenant = new HashMap<>();
+            for (Employee employee : employeeRepository.findActiveEmployeesWithFaceEncoding()) {
+                String tenantKey = tenantKey(employee.getTenantId());
+                // Tenants already resident are kept current by refresh()
+                if (!loadedTenants.contains(tenantKey)) {
+                    byTenant.computeIfAbsent(tenantKey, key -> new ArrayList<>()).add(employee);
+                }
+            }
+
+            int loaded = 0;
+            int skipped = 0;
+            for (Map.Entry<String, List<Employee>> entry : byTenant.entrySet()) {
+                TenantGallery gallery = newGallery(entry.getKey());
+                skipped += load(entry.getValue(), gallery);
+                loaded += gallery.size();
+                galleries.put(entry.getKey(), gallery);
+                loadedTenants.add(entry.getKey());
+            }
+
+            allLoaded = true;
+            System.out.println("Face galleries loaded: " + loaded + " employees across " +
+                    byTenant.size() + " more tenants in " + (System.currentTimeMillis() - start) + "ms" +
+                    (skipped > 0 ? " (" + skipped + " unreadable templates skipped)" : ""));
+        }
+    }
+
+    /**
+     * Put employees' templates into a gallery, returning how many were unreadable
+     */
+    private int load(List<Employee> employees, TenantGallery gallery) {
+        int skipped = 0;
+        for (Employee employee : employees) {
+            try {
+                FaceTemplate template = currentMode(employee,
+                        FaceTemplateCodec.read(employee.getFaceTemplate(), employee.getFaceEncoding()));
+                if (template != null) {
+                    gallery.put(employee.getId(), template);
+                }
+            } catch (Exception e) {
+                skipped++;
+            }
+        }
+        return skipped;
+    }
+
+    /**
+     * The template if it was extracted in the current mode, else null (recorded so it shows up in
+     * the stats): crop probes against whole-frame templates, or the reverse, would silently mismatch
+     */
+    private FaceTemplate currentMode(Employee employee, FaceTemplate template) {
+        if (template == null || template.isFaceCrop() == faceRecognitionService.isFaceCropMode()) {
+            otherModeEmployees.remove(employee.getId());
+            return template;
+        }
+        if (otherModeEmployees.add(employee.getId())) {
+            System.out.println("Face template of employee " + employee.getId() + " was extracted from a " +
+                    (template.isFaceCrop() ? "face crop" : "whole frame") + "; re-enrol to match in the current mode");
+        }
+        return null;
+    }
+
+    private TenantGallery newGallery(String tenantKey) {
+        return new TenantGallery(tenantKey, settings);
+    }
+
+    private static String tenantKey(String tenantId) {
+        return tenantId != null ? tenantId : "";
+    }
+}
@@ -0,0 +1,114 @@
+package com.faceattendance.service;
+
+import com.faceattendance.recognition.FaceDetector;
+import com.faceattendance.recognition.FaceTemplate;
+import com.faceattendance.recognition.GrayImage;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * One request's face image, decoded once.
+ *
+ * Validation, template extraction and matching record their results here, so a request that
+ * validates, encodes and matches an image (and then needs the match confidence) only ever
+ * decodes it once and extracts its template once.
+ */
+public class FaceImageContext {
+
+    private final BufferedImage image;
+    private final int sourceWidth;
+    private final int sourceHeight;
+    private GrayImage gray;
+    private GrayImage standardGray;
+    private FaceDetector.Region faceRegion;
+    private Boolean valid;
+    private FaceTemplate template;
+    private FaceRecognitionService.FaceMatchResult match;
+
+    FaceImageContext(BufferedImage image, int sourceWidth, int sourceHeight) {
+        this.image = image;
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+    }
+
+    /**
+     * The decoded image (possibly subsampled), or null if it was unreadable or not decoded
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Width of the encoded image, before any decode-time subsampling (0 if unreadable)
+     */
+    public int getSourceWidth() {
+        return sourceWidth;
+    }
+
+    public int getSourceHeight() {
+        return sourceHeight;
+    }
+
+    /**
+     * Grayscale plane of the decoded image, or null until first needed
+     */
+    public GrayImage getGray() {
+        return gray;
+    }
+
+    void setGray(GrayImage gray) {
+        this.gray = gray;
+    }
+
+    /**
+     * Gray plane scaled to the standard template size, or null until first needed
+     */
+    public GrayImage getStandardGray() {
+        return standardGray;
+    }
+
+    void setStandardGray(GrayImage standardGray) {
+        this.standardGray = standardGray;
+    }
+
+    /**
+     * Face box found during validation, in gray-plane coordinates; null if detection is off or has not run
+     */
+    public FaceDetector.Region getFaceRegion() {
+        return faceRegion;
+    }
+
+    void setFaceRegion(FaceDetector.Region faceRegion) {
+        this.faceRegion = faceRegion;
+    }
+
+    /**
+     * Outcome of validation, or null if not validated yet
+     */
+    public Boolean getValid() {
+        return valid;
+    }
+
+    void setValid(Boolean valid) {
+        this.valid = valid;
+    }
+
+    public FaceTemplate getTemplate() {
+        return template;
+    }
+
+    void setTemplate(FaceTemplate template) {
+        this.template = template;
+    }
+
+    /**
+     * Result of the gallery match, or null if the image has not been matched
+     */
+    public FaceRecognitionService.FaceMatchResult getMatch() {
+        return match;
+    }
+
+    void setMatch(FaceRecognitionService.FaceMatchResult match) {
+        this.match = match;
+    }
+}
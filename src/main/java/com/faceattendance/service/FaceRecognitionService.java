@@ -1,27 +1,86 @@
 package com.faceattendance.service;
 
+import com.faceattendance.recognition.BestMatch;
+import com.faceattendance.recognition.FaceDetector;
+import com.faceattendance.recognition.FaceFeatureExtractor;
+import com.faceattendance.recognition.FaceTemplate;
+import com.faceattendance.recognition.FaceTemplateCodec;
+import com.faceattendance.recognition.GrayImage;
+import com.faceattendance.recognition.HaarCascade;
+import com.faceattendance.recognition.RankedCandidates;
+import com.faceattendance.recognition.SimilarityKernel;
+import com.faceattendance.recognition.TenantGallery;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
-import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.MessageDigest;
 import java.util.Base64;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
 
 @Service
 public class FaceRecognitionService {
 
+    // Side of the standardised image every template is extracted from
+    private static final int STANDARD_SIZE = 256;
+    private static final int MIN_IMAGE_SIZE = 100;
+    private static final int MAX_IMAGE_SIZE = 2000;
+    private static final double MIN_SHARPNESS = 5.0;
+
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+    private static final boolean ALLOCATION_TRACKING = THREADS != null;
+
     @Value("${face.recognition.confidence.threshold:80.0}")
     private double confidenceThreshold;
 
     @Value("${face.recognition.model.path:models/}")
     private String modelPath;
 
+    @Value("${face.recognition.simd.enabled:true}")
+    private boolean simdEnabled;
+
+    @Value("${face.recognition.cascade.path:haarcascade_frontalface_alt.xml}")
+    private String cascadePath;
+
+    @Value("${face.recognition.detection.enabled:true}")
+    private boolean detectionEnabled;
+
+    // Null when detection is off or the cascade could not be loaded: templates then cover the whole frame
+    private FaceDetector faceDetector;
+
+    private final LongAdder extractions = new LongAdder();
+    private final LongAdder extractionAllocatedBytes = new LongAdder();
+    private volatile long lastExtractionAllocatedBytes;
+
+    /**
+     * The HotSpot thread bean with per-thread allocation counters enabled, or null if unavailable
+     */
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean &&
+                bean.isThreadAllocatedMemorySupported()) {
+            bean.setThreadAllocatedMemoryEnabled(true);
+            return bean;
+        }
+        return null;
+    }
+
     @PostConstruct
     public void init() {
         try {
@@ -30,12 +89,48 @@ public class FaceRecognitionService {
         } catch (Exception e) {
             throw new RuntimeException("Failed to initialize face recognition service", e);
         }
+
+        SimilarityKernel.configure(simdEnabled);
+        System.out.println("Face similarity kernel: " + (SimilarityKernel.isVectorEnabled() ? "Vector API (256-bit)" : "scalar") +
+                (simdEnabled && !SimilarityKernel.isVectorModulePresent() ? " - start the JVM with --add-modules jdk.incubator.vector to vectorise" : ""));
+
+        if (detectionEnabled) {
+            faceDetector = loadFaceDetector();
+        }
     }
 
     /**
-     * Enhanced face image validation with quality checks
+     * True when templates are extracted from detected face crops (a usable cascade is loaded), false
+     * for whole frames; galleries only hold templates of the current mode
      */
-    public boolean validateFaceImage(String base64Image) {
+    public boolean isFaceCropMode() {
+        return faceDetector != null;
+    }
+
+    /**
+     * Detector for the configured cascade, read from the file system or else the classpath
+     */
+    private FaceDetector loadFaceDetector() {
+        Path file = Paths.get(cascadePath);
+        try (InputStream xml = Files.isRegularFile(file) ? Files.newInputStream(file) :
+                getClass().getClassLoader().getResourceAsStream(cascadePath)) {
+            if (xml == null) {
+                System.out.println("Face detection disabled: cascade " + cascadePath + " not found, whole frames will be encoded");
+                return null;
+            }
+            HaarCascade cascade = HaarCascade.load(xml);
+            System.out.println("Face detection: " + cascade.getStageCount() + "-stage Haar cascade from " + cascadePath);
+            return new FaceDetector(cascade);
+        } catch (Exception e) {
+            System.out.println("Face detection disabled: cannot use cascade " + cascadePath + " (" + e.getMessage() + "), whole frames will be encoded");
+            return null;
+        }
+    }
+
+    /**
+     * Decode a Base64 image once; the context is then passed through validation, encoding and matching
+     */
+    public FaceImageContext decodeFaceImage(String base64Image) {
         try {
             // Handle different base64 formats
             String cleanBase64 = base64Image;
@@ -45,33 +140,126 @@ public class FaceRecognitionService {
             }
 
             byte[] imageBytes = Base64.getDecoder().decode(cleanBase64);
-            BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageBytes));
+            return decodeFaceImage(imageBytes);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to decode image from base64: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Decode raw image bytes (JPEG, PNG, ...) once
+     */
+    public FaceImageContext decodeFaceImage(byte[] imageBytes) {
+        return decodeFaceImage(new ByteArrayInputStream(imageBytes));
+    }
+
+    /**
+     * Decode an image straight from a stream, such as a multipart upload; the caller closes the stream
+     */
+    public FaceImageContext decodeFaceImage(InputStream imageStream) {
+        try {
+            return decodeImage(imageStream);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to decode image: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Read the header first: oversized images are not decoded at all, large ones are decoded with
+     * source subsampling down to no less than twice the standard size
+     */
+    private FaceImageContext decodeImage(InputStream imageStream) throws IOException {
+        // Buffered in memory as the reader consumes it, never spooled to a temp file
+        try (ImageInputStream input = new MemoryCacheImageInputStream(imageStream)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return new FaceImageContext(null, 0, 0);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if (width > MAX_IMAGE_SIZE || height > MAX_IMAGE_SIZE) {
+                    // Rejected by validation on its dimensions alone
+                    return new FaceImageContext(null, width, height);
+                }
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.min(width, height) / (2 * STANDARD_SIZE);
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                return new FaceImageContext(reader.read(0, param), width, height);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Enhanced face image validation with quality checks
+     */
+    public boolean validateFaceImage(String base64Image) {
+        try {
+            return validateFaceImage(decodeFaceImage(base64Image));
+        } catch (Exception e) {
+            System.out.println("Image validation failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Validate a decoded image; the outcome is kept on the context so later steps don't re-check
+     */
+    public boolean validateFaceImage(FaceImageContext context) {
+        if (context.getValid() == null) {
+            context.setValid(checkFaceImage(context));
+        }
+        return context.getValid();
+    }
+
+    private boolean checkFaceImage(FaceImageContext context) {
+        try {
+            int width = context.getSourceWidth();
+            int height = context.getSourceHeight();
+
+            // Check maximum dimensions first (prevent extremely large images); such images are never decoded
+            if (width > MAX_IMAGE_SIZE || height > MAX_IMAGE_SIZE) {
+                System.out.println("Image validation failed: Image too large: " + width + "x" + height + " (maximum 2000x2000)");
+                return false;
+            }
 
             // Basic validation: check image dimensions and format
-            if (image == null) {
+            if (context.getImage() == null) {
                 System.out.println("Image validation failed: Image is null after decoding");
                 return false;
             }
 
             // Check minimum dimensions (face should be at least 100x100 pixels for good quality)
-            if (image.getWidth() < 100 || image.getHeight() < 100) {
-                System.out.println("Image validation failed: Image too small: " + image.getWidth() + "x" + image.getHeight() + " (minimum 100x100)");
+            if (width < MIN_IMAGE_SIZE || height < MIN_IMAGE_SIZE) {
+                System.out.println("Image validation failed: Image too small: " + width + "x" + height + " (minimum 100x100)");
                 return false;
             }
 
-            // Check maximum dimensions (prevent extremely large images)
-            if (image.getWidth() > 2000 || image.getHeight() > 2000) {
-                System.out.println("Image validation failed: Image too large: " + image.getWidth() + "x" + image.getHeight() + " (maximum 2000x2000)");
+            // Check image quality metrics on the standardised plane the template is extracted from
+            if (!checkImageQuality(standardPlane(context))) {
+                System.out.println("Image validation failed: Poor image quality detected");
                 return false;
             }
 
-            // Check image quality metrics
-            if (!checkImageQuality(image)) {
-                System.out.println("Image validation failed: Poor image quality detected");
-                return false;
+            // Frames without a face are rejected here, before any feature work
+            if (faceDetector != null) {
+                FaceDetector.Region face = faceDetector.detect(grayPlane(context));
+                if (face == null) {
+                    System.out.println("Image validation failed: No face detected");
+                    return false;
+                }
+                context.setFaceRegion(face);
+                System.out.println("Face detected: " + face);
             }
 
-            System.out.println("Image validation passed: " + image.getWidth() + "x" + image.getHeight() + " with good quality");
+            System.out.println("Image validation passed: " + width + "x" + height + " with good quality");
             return true;
         } catch (Exception e) {
             System.out.println("Image validation failed: " + e.getMessage());
@@ -81,27 +269,26 @@ public class FaceRecognitionService {
     }
 
     /**
-     * Check image quality for face recognition
+     * Check image quality for face recognition on the standardised plane; stops at the first failed check
      */
-    private boolean checkImageQuality(BufferedImage image) {
+    private boolean checkImageQuality(GrayImage gray) {
         try {
-            int width = image.getWidth();
-            int height = image.getHeight();
-
-            // Convert to grayscale for quality analysis
-            int[] grayPixels = convertToGrayscale(image);
+            int width = gray.getWidth();
+            int height = gray.getHeight();
+            byte[] grayPixels = gray.getPixels();
 
             // Check for sufficient contrast
             int minPixel = 255, maxPixel = 0;
-            double sum = 0;
-            for (int pixel : grayPixels) {
+            long sum = 0;
+            for (byte value : grayPixels) {
+                int pixel = value & 0xFF;
                 minPixel = Math.min(minPixel, pixel);
                 maxPixel = Math.max(maxPixel, pixel);
                 sum += pixel;
             }
 
             int contrast = maxPixel - minPixel;
-            double avgBrightness = sum / grayPixels.length;
+            double avgBrightness = (double) sum / grayPixels.length;
 
             // Require minimum contrast (at least 30 levels difference)
             if (contrast < 30) {
@@ -116,13 +303,16 @@ public class FaceRecognitionService {
             }
 
             // Check for image sharpness using edge detection
-            double sharpness = calculateSharpness(grayPixels, width, height);
-            if (sharpness < 5.0) {
-                System.out.println("Quality check failed: Image too blurry (sharpness: " + String.format("%.2f", sharpness) + " < 5.0)");
+            long pixels = (long) Math.max(0, width - 2) * Math.max(0, height - 2);
+            long required = (long) Math.ceil(MIN_SHARPNESS * pixels * 4 / Math.PI);
+            long gradient = gradientTotal(grayPixels, width, height, required);
+            if (pixels == 0 || gradient < required) {
+                double sharpness = pixels > 0 ? gradient * Math.PI / 4 / pixels : 0;
+                System.out.println("Quality check failed: Image too blurry (sharpness: " + String.format("%.2f", sharpness) + " < " + MIN_SHARPNESS + ")");
                 return false;
             }
 
-            System.out.println("Quality metrics - Contrast: " + contrast + ", Brightness: " + String.format("%.1f", avgBrightness) + ", Sharpness: " + String.format("%.2f", sharpness));
+            System.out.println("Quality metrics - Contrast: " + contrast + ", Brightness: " + String.format("%.1f", avgBrightness) + ", Sharpness: >= " + MIN_SHARPNESS);
             return true;
 
         } catch (Exception e) {
@@ -132,124 +322,80 @@ public class FaceRecognitionService {
     }
 
     /**
-     * Calculate image sharpness using gradient magnitude
+     * Sum of |gx| + |gy| over the interior pixels, stopping once it reaches {@code required}.
+     * Over all gradient directions the Euclidean magnitude averages pi/4 of this L1 magnitude, so
+     * sharpness (mean magnitude) is compared as total * pi / 4 / pixels without a square root per pixel.
      */
-    private double calculateSharpness(int[] grayPixels, int width, int height) {
-        double totalGradient = 0;
-        int count = 0;
-
-        for (int y = 1; y < height - 1; y++) {
+    private long gradientTotal(byte[] grayPixels, int width, int height, long required) {
+        long total = 0;
+        for (int y = 1; y < height - 1 && total < required; y++) {
+            int row = y * width;
+            int rowTotal = 0;
             for (int x = 1; x < width - 1; x++) {
-                int idx = y * width + x;
-
-                // Calculate gradients
-                int gx = grayPixels[idx + 1] - grayPixels[idx - 1];
-                int gy = grayPixels[idx + width] - grayPixels[idx - width];
-
-                // Calculate gradient magnitude
-                double magnitude = Math.sqrt(gx * gx + gy * gy);
-                totalGradient += magnitude;
-                count++;
+                int idx = row + x;
+                int gx = (grayPixels[idx + 1] & 0xFF) - (grayPixels[idx - 1] & 0xFF);
+                int gy = (grayPixels[idx + width] & 0xFF) - (grayPixels[idx - width] & 0xFF);
+                rowTotal += Math.abs(gx) + Math.abs(gy);
             }
+            total += rowTotal;
         }
+        return total;
+    }
 
-        return count > 0 ? totalGradient / count : 0;
+    /**
+     * Extract face template from image (simplified approach)
+     */
+    public FaceTemplate extractFaceTemplate(String base64Image) {
+        return extractFaceTemplate(decodeFaceImage(base64Image));
     }
 
     /**
-     * Extract face encoding from image (simplified approach)
+     * Extract the face template of a decoded image, at most once per context
      */
-    public String extractFaceEncoding(String base64Image) {
+    public FaceTemplate extractFaceTemplate(FaceImageContext context) {
+        if (context.getTemplate() != null) {
+            return context.getTemplate();
+        }
         try {
             // Validate the image first
-            if (!validateFaceImage(base64Image)) {
+            if (!validateFaceImage(context)) {
                 throw new RuntimeException("Invalid face image provided");
             }
 
-            // Handle different base64 formats
-            String cleanBase64 = base64Image;
-            if (base64Image.contains(",")) {
-                // Remove data URL prefix if present (e.g., "data:image/jpeg;base64,")
-                cleanBase64 = base64Image.split(",")[1];
-            }
-
-            // Decode base64 image
-            byte[] imageBytes = Base64.getDecoder().decode(cleanBase64);
-            BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageBytes));
-
-            if (image == null) {
-                throw new RuntimeException("Failed to decode image from base64");
-            }
-
-            // Create a simplified face encoding using image features
+            // Create a simplified face template using image features
             // In a production system, you would use proper face recognition algorithms
-            String encoding = createSimpleFaceEncoding(image);
+            FaceTemplate template = createSimpleFaceEncoding(context);
+            context.setTemplate(template);
 
-            System.out.println("Face encoding created successfully");
-            return encoding;
+            System.out.println("Face template created successfully");
+            return template;
 
         } catch (Exception e) {
-            System.out.println("Failed to extract face encoding: " + e.getMessage());
+            System.out.println("Failed to extract face template: " + e.getMessage());
             e.printStackTrace();
-            throw new RuntimeException("Failed to extract face encoding: " + e.getMessage(), e);
+            throw new RuntimeException("Failed to extract face template: " + e.getMessage(), e);
         }
     }
 
     /**
-     * Create a more robust face encoding using multiple image features
+     * Create a more robust face template using multiple image features
      */
-    private String createSimpleFaceEncoding(BufferedImage image) {
+    private FaceTemplate createSimpleFaceEncoding(FaceImageContext context) {
         try {
-            // STANDARDIZED image size for ALL employees - no exceptions
-            final int STANDARD_WIDTH = 256;
-            final int STANDARD_HEIGHT = 256;
-            BufferedImage resizedImage = resizeImage(image, STANDARD_WIDTH, STANDARD_HEIGHT);
-
-            // Convert to grayscale and extract multiple features
-            int[] grayPixels = convertToGrayscale(resizedImage);
-
-            // Extract multiple feature types for better uniqueness - STANDARDIZED for all employees
-            int[] histogram = createHistogram(grayPixels);
-            double[] lbpFeatures = extractLBPFeatures(resizedImage);
-            double[] edgeFeatures = extractEdgeFeatures(grayPixels, STANDARD_WIDTH, STANDARD_HEIGHT);
-            double[] textureFeatures = extractTextureFeatures(grayPixels, STANDARD_WIDTH, STANDARD_HEIGHT);
-
-            // Combine all features into a comprehensive encoding
-            StringBuilder encoding = new StringBuilder();
-
-            // Add histogram features (normalized)
-            encoding.append("HIST:");
-            for (int value : histogram) {
-                encoding.append(value).append(",");
-            }
+            // One grayscale plane, STANDARDIZED in size for ALL employees, feeds every feature type:
+            // the detected face scaled from the full-resolution plane, or else the whole standard plane
+            FaceDetector.Region face = context.getFaceRegion();
+            GrayImage source = face == null ? standardPlane(context) : grayPlane(context);
+            long allocatedBefore = allocatedBytes();
+            FaceTemplate template = face == null ? FaceFeatureExtractor.extract(source) :
+                    FaceFeatureExtractor.extract(source, face.getX(), face.getY(), face.getWidth(), face.getHeight(), STANDARD_SIZE);
+            recordExtraction(allocatedBefore);
 
-            // Add LBP features
-            encoding.append("LBP:");
-            for (double value : lbpFeatures) {
-                encoding.append(String.format("%.3f", value)).append(",");
-            }
-
-            // Add edge features
-            encoding.append("EDGE:");
-            for (double value : edgeFeatures) {
-                encoding.append(String.format("%.3f", value)).append(",");
-            }
-
-            // Add texture features
-            encoding.append("TEXT:");
-            for (double value : textureFeatures) {
-                encoding.append(String.format("%.3f", value)).append(",");
-            }
-
-            // Create a unique hash for quick comparison - SAME LOGIC FOR ALL EMPLOYEES
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] hashBytes = md.digest(encoding.toString().getBytes());
-            String hash = Base64.getEncoder().encodeToString(hashBytes).substring(0, 16);
+            System.out.println("STANDARDIZED template created for employee (same logic for all): " +
+                             STANDARD_SIZE + "x" + STANDARD_SIZE + " format");
 
-            System.out.println("STANDARDIZED encoding created for employee (same logic for all): " +
-                             STANDARD_WIDTH + "x" + STANDARD_HEIGHT + " format");
-
-            return hash + ":" + encoding.toString();
+            // Digest over the raw features doubles as the identical-image shortcut
+            return template;
 
         } catch (Exception e) {
             throw new RuntimeException("Failed to create face encoding", e);
@@ -257,228 +403,94 @@ public class FaceRecognitionService {
     }
 
     /**
-     * Resize image to specified dimensions
-     */
-    private BufferedImage resizeImage(BufferedImage original, int width, int height) {
-        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        resized.getGraphics().drawImage(original.getScaledInstance(width, height, java.awt.Image.SCALE_SMOOTH), 0, 0, null);
-        return resized;
-    }
-
-    /**
-     * Convert image to grayscale
+     * Grayscale plane of the decoded image, converted once per context
      */
-    private int[] convertToGrayscale(BufferedImage image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        int[] grayPixels = new int[width * height];
-
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int rgb = image.getRGB(x, y);
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
-
-                // Convert to grayscale using luminance formula
-                int gray = (int) (0.299 * r + 0.587 * g + 0.114 * b);
-                grayPixels[y * width + x] = gray;
-            }
+    private GrayImage grayPlane(FaceImageContext context) {
+        if (context.getGray() == null) {
+            context.setGray(GrayImage.of(context.getImage()));
         }
-
-        return grayPixels;
+        return context.getGray();
     }
 
     /**
-     * Create histogram of grayscale values
+     * Gray plane at the standard size, scaled once per context; quality checks and whole-frame
+     * templates share it
      */
-    private int[] createHistogram(int[] grayPixels) {
-        int[] histogram = new int[256];
-
-        for (int pixel : grayPixels) {
-            histogram[pixel]++;
+    private GrayImage standardPlane(FaceImageContext context) {
+        if (context.getStandardGray() == null) {
+            context.setStandardGray(grayPlane(context).resize(STANDARD_SIZE, STANDARD_SIZE));
         }
-
-        return histogram;
+        return context.getStandardGray();
     }
 
     /**
-     * Extract Local Binary Pattern (LBP) features for better face characterization
+     * Bytes allocated so far by the current thread, or -1 if the JVM does not track it
      */
-    private double[] extractLBPFeatures(BufferedImage image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        int[] lbpHistogram = new int[256];
-
-        // Convert to grayscale array for easier processing
-        int[][] grayImage = new int[height][width];
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int rgb = image.getRGB(x, y);
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
-                grayImage[y][x] = (int) (0.299 * r + 0.587 * g + 0.114 * b);
-            }
-        }
-
-        // Calculate LBP for each pixel (excluding borders)
-        for (int y = 1; y < height - 1; y++) {
-            for (int x = 1; x < width - 1; x++) {
-                int center = grayImage[y][x];
-                int lbpValue = 0;
-
-                // Check 8 neighbors in clockwise order
-                if (grayImage[y-1][x-1] >= center) lbpValue |= 1;
-                if (grayImage[y-1][x] >= center) lbpValue |= 2;
-                if (grayImage[y-1][x+1] >= center) lbpValue |= 4;
-                if (grayImage[y][x+1] >= center) lbpValue |= 8;
-                if (grayImage[y+1][x+1] >= center) lbpValue |= 16;
-                if (grayImage[y+1][x] >= center) lbpValue |= 32;
-                if (grayImage[y+1][x-1] >= center) lbpValue |= 64;
-                if (grayImage[y][x-1] >= center) lbpValue |= 128;
-
-                lbpHistogram[lbpValue]++;
-            }
-        }
+    private static long allocatedBytes() {
+        return ALLOCATION_TRACKING ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+    }
 
-        // Normalize histogram
-        double[] normalizedLBP = new double[256];
-        int totalPixels = (width - 2) * (height - 2);
-        for (int i = 0; i < 256; i++) {
-            normalizedLBP[i] = (double) lbpHistogram[i] / totalPixels;
+    private void recordExtraction(long allocatedBefore) {
+        extractions.increment();
+        if (allocatedBefore >= 0) {
+            long allocated = THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore;
+            extractionAllocatedBytes.add(allocated);
+            lastExtractionAllocatedBytes = allocated;
         }
-
-        return normalizedLBP;
     }
 
     /**
-     * Extract edge features using simple gradient calculation
+     * Extraction count and heap bytes allocated by feature extraction (the template included)
      */
-    private double[] extractEdgeFeatures(int[] grayPixels, int width, int height) {
-        double[] edgeFeatures = new double[8]; // 8 directional edge features
-
-        // Calculate gradients in different directions
-        for (int y = 1; y < height - 1; y++) {
-            for (int x = 1; x < width - 1; x++) {
-                int idx = y * width + x;
-
-                // Horizontal gradient
-                int gx = grayPixels[idx + 1] - grayPixels[idx - 1];
-                // Vertical gradient
-                int gy = grayPixels[idx + width] - grayPixels[idx - width];
-
-                // Calculate gradient magnitude and direction
-                double magnitude = Math.sqrt(gx * gx + gy * gy);
-                double angle = Math.atan2(gy, gx);
-
-                // Quantize angle into 8 bins
-                int bin = (int) ((angle + Math.PI) / (2 * Math.PI / 8)) % 8;
-                edgeFeatures[bin] += magnitude;
-            }
-        }
-
-        // Normalize features
-        double sum = 0;
-        for (double feature : edgeFeatures) {
-            sum += feature;
-        }
-        if (sum > 0) {
-            for (int i = 0; i < edgeFeatures.length; i++) {
-                edgeFeatures[i] /= sum;
-            }
-        }
-
-        return edgeFeatures;
+    public Map<String, Object> getExtractionStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long count = extractions.sum();
+        stats.put("extractions", count);
+        stats.put("allocationTracked", ALLOCATION_TRACKING);
+        if (ALLOCATION_TRACKING) {
+            stats.put("allocatedBytes", extractionAllocatedBytes.sum());
+            stats.put("meanAllocatedBytes", count > 0 ? extractionAllocatedBytes.sum() / count : 0);
+            stats.put("lastAllocatedBytes", lastExtractionAllocatedBytes);
+        }
+        return stats;
     }
 
     /**
-     * Extract texture features using variance in local regions
+     * Compare two legacy encoding strings using multiple feature types
      */
-    private double[] extractTextureFeatures(int[] grayPixels, int width, int height) {
-        double[] textureFeatures = new double[16]; // 4x4 grid of texture measures
-
-        int blockWidth = width / 4;
-        int blockHeight = height / 4;
-
-        for (int by = 0; by < 4; by++) {
-            for (int bx = 0; bx < 4; bx++) {
-                int startY = by * blockHeight;
-                int startX = bx * blockWidth;
-                int endY = Math.min(startY + blockHeight, height);
-                int endX = Math.min(startX + blockWidth, width);
-
-                // Calculate variance in this block
-                double sum = 0;
-                double sumSquares = 0;
-                int count = 0;
-
-                for (int y = startY; y < endY; y++) {
-                    for (int x = startX; x < endX; x++) {
-                        int pixel = grayPixels[y * width + x];
-                        sum += pixel;
-                        sumSquares += pixel * pixel;
-                        count++;
-                    }
-                }
-
-                if (count > 0) {
-                    double mean = sum / count;
-                    double variance = (sumSquares / count) - (mean * mean);
-                    textureFeatures[by * 4 + bx] = Math.sqrt(variance);
-                }
-            }
-        }
-
-        // Normalize features
-        double maxVariance = 0;
-        for (double feature : textureFeatures) {
-            maxVariance = Math.max(maxVariance, feature);
-        }
-        if (maxVariance > 0) {
-            for (int i = 0; i < textureFeatures.length; i++) {
-                textureFeatures[i] /= maxVariance;
-            }
+    public double compareFaces(String encoding1, String encoding2) {
+        try {
+            return compareFaces(FaceTemplateCodec.parseLegacy(encoding1), FaceTemplateCodec.parseLegacy(encoding2));
+        } catch (Exception e) {
+            System.out.println("Face comparison error: " + e.getMessage());
+            return 0.0;
         }
-
-        return textureFeatures;
     }
 
     /**
-     * Compare two face encodings using multiple feature types with strict matching
+     * Compare two face templates using multiple feature types with strict matching
      */
-    public double compareFaces(String encoding1, String encoding2) {
+    public double compareFaces(FaceTemplate template1, FaceTemplate template2) {
         try {
-            System.out.println("DEBUG: Encoding1 length: " + encoding1.length() + ", starts with: " + encoding1.substring(0, Math.min(50, encoding1.length())));
-            System.out.println("DEBUG: Encoding2 length: " + encoding2.length() + ", starts with: " + encoding2.substring(0, Math.min(50, encoding2.length())));
-
-            // Parse encodings - split only on first colon to separate hash from features
-            int firstColon1 = encoding1.indexOf(":");
-            int firstColon2 = encoding2.indexOf(":");
-
-            if (firstColon1 == -1 || firstColon2 == -1) {
-                System.out.println("Invalid encoding format - no colon found");
+            // A face crop and a whole frame describe different pixels; their score means nothing
+            if (!template1.sameExtraction(template2)) {
+                System.out.println("Refusing to compare a face-crop template with a whole-frame template");
                 return 0.0;
             }
 
-            String hash1 = encoding1.substring(0, firstColon1);
-            String features1 = encoding1.substring(firstColon1 + 1);
-            String hash2 = encoding2.substring(0, firstColon2);
-            String features2 = encoding2.substring(firstColon2 + 1);
-
-            System.out.println("DEBUG: Hash1: " + hash1 + ", Hash2: " + hash2);
-
-            // Compare hash parts first (quick check for identical images)
-            if (hash1.equals(hash2)) {
+            // Compare digests first (quick check for identical images)
+            if (template1.sameDigest(template2)) {
                 System.out.println("Identical hash found - 100% match");
                 return 100.0; // Identical images
             }
 
-            // Extract different feature types
-            double histSimilarity = compareFeatureSection(features1, features2, "HIST:");
-            double lbpSimilarity = compareFeatureSection(features1, features2, "LBP:");
-            double edgeSimilarity = compareFeatureSection(features1, features2, "EDGE:");
-            double textureSimilarity = compareFeatureSection(features1, features2, "TEXT:");
+            // Compare the different feature types on unit-normalised sections
+            double[] similarities = SimilarityKernel.sectionSimilarities(
+                    SimilarityKernel.normalize(template1), SimilarityKernel.normalize(template2));
+            double histSimilarity = similarities[0];
+            double lbpSimilarity = similarities[1];
+            double edgeSimilarity = similarities[2];
+            double textureSimilarity = similarities[3];
 
             // Weighted combination of all features (more conservative approach)
             double finalSimilarity = (histSimilarity * 0.3) +
@@ -501,244 +513,42 @@ public class FaceRecognitionService {
         }
     }
 
-    /**
-     * Compare a specific feature section between two encodings
-     */
-    private double compareFeatureSection(String encoding1, String encoding2, String featureType) {
-        try {
-            // Extract feature section from both encodings
-            String[] features1 = extractFeatureSection(encoding1, featureType);
-            String[] features2 = extractFeatureSection(encoding2, featureType);
-
-            if (features1 == null || features2 == null || features1.length != features2.length) {
-                return 0.0;
-            }
-
-            // Calculate cosine similarity for this feature type
-            return calculateCosineSimilarity(features1, features2);
-
-        } catch (Exception e) {
-            return 0.0;
-        }
-    }
-
-    /**
-     * Extract a specific feature section from the encoding string
-     */
-    private String[] extractFeatureSection(String encoding, String featureType) {
-        try {
-            int startIdx = encoding.indexOf(featureType);
-            if (startIdx == -1) return null;
-
-            startIdx += featureType.length();
-            int endIdx = encoding.indexOf(":", startIdx);
-            if (endIdx == -1) endIdx = encoding.length();
-
-            String section = encoding.substring(startIdx, endIdx);
-            return section.split(",");
-
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
-    /**
-     * Calculate similarity between two histograms
-     */
-    private double calculateHistogramSimilarity(String[] hist1, String[] hist2) {
-        try {
-            double correlation = 0.0;
-            double sum1 = 0.0, sum2 = 0.0;
-            double sumSq1 = 0.0, sumSq2 = 0.0;
-            double sumProduct = 0.0;
-            int n = Math.min(hist1.length - 1, hist2.length - 1); // -1 because last element is empty
-
-            // Calculate means
-            for (int i = 0; i < n; i++) {
-                try {
-                    double val1 = Double.parseDouble(hist1[i]);
-                    double val2 = Double.parseDouble(hist2[i]);
-                    sum1 += val1;
-                    sum2 += val2;
-                } catch (NumberFormatException e) {
-                    // Skip invalid values
-                }
-            }
-
-            double mean1 = sum1 / n;
-            double mean2 = sum2 / n;
-
-            // Calculate correlation coefficient
-            for (int i = 0; i < n; i++) {
-                try {
-                    double val1 = Double.parseDouble(hist1[i]);
-                    double val2 = Double.parseDouble(hist2[i]);
-
-                    double diff1 = val1 - mean1;
-                    double diff2 = val2 - mean2;
-
-                    sumProduct += diff1 * diff2;
-                    sumSq1 += diff1 * diff1;
-                    sumSq2 += diff2 * diff2;
-                } catch (NumberFormatException e) {
-                    // Skip invalid values
-                }
-            }
-
-            double denominator = Math.sqrt(sumSq1 * sumSq2);
-            if (denominator > 0) {
-                correlation = sumProduct / denominator;
-            }
-
-            // Convert correlation to similarity percentage (0-100)
-            // Correlation ranges from -1 to 1, we want 0 to 100
-            double similarity = ((correlation + 1) / 2) * 100;
-
-            return Math.max(0, Math.min(100, similarity));
-
-        } catch (Exception e) {
-            return 0.0;
-        }
-    }
-
-    /**
-     * Calculate simple similarity between two histograms using intersection
-     */
-    private double calculateSimpleHistogramSimilarity(String[] hist1, String[] hist2) {
-        try {
-            double intersection = 0.0;
-            double union = 0.0;
-            int n = Math.min(hist1.length - 1, hist2.length - 1); // -1 because last element is empty
-
-            for (int i = 0; i < n; i++) {
-                try {
-                    double val1 = Double.parseDouble(hist1[i]);
-                    double val2 = Double.parseDouble(hist2[i]);
-
-                    intersection += Math.min(val1, val2);
-                    union += Math.max(val1, val2);
-                } catch (NumberFormatException e) {
-                    // Skip invalid values
-                }
-            }
-
-            // Calculate Jaccard similarity (intersection over union)
-            double similarity = union > 0 ? (intersection / union) * 100 : 0.0;
-
-            return Math.max(0, Math.min(100, similarity));
-
-        } catch (Exception e) {
-            return 0.0;
-        }
-    }
-
-    /**
-     * Calculate cosine similarity between two histograms
-     */
-    private double calculateCosineSimilarity(String[] hist1, String[] hist2) {
-        try {
-            double dotProduct = 0.0;
-            double norm1 = 0.0;
-            double norm2 = 0.0;
-            int n = Math.min(hist1.length - 1, hist2.length - 1);
-
-            for (int i = 0; i < n; i++) {
-                try {
-                    double val1 = Double.parseDouble(hist1[i]);
-                    double val2 = Double.parseDouble(hist2[i]);
-
-                    dotProduct += val1 * val2;
-                    norm1 += val1 * val1;
-                    norm2 += val2 * val2;
-                } catch (NumberFormatException e) {
-                    // Skip invalid values
-                }
-            }
-
-            double denominator = Math.sqrt(norm1 * norm2);
-            if (denominator > 0) {
-                double similarity = (dotProduct / denominator) * 100;
-                return Math.max(0, Math.min(100, similarity));
-            }
-            return 0.0;
-
-        } catch (Exception e) {
-            return 0.0;
-        }
-    }
-
-    /**
-     * Calculate Euclidean similarity between two histograms
-     */
-    private double calculateEuclideanSimilarity(String[] hist1, String[] hist2) {
-        try {
-            double sumSquaredDiff = 0.0;
-            double maxPossibleDistance = 0.0;
-            int n = Math.min(hist1.length - 1, hist2.length - 1);
-
-            for (int i = 0; i < n; i++) {
-                try {
-                    double val1 = Double.parseDouble(hist1[i]);
-                    double val2 = Double.parseDouble(hist2[i]);
-
-                    double diff = val1 - val2;
-                    sumSquaredDiff += diff * diff;
-
-                    // Calculate max possible distance for normalization
-                    double maxVal = Math.max(val1, val2);
-                    maxPossibleDistance += maxVal * maxVal;
-                } catch (NumberFormatException e) {
-                    // Skip invalid values
-                }
-            }
-
-            if (maxPossibleDistance > 0) {
-                double distance = Math.sqrt(sumSquaredDiff);
-                double maxDistance = Math.sqrt(maxPossibleDistance);
-                double similarity = (1.0 - (distance / maxDistance)) * 100;
-                return Math.max(0, Math.min(100, similarity));
-            }
-            return 0.0;
-
-        } catch (Exception e) {
-            return 0.0;
-        }
-    }
-
     /**
      * Verify if a face matches with confidence above threshold
      */
-    public boolean verifyFace(String knownEncoding, String testEncoding) {
-        double similarity = compareFaces(knownEncoding, testEncoding);
+    public boolean verifyFace(FaceTemplate knownTemplate, FaceTemplate testTemplate) {
+        double similarity = compareFaces(knownTemplate, testTemplate);
         return similarity >= confidenceThreshold;
     }
 
     /**
-     * Find best matching face from a list of known encodings with strict validation
+     * Find best matching face across resident tenant galleries with strict validation
      */
-    public FaceMatchResult findBestMatch(String testEncoding, List<String> knownEncodings, List<String> employeeIds) {
-        double bestSimilarity = 0.0;
-        String bestMatchId = null;
-        double secondBestSimilarity = 0.0;
-
+    public FaceMatchResult findBestMatch(FaceTemplate testTemplate, Collection<TenantGallery> galleries) {
         System.out.println("=== ENHANCED FACE MATCHING DEBUG ===");
-        System.out.println("Number of registered employees: " + knownEncodings.size());
         System.out.println("Confidence threshold: " + confidenceThreshold + "% (SAME AS FRONTEND)");
 
-        for (int i = 0; i < knownEncodings.size(); i++) {
-            double similarity = compareFaces(knownEncodings.get(i), testEncoding);
-            System.out.println("Employee ID " + employeeIds.get(i) + " similarity: " + String.format("%.2f", similarity) + "%");
-
-            if (similarity > bestSimilarity) {
-                secondBestSimilarity = bestSimilarity;
-                bestSimilarity = similarity;
-                bestMatchId = employeeIds.get(i);
-                System.out.println("New best match: Employee ID " + bestMatchId + " with " + String.format("%.2f", bestSimilarity) + "%");
-            } else if (similarity > secondBestSimilarity) {
-                secondBestSimilarity = similarity;
-            }
+        // Galleries only hold templates of the current extraction mode
+        if (testTemplate.isFaceCrop() != isFaceCropMode()) {
+            System.out.println("Probe template was extracted in the other mode (crop vs whole frame); not matching");
+            return new FaceMatchResult(null, 0.0, false);
+        }
+
+        long start = System.nanoTime();
+        float[] probe = SimilarityKernel.normalize(testTemplate);
+        BestMatch match = new BestMatch();
+        for (TenantGallery gallery : galleries) {
+            match.merge(gallery.findBest(probe, testTemplate.getDigest()));
         }
 
+        System.out.println("Scanned " + match.getCandidates() + " registered employees (" +
+                         match.getPruned() + " pruned early) in " +
+                         String.format("%.2f", (System.nanoTime() - start) / 1_000_000.0) + "ms");
+
+        double bestSimilarity = match.getBestSimilarity();
+        double secondBestSimilarity = match.getSecondBestSimilarity();
+        String bestMatchId = match.getEmployeeId();
+
         // Enhanced validation: Check if the best match is significantly better than the second best
         double confidenceGap = bestSimilarity - secondBestSimilarity;
         boolean isMatch = bestSimilarity >= confidenceThreshold;
@@ -746,7 +556,7 @@ public class FaceRecognitionService {
         // Additional security: Require a minimum gap between best and second-best matches
         // This prevents false positives when multiple faces have similar low scores
         double minimumGap = 1.0; // Require at least 1% difference (reduced for better matching)
-        if (isMatch && knownEncodings.size() > 1 && confidenceGap < minimumGap) {
+        if (isMatch && match.getCandidates() > 1 && confidenceGap < minimumGap) {
             System.out.println("SECURITY WARNING: Best match confidence gap too small (" +
                              String.format("%.2f", confidenceGap) + "% < " + minimumGap + "%). Rejecting match.");
             isMatch = false;
@@ -775,6 +585,35 @@ public class FaceRecognitionService {
         return new FaceMatchResult(bestMatchId, bestSimilarity, isMatch);
     }
 
+    /**
+     * The k most similar employees across the galleries, best first, from one scan per gallery
+     */
+    public List<FaceMatchResult> findTopMatches(FaceTemplate testTemplate, Collection<TenantGallery> galleries, int k) {
+        // Galleries only hold templates of the current extraction mode
+        if (testTemplate.isFaceCrop() != isFaceCropMode()) {
+            System.out.println("Probe template was extracted in the other mode (crop vs whole frame); not ranking");
+            return new ArrayList<>();
+        }
+
+        long start = System.nanoTime();
+        float[] probe = SimilarityKernel.normalize(testTemplate);
+        List<RankedCandidates> rankings = new ArrayList<>();
+        for (TenantGallery gallery : galleries) {
+            rankings.add(gallery.findTop(probe, testTemplate.getDigest(), k));
+        }
+        RankedCandidates ranked = RankedCandidates.merge(rankings, k);
+
+        List<FaceMatchResult> results = new ArrayList<>(ranked.size());
+        for (int i = 0; i < ranked.size(); i++) {
+            double similarity = ranked.getSimilarity(i);
+            results.add(new FaceMatchResult(ranked.getEmployeeId(i), similarity, similarity >= confidenceThreshold));
+        }
+
+        System.out.println("Ranked top " + results.size() + " candidates in " +
+                         String.format("%.2f", (System.nanoTime() - start) / 1_000_000.0) + "ms");
+        return results;
+    }
+
     /**
      * Result class for face matching
      */
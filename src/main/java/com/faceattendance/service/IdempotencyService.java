@@ -0,0 +1,254 @@
+package com.faceattendance.service;
+
+import com.faceattendance.dto.AttendanceResponse;
+import com.faceattendance.model.IdempotencyRecord;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Replays punches resubmitted with the same Idempotency-Key.
+ *
+ * A punch's response is kept in an in-memory LRU and in the idempotency_keys collection, where a
+ * TTL index drops it after {@code attendance.idempotency.ttl-hours}. A replay is answered from
+ * either without decoding, matching or writing attendance again. A retry arriving while the first
+ * attempt is still running waits for it and shares its outcome. Failed punches are not stored,
+ * so the next retry runs afresh.
+ *
+ * Keys are scoped by endpoint and tenant, and each stored punch keeps a fingerprint of its request
+ * (a SHA-256 of the body or image). A key reused for a different request is rejected with
+ * {@link KeyReusedException} rather than answered with someone else's attendance.
+ */
+@Service
+public class IdempotencyService {
+
+    /**
+     * One punch, run at most once per key
+     */
+    @FunctionalInterface
+    public interface Punch {
+        AttendanceResponse run() throws Exception;
+    }
+
+    /**
+     * An Idempotency-Key already used for a different request (HTTP 422)
+     */
+    public static class KeyReusedException extends RuntimeException {
+        public KeyReusedException(String message) {
+            super(message);
+        }
+    }
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${attendance.idempotency.enabled:true}")
+    private boolean enabled;
+
+    @Value("${attendance.idempotency.ttl-hours:24}")
+    private long ttlHours;
+
+    @Value("${attendance.idempotency.cache-size:10000}")
+    private int cacheSize;
+
+    private Map<String, IdempotencyRecord> recent;
+
+    private final Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    // The TTL index is created with the first stored record rather than at startup, so an
+    // unreachable database does not hold up the context
+    private volatile boolean ttlIndexed;
+
+    @PostConstruct
+    public void init() {
+        recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, IdempotencyRecord> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Run the punch, or return the response it already produced under this key for the same
+     * tenant and request. Without a key the punch simply runs. {@code request} is what the
+     * fingerprint is taken of: byte arrays, uploads, maps (by sorted entries) or plain values.
+     */
+    public AttendanceResponse execute(String endpoint, String tenantId, String key, Punch punch, Object... request) throws Exception {
+        if (!enabled || key == null || key.isBlank()) {
+            return punch.run();
+        }
+        String id = endpoint + ":" + (tenantId != null && !tenantId.isBlank() ? tenantId.trim() : "-") + ":" + key.trim();
+        String fingerprint = fingerprint(request);
+
+        AttendanceResponse stored = lookup(id, fingerprint);
+        if (stored != null) {
+            System.out.println("Idempotent replay of " + id);
+            return stored;
+        }
+
+        InFlight mine = new InFlight(fingerprint);
+        InFlight running = inFlight.putIfAbsent(id, mine);
+        if (running != null) {
+            checkSameRequest(id, running.fingerprint, fingerprint);
+            return await(running.result);
+        }
+        try {
+            // The first attempt may have finished between the lookup and claiming the key
+            AttendanceResponse response = lookup(id, fingerprint);
+            if (response == null) {
+                response = punch.run();
+                store(id, endpoint, tenantId, fingerprint, response);
+            }
+            mine.result.complete(response);
+            return response;
+        } catch (Exception e) {
+            mine.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(id, mine);
+        }
+    }
+
+    /**
+     * SHA-256 (hex) of the request parts; an upload is read from its stream
+     */
+    static String fingerprint(Object... parts) throws IOException {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        for (Object part : parts) {
+            if (part instanceof byte[] bytes) {
+                sha256.update(bytes);
+            } else if (part instanceof MultipartFile file) {
+                try (InputStream in = file.getInputStream()) {
+                    byte[] buffer = new byte[8192];
+                    for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                        sha256.update(buffer, 0, n);
+                    }
+                }
+            } else if (part instanceof Map<?, ?> map) {
+                sha256.update(new TreeMap<>(map).toString().getBytes(StandardCharsets.UTF_8));
+            } else {
+                sha256.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+            }
+            // Separator, so parts cannot run into each other
+            sha256.update((byte) 0);
+        }
+        return HexFormat.of().formatHex(sha256.digest());
+    }
+
+    private static void checkSameRequest(String id, String expected, String fingerprint) {
+        if (!fingerprint.equals(expected)) {
+            System.out.println("Idempotency key " + id + " reused for a different request, rejected");
+            throw new KeyReusedException("Idempotency-Key was already used for a different request");
+        }
+    }
+
+    private AttendanceResponse lookup(String id, String fingerprint) {
+        IdempotencyRecord record;
+        synchronized (recent) {
+            record = recent.get(id);
+        }
+        if (record == null) {
+            try {
+                record = mongoTemplate.findById(id, IdempotencyRecord.class);
+            } catch (Exception e) {
+                System.out.println("Idempotency lookup failed, running the punch: " + e.getMessage());
+                return null;
+            }
+            if (record == null) {
+                return null;
+            }
+            synchronized (recent) {
+                recent.put(id, record);
+            }
+        }
+        // The TTL monitor only runs about once a minute, so expiry is checked here as well
+        if (record.getCreatedAt().isBefore(LocalDateTime.now().minusHours(ttlHours))) {
+            synchronized (recent) {
+                recent.remove(id);
+            }
+            return null;
+        }
+        checkSameRequest(id, record.getFingerprint(), fingerprint);
+        return record.getResponse();
+    }
+
+    private void store(String id, String endpoint, String tenantId, String fingerprint, AttendanceResponse response) {
+        IdempotencyRecord record = new IdempotencyRecord(id, endpoint, tenantId, fingerprint, response, LocalDateTime.now());
+        synchronized (recent) {
+            recent.put(id, record);
+        }
+        try {
+            mongoTemplate.insert(record);
+            ensureTtlIndex();
+        } catch (DuplicateKeyException e) {
+            // Another instance stored this key first; keep its record
+        } catch (Exception e) {
+            System.out.println("Idempotency record not stored for " + id + ": " + e.getMessage());
+        }
+    }
+
+    private void ensureTtlIndex() {
+        if (ttlIndexed) {
+            return;
+        }
+        try {
+            mongoTemplate.indexOps(IdempotencyRecord.class).ensureIndex(new Index()
+                    .on("createdAt", Sort.Direction.ASC)
+                    .named("idempotency_ttl")
+                    .expire(Duration.ofHours(ttlHours)));
+            ttlIndexed = true;
+        } catch (Exception e) {
+            System.out.println("Idempotency TTL index not created, will retry: " + e.getMessage());
+        }
+    }
+
+    private static AttendanceResponse await(CompletableFuture<AttendanceResponse> running) throws Exception {
+        try {
+            return running.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * A punch being run under a key, and the request it was run for
+     */
+    private static final class InFlight {
+        private final String fingerprint;
+        private final CompletableFuture<AttendanceResponse> result = new CompletableFuture<>();
+
+        InFlight(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.faceattendance.service;
+
+import com.faceattendance.model.Attendance;
+import com.faceattendance.model.OutboxMessage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Delivers punches to the external MRR system off the request thread.
+ *
+ * A punch is queued in the mrr_outbox collection when its session is saved; the dispatcher claims
+ * due messages one at a time with a lease (so several instances can dispatch side by side), makes a
+ * single delivery attempt with the original punch time, and on failure schedules the next attempt
+ * with exponential backoff. After {@code mrr.outbox.max-attempts} a message is dead-lettered: it
+ * stays in the collection with its last error until retried by hand. Delivered messages expire
+ * after {@code mrr.outbox.delivered-ttl-days}.
+ *
+ * Queuing is a second write after the session is saved, so a session to be sent carries an
+ * mrrPending marker written in the same upsert. Each dispatch cycle first sweeps sessions still
+ * marked after {@code mrr.outbox.sweep-grace-seconds}, queues their check-in (a no-op if it was
+ * queued) and clears the marker, so a lost enqueue is recovered instead of only logged.
+ *
+ * Delivery makes blocking HTTP calls, so it runs on its own thread rather than Spring's shared
+ * scheduler (which also runs the day-cache rollover), and a cycle stops taking messages after
+ * {@code mrr.outbox.max-cycle-ms}.
+ */
+@Service
+public class PunchOutboxService {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ExternalApiService externalApiService;
+
+    @Value("${mrr.outbox.enabled:true}")
+    private boolean enabled;
+
+    @Value("${mrr.outbox.poll-ms:5000}")
+    private long pollMs;
+
+    @Value("${mrr.outbox.max-cycle-ms:60000}")
+    private long maxCycleMs;
+
+    @Value("${mrr.outbox.batch-size:20}")
+    private int batchSize;
+
+    @Value("${mrr.outbox.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${mrr.outbox.initial-backoff-seconds:10}")
+    private long initialBackoffSeconds;
+
+    @Value("${mrr.outbox.max-backoff-seconds:3600}")
+    private long maxBackoffSeconds;
+
+    @Value("${mrr.outbox.lease-seconds:120}")
+    private long leaseSeconds;
+
+    @Value("${mrr.outbox.delivered-ttl-days:7}")
+    private long deliveredTtlDays;
+
+    @Value("${mrr.outbox.sweep-grace-seconds:30}")
+    private long sweepGraceSeconds;
+
+    // MRR account the punches are sent as; required, there is no default
+    @Value("${mrr.tenant.login-id}")
+    private String tenantLoginId;
+
+    @Value("${mrr.tenant.password}")
+    private String tenantPassword;
+
+    private ScheduledExecutorService dispatcher;
+
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder failedAttempts = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    // Punches queued by the sweep because the enqueue after the check-in was lost
+    private final LongAdder recovered = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        try {
+            mongoTemplate.indexOps(OutboxMessage.class).ensureIndex(new Index()
+                    .on("status", Sort.Direction.ASC)
+                    .on("nextAttemptAt", Sort.Direction.ASC)
+                    .named("outbox_due"));
+            mongoTemplate.indexOps(OutboxMessage.class).ensureIndex(new Index()
+                    .on("deliveredAt", Sort.Direction.ASC)
+                    .named("outbox_delivered_ttl")
+                    .expire(Duration.ofDays(deliveredTtlDays)));
+            // Only marked sessions are in this index, so the sweep does not scan attendances
+            mongoTemplate.indexOps(Attendance.class).ensureIndex(new Index()
+                    .on("mrrPending", Sort.Direction.ASC)
+                    .on("createdAt", Sort.Direction.ASC)
+                    .named("attendance_mrr_pending")
+                    .sparse());
+        } catch (Exception e) {
+            System.out.println("Outbox indexes not created: " + e.getMessage());
+        }
+
+        if (enabled) {
+            dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "mrr-outbox-dispatcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            dispatcher.scheduleWithFixedDelay(() -> {
+                // An exception escaping here would cancel all later cycles
+                try {
+                    dispatch();
+                } catch (Exception e) {
+                    System.out.println("Outbox dispatch failed: " + e.getMessage());
+                }
+            }, pollMs, pollMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+            // A message whose attempt is cut short is retried when its lease ends
+            dispatcher.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Queue a punch of {@code session} for delivery; queuing the same punch again does nothing.
+     * True if it was not queued before.
+     */
+    public boolean enqueue(Attendance session, String externalEmployeeId, boolean checkOut, LocalDateTime punchTime) {
+        LocalDateTime now = LocalDateTime.now();
+        OutboxMessage message = new OutboxMessage();
+        message.setId(session.getId() + (checkOut ? ":OUT" : ":IN"));
+        message.setTenantId(session.getTenantId());
+        message.setAttendanceId(session.getId());
+        message.setEmployeeId(externalEmployeeId);
+        message.setCheckOut(checkOut);
+        message.setPunchTime(punchTime);
+        message.setStatus(OutboxMessage.Status.PENDING);
+        message.setNextAttemptAt(now);
+        message.setCreatedAt(now);
+        try {
+            mongoTemplate.insert(message);
+            return true;
+        } catch (DuplicateKeyException e) {
+            // Already queued
+            return false;
+        }
+    }
+
+    /**
+     * Deliver up to batch-size due messages, taking no new one after max-cycle-ms
+     */
+    public void dispatch() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            sweep();
+        } catch (Exception e) {
+            System.out.println("Outbox sweep failed: " + e.getMessage());
+        }
+        long deadline = System.currentTimeMillis() + maxCycleMs;
+        for (int i = 0; i < batchSize && System.currentTimeMillis() < deadline; i++) {
+            OutboxMessage message;
+            try {
+                message = claim();
+            } catch (Exception e) {
+                System.out.println("Outbox claim failed: " + e.getMessage());
+                return;
+            }
+            if (message == null) {
+                return;
+            }
+            deliver(message);
+        }
+    }
+
+    /**
+     * Queue the check-in of up to batch-size sessions whose mrrPending marker outlived the grace
+     * period, then clear the marker
+     */
+    private void sweep() {
+        Query marked = Query.query(Criteria.where("mrrPending").is(true)
+                        .and("createdAt").lte(LocalDateTime.now().minusSeconds(sweepGraceSeconds)))
+                .with(Sort.by(Sort.Direction.ASC, "createdAt"))
+                .limit(batchSize);
+        for (Attendance session : mongoTemplate.find(marked, Attendance.class)) {
+            String externalEmployeeId = session.getEmployee() != null ? session.getEmployee().getExternalId() : null;
+            if (externalEmployeeId != null) {
+                if (enqueue(session, externalEmployeeId, false, session.getCheckInTime())) {
+                    recovered.increment();
+                    System.out.println("Outbox sweep queued the check-in of session " + session.getId());
+                }
+            } else {
+                System.out.println("Outbox sweep: session " + session.getId() + " has no external employee, not queued");
+            }
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(session.getId())),
+                    new Update().unset("mrrPending"), Attendance.class);
+        }
+    }
+
+    /**
+     * Take the most overdue message and lease it: it is not due again until the lease ends, which
+     * only matters if this instance dies mid-attempt
+     */
+    private OutboxMessage claim() {
+        LocalDateTime now = LocalDateTime.now();
+        Query due = Query.query(Criteria.where("status").is(OutboxMessage.Status.PENDING).and("nextAttemptAt").lte(now))
+                .with(Sort.by(Sort.Direction.ASC, "nextAttemptAt"));
+        Update lease = new Update()
+                .set("nextAttemptAt", now.plusSeconds(leaseSeconds))
+                .inc("attempts", 1);
+        return mongoTemplate.findAndModify(due, lease, FindAndModifyOptions.options().returnNew(true), OutboxMessage.class);
+    }
+
+    private void deliver(OutboxMessage message) {
+        String error = null;
+        try {
+            if (!externalApiService.markAttendanceExternal(message.getEmployeeId(), message.isCheckOut(),
+                    message.getPunchTime(), tenantLoginId, tenantPassword)) {
+                error = "MRR did not accept the punch";
+            }
+        } catch (Exception e) {
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        }
+
+        // Only the holder of this attempt's lease may record its outcome
+        Query attempt = Query.query(Criteria.where("_id").is(message.getId()).and("attempts").is(message.getAttempts()));
+        LocalDateTime now = LocalDateTime.now();
+        if (error == null) {
+            mongoTemplate.updateFirst(attempt, new Update()
+                    .set("status", OutboxMessage.Status.DELIVERED)
+                    .set("deliveredAt", now)
+                    .unset("lastError"), OutboxMessage.class);
+            delivered.increment();
+            System.out.println("Outbox delivered " + message.getId() + " after " + message.getAttempts() + " attempt(s)");
+            return;
+        }
+
+        failedAttempts.increment();
+        if (message.getAttempts() >= maxAttempts) {
+            mongoTemplate.updateFirst(attempt, new Update()
+                    .set("status", OutboxMessage.Status.DEAD)
+                    .set("lastError", error), OutboxMessage.class);
+            deadLettered.increment();
+            System.out.println("Outbox dead-lettered " + message.getId() + " after " + message.getAttempts() + " attempts: " + error);
+        } else {
+            LocalDateTime next = now.plusSeconds(backoffSeconds(message.getAttempts()));
+            mongoTemplate.updateFirst(attempt, new Update()
+                    .set("nextAttemptAt", next)
+                    .set("lastError", error), OutboxMessage.class);
+            System.out.println("Outbox delivery of " + message.getId() + " failed (attempt " + message.getAttempts() +
+                    "), retrying at " + next + ": " + error);
+        }
+    }
+
+    /**
+     * Delay after the given number of failed attempts: initial, doubling, capped
+     */
+    private long backoffSeconds(int attempts) {
+        long backoff = initialBackoffSeconds << Math.min(attempts - 1, 20);
+        return Math.min(backoff, maxBackoffSeconds);
+    }
+
+    /**
+     * Dead-lettered messages, newest first, optionally for one tenant
+     */
+    public List<OutboxMessage> getDeadLetters(String tenantId) {
+        Criteria dead = Criteria.where("status").is(OutboxMessage.Status.DEAD);
+        if (tenantId != null) {
+            dead.and("tenantId").is(tenantId);
+        }
+        return mongoTemplate.find(Query.query(dead).with(Sort.by(Sort.Direction.DESC, "createdAt")).limit(500), OutboxMessage.class);
+    }
+
+    /**
+     * Put a dead-lettered message back in the queue with a fresh attempt budget
+     */
+    public OutboxMessage retry(String id) {
+        OutboxMessage message = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(id).and("status").is(OutboxMessage.Status.DEAD)),
+                new Update()
+                        .set("status", OutboxMessage.Status.PENDING)
+                        .set("attempts", 0)
+                        .set("nextAttemptAt", LocalDateTime.now()),
+                FindAndModifyOptions.options().returnNew(true), OutboxMessage.class);
+        if (message == null) {
+            throw new RuntimeException("No dead-lettered outbox message with ID: " + id);
+        }
+        return message;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("pending", mongoTemplate.count(
+                Query.query(Criteria.where("status").is(OutboxMessage.Status.PENDING)), OutboxMessage.class));
+        stats.put("dead", mongoTemplate.count(
+                Query.query(Criteria.where("status").is(OutboxMessage.Status.DEAD)), OutboxMessage.class));
+        OutboxMessage oldest = mongoTemplate.findOne(
+                Query.query(Criteria.where("status").is(OutboxMessage.Status.PENDING))
+                        .with(Sort.by(Sort.Direction.ASC, "createdAt")), OutboxMessage.class);
+        // How far delivery is behind: age of the oldest undelivered punch
+        stats.put("oldestPendingSeconds", oldest != null
+                ? Duration.between(oldest.getCreatedAt(), LocalDateTime.now()).getSeconds() : 0);
+        stats.put("delivered", delivered.sum());
+        stats.put("failedAttempts", failedAttempts.sum());
+        stats.put("deadLettered", deadLettered.sum());
+        stats.put("recovered", recovered.sum());
+        return stats;
+    }
+}
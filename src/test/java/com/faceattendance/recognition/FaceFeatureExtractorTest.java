@@ -0,0 +1,421 @@
+package com.faceattendance.recognition;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Templates must be bit-identical to the original per-feature extraction (a grayscale int array,
+ * then separate histogram, LBP, gradient and block-variance loops), so stored templates and
+ * their digests stay valid across the extraction rewrites.
+ */
+class FaceFeatureExtractorTest {
+
+    private final Random random = new Random(3);
+
+    @Test
+    void grayPlaneIsFixedPointLumaForEveryLayout() {
+        int[] types = {
+                BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR,
+                BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_USHORT_565_RGB
+        };
+        for (int type : types) {
+            BufferedImage image = randomColorImage(61, 47, type);
+            assertPlaneMatchesGetRgb(image, GrayImage.of(image));
+        }
+        // A child raster shares its parent's buffer, so it must not be read directly
+        BufferedImage parent = randomColorImage(80, 60, BufferedImage.TYPE_INT_RGB);
+        BufferedImage child = parent.getSubimage(7, 5, 40, 30);
+        assertPlaneMatchesGetRgb(child, GrayImage.of(child));
+    }
+
+    @Test
+    void matchesOriginalPerFeatureExtraction() {
+        int[][] sizes = {{256, 256}, {128, 128}, {97, 83}, {5, 9}};
+        for (int[] size : sizes) {
+            for (int i = 0; i < 5; i++) {
+                GrayImage image = randomFace(size[0], size[1]);
+                FaceTemplate expected = reference(image);
+
+                FaceTemplate actual = FaceFeatureExtractor.extract(image);
+
+                assertSameTemplate(expected, actual);
+                assertFalse(actual.isFaceCrop());
+            }
+        }
+    }
+
+    @Test
+    void flatImageHasEmptyEdgeAndTextureSections() {
+        byte[] pixels = new byte[64 * 64];
+        Arrays.fill(pixels, (byte) 200);
+        GrayImage image = new GrayImage(pixels, 64, 64);
+
+        FaceTemplate template = FaceFeatureExtractor.extract(image);
+
+        assertSameTemplate(reference(image), template);
+        assertArrayEquals(new float[FaceTemplate.EDGE_LENGTH], template.getEdge());
+        assertArrayEquals(new float[FaceTemplate.TEXT_LENGTH], template.getTexture());
+        assertEquals(64 * 64, template.getHistogram()[200]);
+    }
+
+    @Test
+    void scratchReuseLeavesNoTraceBetweenExtractions() {
+        GrayImage large = randomFace(256, 256);
+        GrayImage small = randomFace(40, 30);
+        GrayImage frame = randomFace(320, 240);
+        FaceTemplate first = FaceFeatureExtractor.extract(large);
+
+        // Smaller planes, then a region scaled through the face plane, reuse the same buffers
+        assertSameTemplate(reference(small), FaceFeatureExtractor.extract(small));
+        FaceFeatureExtractor.extract(frame, 50, 30, 180, 170, 128);
+        assertSameTemplate(first, FaceFeatureExtractor.extract(large));
+        assertSameTemplate(reference(large), first);
+    }
+
+    @Test
+    void concurrentExtractionsUseSeparateScratch() throws Exception {
+        GrayImage[] images = new GrayImage[8];
+        FaceTemplate[] expected = new FaceTemplate[images.length];
+        for (int i = 0; i < images.length; i++) {
+            images[i] = randomFace(128 + 16 * i, 128);
+            expected[i] = reference(images[i]);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<FaceTemplate>> results = new ArrayList<>();
+            for (int round = 0; round < 20; round++) {
+                for (GrayImage image : images) {
+                    results.add(pool.submit(() -> FaceFeatureExtractor.extract(image)));
+                }
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertSameTemplate(expected[i % images.length], results.get(i).get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void regionExtractionIsCropThenAreaAverage() {
+        GrayImage frame = randomFace(300, 220);
+        int x = 41, y = 17, width = 157, height = 171, size = 96;
+
+        FaceTemplate template = FaceFeatureExtractor.extract(frame, x, y, width, height, size);
+
+        GrayImage expected = naiveResize(crop(frame, x, y, width, height), size, size);
+        assertSameTemplate(reference(expected, true), template);
+        assertTrue(template.isFaceCrop());
+    }
+
+    @Test
+    void resizeMatchesNaiveAreaAverage() {
+        int[][] cases = {{37, 29, 16, 11}, {64, 64, 32, 32}, {10, 7, 23, 19}, {50, 1, 7, 1}, {13, 13, 13, 13}};
+        for (int[] c : cases) {
+            GrayImage image = randomFace(c[0], c[1]);
+            GrayImage expected = naiveResize(image, c[2], c[3]);
+
+            GrayImage resized = image.resize(c[2], c[3]);
+
+            assertArrayEquals(expected.getPixels(), resized.getPixels(),
+                    c[0] + "x" + c[1] + " to " + c[2] + "x" + c[3]);
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> FaceFeatureExtractor.extract(randomFace(50, 50), 10, 10, 45, 20, 32));
+    }
+
+    @Test
+    void textureFromSummedAreaTablesMatchesDirectBlockVariance() {
+        int[][] sizes = {{256, 256}, {250, 190}, {31, 17}, {5, 9}};
+        int[] grids = {2, 4, 8};
+        for (int[] size : sizes) {
+            GrayImage image = randomFace(size[0], size[1]);
+            int[] gray = grayPixels(image);
+            float[] expected = new float[4 + 16 + 64];
+            int offset = 0;
+            for (int grid : grids) {
+                float[] section = referenceTexture(gray, size[0], size[1], grid);
+                System.arraycopy(section, 0, expected, offset, section.length);
+                offset += section.length;
+            }
+
+            assertArrayEquals(expected, FaceFeatureExtractor.textureFeatures(image, grids), size[0] + "x" + size[1]);
+        }
+    }
+
+    @Test
+    void textureOfLargeHighContrastPlaneMatchesDirectBlockVariance() {
+        // Squared sums of a plane this size overflow an int table
+        int width = 1280;
+        int height = 960;
+        byte[] pixels = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                boolean dark = ((x / 3) + (y / 5)) % 2 == 0;
+                pixels[y * width + x] = (byte) (dark ? random.nextInt(8) : 255 - random.nextInt(40 * (1 + x / 320)));
+            }
+        }
+        GrayImage image = new GrayImage(pixels, width, height);
+
+        assertArrayEquals(referenceTexture(grayPixels(image), width, height, 4), FaceFeatureExtractor.textureFeatures(image, 4));
+        assertSameTemplate(reference(image), FaceFeatureExtractor.extract(image));
+    }
+
+    @Test
+    void edgeOrientationTableMatchesAtan2ForEveryGradient() {
+        // A 3x3 plane has one interior pixel, whose gradient is (right - left, bottom - top)
+        byte[] pixels = new byte[9];
+        for (int gx = -255; gx <= 255; gx++) {
+            for (int gy = -255; gy <= 255; gy++) {
+                pixels[3] = (byte) Math.max(0, -gx);
+                pixels[5] = (byte) Math.max(0, gx);
+                pixels[1] = (byte) Math.max(0, -gy);
+                pixels[7] = (byte) Math.max(0, gy);
+                float[] edge = FaceFeatureExtractor.extract(new GrayImage(pixels, 3, 3)).getEdge();
+
+                float[] expected = new float[FaceTemplate.EDGE_LENGTH];
+                if (gx != 0 || gy != 0) {
+                    expected[(int) ((Math.atan2(gy, gx) + Math.PI) / (2 * Math.PI / 8)) % 8] = 1.0f;
+                }
+                assertArrayEquals(expected, edge, "gradient " + gx + ", " + gy);
+            }
+        }
+    }
+
+    @Test
+    void edgeSectionMatchesDirectGradientsOnNoise() {
+        for (int i = 0; i < 10; i++) {
+            int width = 64 + i * 13;
+            int height = 48 + i * 7;
+            byte[] pixels = new byte[width * height];
+            random.nextBytes(pixels);
+            GrayImage image = new GrayImage(pixels, width, height);
+
+            assertArrayEquals(referenceEdges(grayPixels(image), width, height), FaceFeatureExtractor.extract(image).getEdge());
+        }
+    }
+
+    private static GrayImage crop(GrayImage image, int left, int top, int width, int height) {
+        byte[] pixels = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(image.getPixels(), (top + y) * image.getWidth() + left, pixels, y * width, width);
+        }
+        return new GrayImage(pixels, width, height);
+    }
+
+    /**
+     * Each output pixel is the mean of the source area it covers, computed pixel pair by pixel
+     * pair: on an axis scaled by the product of both sizes, source pixel i spans
+     * [i * target, (i + 1) * target) and output pixel o spans [o * source, (o + 1) * source)
+     */
+    private static GrayImage naiveResize(GrayImage image, int targetWidth, int targetHeight) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] out = new byte[targetWidth * targetHeight];
+        long area = (long) width * height;
+        for (int oy = 0; oy < targetHeight; oy++) {
+            for (int ox = 0; ox < targetWidth; ox++) {
+                long sum = 0;
+                for (int y = 0; y < height; y++) {
+                    long overlapY = overlap(y, targetHeight, oy, height);
+                    for (int x = 0; x < width && overlapY > 0; x++) {
+                        sum += image.get(x, y) * overlap(x, targetWidth, ox, width) * overlapY;
+                    }
+                }
+                out[oy * targetWidth + ox] = (byte) ((sum + area / 2) / area);
+            }
+        }
+        return new GrayImage(out, targetWidth, targetHeight);
+    }
+
+    private static long overlap(int sourcePixel, int target, int outputPixel, int source) {
+        long start = Math.max((long) sourcePixel * target, (long) outputPixel * source);
+        long end = Math.min((long) (sourcePixel + 1) * target, (long) (outputPixel + 1) * source);
+        return Math.max(0, end - start);
+    }
+
+    private void assertPlaneMatchesGetRgb(BufferedImage image, GrayImage plane) {
+        assertEquals(image.getWidth(), plane.getWidth());
+        assertEquals(image.getHeight(), plane.getHeight());
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int rgb = image.getRGB(x, y);
+                int expected = (19595 * ((rgb >> 16) & 0xFF) + 38470 * ((rgb >> 8) & 0xFF) + 7471 * (rgb & 0xFF)) >>> 16;
+                assertEquals(expected, plane.get(x, y), "type " + image.getType() + " at " + x + "," + y);
+            }
+        }
+    }
+
+    static void assertSameTemplate(FaceTemplate expected, FaceTemplate actual) {
+        assertArrayEquals(expected.getHistogram(), actual.getHistogram(), "HIST");
+        assertArrayEquals(expected.getLbp(), actual.getLbp(), "LBP");
+        assertArrayEquals(expected.getEdge(), actual.getEdge(), "EDGE");
+        assertArrayEquals(expected.getTexture(), actual.getTexture(), "TEXT");
+        assertArrayEquals(expected.getDigest(), actual.getDigest(), "digest");
+    }
+
+    private BufferedImage randomColorImage(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, 0xFF000000 | random.nextInt(0x1000000));
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Smooth shading with noise and a few hard edges, so every section has structure
+     */
+    GrayImage randomFace(int width, int height) {
+        byte[] pixels = new byte[width * height];
+        double fx = random.nextDouble() * 0.2;
+        double fy = random.nextDouble() * 0.2;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double shade = 128 + 60 * Math.sin(x * fx) * Math.cos(y * fy) + random.nextGaussian() * 12;
+                if ((x / 16 + y / 16) % 5 == 0) {
+                    shade = random.nextBoolean() ? 0 : 255;
+                }
+                pixels[y * width + x] = (byte) Math.max(0, Math.min(255, (int) shade));
+            }
+        }
+        return new GrayImage(pixels, width, height);
+    }
+
+    // The original extraction, kept verbatim apart from reading the plane
+
+    static FaceTemplate reference(GrayImage image) {
+        return reference(image, false);
+    }
+
+    static FaceTemplate reference(GrayImage image, boolean faceCrop) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] grayPixels = grayPixels(image);
+        return FaceTemplate.fromFeatures(
+                referenceHistogram(grayPixels),
+                referenceLbp(grayPixels, width, height),
+                referenceEdges(grayPixels, width, height),
+                referenceTexture(grayPixels, width, height, 4),
+                faceCrop);
+    }
+
+    private static int[] grayPixels(GrayImage image) {
+        int[] grayPixels = new int[image.getWidth() * image.getHeight()];
+        for (int i = 0; i < grayPixels.length; i++) {
+            grayPixels[i] = image.getPixels()[i] & 0xFF;
+        }
+        return grayPixels;
+    }
+
+    private static float[] referenceHistogram(int[] grayPixels) {
+        int[] histogram = new int[256];
+        for (int pixel : grayPixels) {
+            histogram[pixel]++;
+        }
+        float[] values = new float[256];
+        for (int i = 0; i < 256; i++) {
+            values[i] = histogram[i];
+        }
+        return values;
+    }
+
+    private static float[] referenceLbp(int[] grayPixels, int width, int height) {
+        int[] lbpHistogram = new int[256];
+        for (int y = 1; y < height - 1; y++) {
+            for (int x = 1; x < width - 1; x++) {
+                int center = grayPixels[y * width + x];
+                int lbpValue = 0;
+                if (grayPixels[(y - 1) * width + x - 1] >= center) lbpValue |= 1;
+                if (grayPixels[(y - 1) * width + x] >= center) lbpValue |= 2;
+                if (grayPixels[(y - 1) * width + x + 1] >= center) lbpValue |= 4;
+                if (grayPixels[y * width + x + 1] >= center) lbpValue |= 8;
+                if (grayPixels[(y + 1) * width + x + 1] >= center) lbpValue |= 16;
+                if (grayPixels[(y + 1) * width + x] >= center) lbpValue |= 32;
+                if (grayPixels[(y + 1) * width + x - 1] >= center) lbpValue |= 64;
+                if (grayPixels[y * width + x - 1] >= center) lbpValue |= 128;
+                lbpHistogram[lbpValue]++;
+            }
+        }
+        float[] normalizedLBP = new float[256];
+        int totalPixels = (width - 2) * (height - 2);
+        for (int i = 0; i < 256; i++) {
+            normalizedLBP[i] = (float) ((double) lbpHistogram[i] / totalPixels);
+        }
+        return normalizedLBP;
+    }
+
+    static float[] referenceEdges(int[] grayPixels, int width, int height) {
+        double[] edgeFeatures = new double[8];
+        for (int y = 1; y < height - 1; y++) {
+            for (int x = 1; x < width - 1; x++) {
+                int idx = y * width + x;
+                int gx = grayPixels[idx + 1] - grayPixels[idx - 1];
+                int gy = grayPixels[idx + width] - grayPixels[idx - width];
+                double magnitude = Math.sqrt(gx * gx + gy * gy);
+                double angle = Math.atan2(gy, gx);
+                int bin = (int) ((angle + Math.PI) / (2 * Math.PI / 8)) % 8;
+                edgeFeatures[bin] += magnitude;
+            }
+        }
+        double sum = 0;
+        for (double feature : edgeFeatures) {
+            sum += feature;
+        }
+        float[] normalized = new float[edgeFeatures.length];
+        for (int i = 0; i < edgeFeatures.length; i++) {
+            normalized[i] = (float) (sum > 0 ? edgeFeatures[i] / sum : edgeFeatures[i]);
+        }
+        return normalized;
+    }
+
+    static float[] referenceTexture(int[] grayPixels, int width, int height, int grid) {
+        double[] textureFeatures = new double[grid * grid];
+        int blockWidth = width / grid;
+        int blockHeight = height / grid;
+        for (int by = 0; by < grid; by++) {
+            for (int bx = 0; bx < grid; bx++) {
+                int startY = by * blockHeight;
+                int startX = bx * blockWidth;
+                int endY = Math.min(startY + blockHeight, height);
+                int endX = Math.min(startX + blockWidth, width);
+                double sum = 0;
+                double sumSquares = 0;
+                int count = 0;
+                for (int y = startY; y < endY; y++) {
+                    for (int x = startX; x < endX; x++) {
+                        int pixel = grayPixels[y * width + x];
+                        sum += pixel;
+                        sumSquares += pixel * pixel;
+                        count++;
+                    }
+                }
+                if (count > 0) {
+                    double mean = sum / count;
+                    double variance = (sumSquares / count) - (mean * mean);
+                    textureFeatures[by * grid + bx] = Math.sqrt(variance);
+                }
+            }
+        }
+        double maxVariance = 0;
+        for (double feature : textureFeatures) {
+            maxVariance = Math.max(maxVariance, feature);
+        }
+        float[] normalized = new float[textureFeatures.length];
+        for (int i = 0; i < textureFeatures.length; i++) {
+            normalized[i] = (float) (maxVariance > 0 ? textureFeatures[i] / maxVariance : textureFeatures[i]);
+        }
+        return normalized;
+    }
+}
@@ -0,0 +1,172 @@
+package com.faceattendance.recognition;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FaceTemplateCodecTest {
+
+    private final Random random = new Random(42);
+
+    @Test
+    void digestIsTruncatedSha256OfTheSections() throws Exception {
+        FaceTemplate template = randomTemplate(false);
+
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        for (float[] section : sections(template)) {
+            ByteBuffer bytes = ByteBuffer.allocate(section.length * Float.BYTES);
+            for (float value : section) {
+                bytes.putFloat(value);
+            }
+            sha256.update(bytes.array());
+        }
+        byte[] expected = Arrays.copyOf(sha256.digest(), FaceTemplate.DIGEST_LENGTH);
+
+        assertArrayEquals(expected, template.getDigest());
+    }
+
+    @Test
+    void float32RoundTripKeepsDigestModeAndScaledSections() {
+        for (boolean faceCrop : new boolean[] {false, true}) {
+            FaceTemplate template = randomTemplate(faceCrop);
+
+            FaceTemplate decoded = FaceTemplateCodec.decode(FaceTemplateCodec.encode(template, FaceTemplateCodec.ELEMENT_FLOAT32));
+
+            assertArrayEquals(template.getDigest(), decoded.getDigest());
+            assertEquals(faceCrop, decoded.isFaceCrop());
+            assertTrue(template.sameDigest(decoded));
+            float[][] original = sections(template);
+            float[][] restored = sections(decoded);
+            for (int s = 0; s < original.length; s++) {
+                assertArrayEquals(scaledByMax(original[s]), restored[s], "section " + s);
+            }
+        }
+    }
+
+    @Test
+    void float16RoundTripKeepsDigestModeAndSimilarity() {
+        FaceTemplate template = randomTemplate(true);
+
+        byte[] encoded = FaceTemplateCodec.encode(template);
+        FaceTemplate decoded = FaceTemplateCodec.decode(encoded);
+
+        assertTrue(FaceTemplateCodec.isBinaryTemplate(encoded));
+        assertArrayEquals(template.getDigest(), decoded.getDigest());
+        assertTrue(decoded.isFaceCrop());
+        float[][] original = sections(template);
+        float[][] restored = sections(decoded);
+        for (int s = 0; s < original.length; s++) {
+            assertEquals(original[s].length, restored[s].length);
+            assertEquals(1.0, cosine(original[s], restored[s]), 1e-5, "section " + s);
+        }
+    }
+
+    @Test
+    void emptyDigestAndSectionsRoundTrip() {
+        FaceTemplate template = new FaceTemplate(new byte[0], new float[0], new float[0], new float[0], new float[0]);
+
+        FaceTemplate decoded = FaceTemplateCodec.decode(FaceTemplateCodec.encode(template));
+
+        assertEquals(0, decoded.getDigest().length);
+        assertEquals(0, decoded.getHistogram().length);
+        assertFalse(decoded.isFaceCrop());
+        assertFalse(template.sameDigest(decoded));
+    }
+
+    @Test
+    void rejectsUnknownVersionAndNonTemplates() {
+        byte[] encoded = FaceTemplateCodec.encode(randomTemplate(false));
+        encoded[2] = 99;
+
+        assertThrows(IllegalArgumentException.class, () -> FaceTemplateCodec.decode(encoded));
+        assertThrows(IllegalArgumentException.class, () -> FaceTemplateCodec.decode(new byte[] {'x', 'y', 1}));
+    }
+
+    @Test
+    void halfConversionRoundTripsEveryHalfValue() {
+        for (int bits = 0; bits <= 0xFFFF; bits++) {
+            short half = (short) bits;
+            float value = FaceTemplateCodec.fromHalf(half);
+            if (Float.isNaN(value)) {
+                assertTrue(Float.isNaN(FaceTemplateCodec.fromHalf(FaceTemplateCodec.toHalf(value))));
+            } else {
+                assertEquals(half, FaceTemplateCodec.toHalf(value), "half 0x" + Integer.toHexString(bits));
+            }
+        }
+    }
+
+    @Test
+    void halfConversionRoundsToNearestEven() {
+        // 1 + 2^-11 lies halfway between 1 and the next half (1 + 2^-10): ties go to the even 1
+        assertEquals((short) 0x3C00, FaceTemplateCodec.toHalf(1.0f + 0x1p-11f));
+        // 1 + 3 * 2^-11 lies halfway between 1 + 2^-10 and 1 + 2^-9: ties go to the even 1 + 2^-9
+        assertEquals((short) 0x3C02, FaceTemplateCodec.toHalf(1.0f + 3 * 0x1p-11f));
+        assertEquals((short) 0x7C00, FaceTemplateCodec.toHalf(70000.0f));
+        assertEquals((short) 0x0001, FaceTemplateCodec.toHalf(0x1p-24f));
+    }
+
+    @Test
+    void readsLegacyEncodings() {
+        FaceTemplate legacy = FaceTemplateCodec.read(null, "abc123:HIST:1.0,2.5,3.0,LBP:0.5,0.25,EDGE:1,TEXT:2,4");
+
+        assertArrayEquals("abc123".getBytes(), legacy.getDigest());
+        assertArrayEquals(new float[] {1.0f, 2.5f, 3.0f}, legacy.getHistogram());
+        assertArrayEquals(new float[] {0.5f, 0.25f}, legacy.getLbp());
+        assertArrayEquals(new float[] {1.0f}, legacy.getEdge());
+        assertArrayEquals(new float[] {2.0f, 4.0f}, legacy.getTexture());
+        assertNull(FaceTemplateCodec.read(new byte[0], ""));
+    }
+
+    private FaceTemplate randomTemplate(boolean faceCrop) {
+        float[] histogram = new float[FaceTemplate.HIST_LENGTH];
+        float[] lbp = new float[FaceTemplate.LBP_LENGTH];
+        float[] edge = new float[FaceTemplate.EDGE_LENGTH];
+        float[] texture = new float[FaceTemplate.TEXT_LENGTH];
+        for (int i = 0; i < histogram.length; i++) {
+            // Raw pixel counts, well beyond the float16 range before scaling
+            histogram[i] = random.nextInt(5000);
+        }
+        for (int i = 0; i < lbp.length; i++) {
+            lbp[i] = random.nextFloat() / 64;
+        }
+        for (int i = 0; i < edge.length; i++) {
+            edge[i] = random.nextFloat() / 8;
+        }
+        for (int i = 0; i < texture.length; i++) {
+            texture[i] = random.nextFloat();
+        }
+        return FaceTemplate.fromFeatures(histogram, lbp, edge, texture, faceCrop);
+    }
+
+    private static float[][] sections(FaceTemplate template) {
+        return new float[][] {template.getHistogram(), template.getLbp(), template.getEdge(), template.getTexture()};
+    }
+
+    private static float[] scaledByMax(float[] section) {
+        float max = 0.0f;
+        for (float value : section) {
+            max = Math.max(max, Math.abs(value));
+        }
+        float inverse = max > 0 ? 1.0f / max : 0.0f;
+        float[] scaled = new float[section.length];
+        for (int i = 0; i < section.length; i++) {
+            scaled[i] = section[i] * inverse;
+        }
+        return scaled;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += (double) a[i] * b[i];
+            normA += (double) a[i] * a[i];
+            normB += (double) b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+}
@@ -0,0 +1,203 @@
+package com.faceattendance.recognition;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * The Vector API and scalar kernels must return bit-identical results, so a gallery scores the
+ * same whichever path a deployment runs.
+ */
+class SimilarityKernelTest {
+
+    private static final int ROWS = 64;
+
+    private final Random random = new Random(7);
+
+    @BeforeEach
+    void requireVectorModule() {
+        assumeTrue(SimilarityKernel.isVectorModulePresent(), "jdk.incubator.vector is not resolved");
+    }
+
+    @AfterEach
+    void restoreDefault() {
+        SimilarityKernel.configure(true);
+    }
+
+    @Test
+    void scoreIsBitIdenticalOnBothPaths() {
+        for (ByteBuffer slab : new ByteBuffer[] {heapSlab(), directSlab()}) {
+            for (int a = 0; a < ROWS; a++) {
+                for (int b = 0; b < ROWS; b++) {
+                    int aOffset = a * SimilarityKernel.ROW_LENGTH;
+                    int bOffset = b * SimilarityKernel.ROW_LENGTH;
+                    double scalar = SimilarityKernel.scalarScore(slab, aOffset, slab, bOffset);
+                    double vector = VectorSimilarityKernel.score(slab, aOffset, slab, bOffset);
+                    assertEquals(scalar, vector, "rows " + a + ", " + b);
+                }
+            }
+        }
+    }
+
+    @Test
+    void configureSwitchesPathsWithoutChangingScores() {
+        ByteBuffer slab = directSlab();
+        double[] scores = new double[ROWS];
+        SimilarityKernel.configure(false);
+        assertFalse(SimilarityKernel.isVectorEnabled());
+        for (int b = 0; b < ROWS; b++) {
+            scores[b] = SimilarityKernel.score(slab, 0, slab, b * SimilarityKernel.ROW_LENGTH);
+        }
+
+        SimilarityKernel.configure(true);
+        assertTrue(SimilarityKernel.isVectorEnabled());
+        for (int b = 0; b < ROWS; b++) {
+            assertEquals(scores[b], SimilarityKernel.score(slab, 0, slab, b * SimilarityKernel.ROW_LENGTH));
+        }
+    }
+
+    @Test
+    void dotIsBitIdenticalForEveryLengthAndOffset() {
+        ByteBuffer a = randomFloats(400);
+        ByteBuffer b = randomFloats(400);
+        for (int length = 0; length <= 300; length++) {
+            for (int offset = 0; offset < 9; offset++) {
+                float scalar = SimilarityKernel.scalarDot(a, offset, b, 2 * offset + 1, length);
+                float vector = VectorSimilarityKernel.dot(a, offset, b, 2 * offset + 1, length);
+                assertEquals(scalar, vector, "length " + length + ", offset " + offset);
+            }
+        }
+    }
+
+    @Test
+    void quantizedDotMatchesScalarIncludingExtremes() {
+        ByteBuffer a = ByteBuffer.allocateDirect(600).order(ByteOrder.nativeOrder());
+        ByteBuffer b = ByteBuffer.allocateDirect(600).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < 600; i++) {
+            a.put(i, (byte) (i < 300 ? random.nextInt(256) - 128 : -128));
+            b.put(i, (byte) (i < 300 ? random.nextInt(256) - 128 : (i % 2 == 0 ? -128 : 127)));
+        }
+        for (int length = 0; length <= 290; length++) {
+            for (int offset = 0; offset < 10; offset += 3) {
+                assertEquals(QuantizedKernel.scalarDot(a, offset, b, offset + 1, length),
+                        VectorSimilarityKernel.quantizedDot(a, offset, b, offset + 1, length),
+                        "length " + length + ", offset " + offset);
+            }
+        }
+        assertEquals(256 * 128 * 128, VectorSimilarityKernel.quantizedDot(a, 300, a, 300, 256));
+        assertEquals(QuantizedKernel.scalarDot(a, 300, b, 300, 256), VectorSimilarityKernel.quantizedDot(a, 300, b, 300, 256));
+    }
+
+    @Test
+    void quantizedScoreIsTheSameOnBothPaths() {
+        ByteBuffer codes = ByteBuffer.allocateDirect(ROWS * QuantizedKernel.ROW_BYTES).order(ByteOrder.nativeOrder());
+        for (int row = 0; row < ROWS; row++) {
+            QuantizedKernel.quantize(randomVector(), codes, row * QuantizedKernel.ROW_BYTES);
+        }
+        for (int b = 0; b < ROWS; b++) {
+            SimilarityKernel.configure(false);
+            double scalar = QuantizedKernel.score(codes, 0, codes, b * QuantizedKernel.ROW_BYTES);
+            SimilarityKernel.configure(true);
+            assertEquals(scalar, QuantizedKernel.score(codes, 0, codes, b * QuantizedKernel.ROW_BYTES));
+        }
+    }
+
+    @Test
+    void cascadeScoreIsBitIdenticalOnBothPaths() {
+        ByteBuffer slab = directSlab();
+        for (int b = 0; b < ROWS; b++) {
+            int bOffset = b * SimilarityKernel.ROW_LENGTH;
+            for (double floor = 0; floor <= 100; floor += 0.5) {
+                SimilarityKernel.configure(false);
+                double scalar = SimilarityKernel.cascadeScore(slab, 0, slab, bOffset, floor);
+                SimilarityKernel.configure(true);
+                assertEquals(scalar, SimilarityKernel.cascadeScore(slab, 0, slab, bOffset, floor), "row " + b + ", floor " + floor);
+            }
+        }
+    }
+
+    @Test
+    void cascadeScoreIsTheScoreOrPrunedOnlyBelowTheFloor() {
+        for (boolean vector : new boolean[] {false, true}) {
+            SimilarityKernel.configure(vector);
+            ByteBuffer slab = directSlab();
+            int pruned = 0;
+            for (int a = 0; a < ROWS; a++) {
+                for (int b = 0; b < ROWS; b++) {
+                    int aOffset = a * SimilarityKernel.ROW_LENGTH;
+                    int bOffset = b * SimilarityKernel.ROW_LENGTH;
+                    double score = SimilarityKernel.score(slab, aOffset, slab, bOffset);
+                    double floor = random.nextDouble() * 100;
+                    double cascade = SimilarityKernel.cascadeScore(slab, aOffset, slab, bOffset, floor);
+                    if (cascade == SimilarityKernel.PRUNED) {
+                        pruned++;
+                        // Pruning needs a bound no higher than the floor; the bound carries BOUND_SLACK
+                        assertTrue(score <= floor, "pruned a score of " + score + " above the floor " + floor);
+                    } else {
+                        assertEquals(score, cascade);
+                    }
+                }
+            }
+            assertTrue(pruned > 0, "nothing was pruned");
+        }
+    }
+
+    @Test
+    void identicalRowsScoreOneHundred() {
+        ByteBuffer row = SimilarityKernel.row(randomVector());
+
+        assertEquals(100.0, SimilarityKernel.score(row, 0, row, 0), 1e-3);
+    }
+
+    private ByteBuffer heapSlab() {
+        ByteBuffer slab = ByteBuffer.allocate(ROWS * SimilarityKernel.ROW_BYTES).order(ByteOrder.nativeOrder());
+        fill(slab);
+        return slab;
+    }
+
+    private ByteBuffer directSlab() {
+        ByteBuffer slab = ByteBuffer.allocateDirect(ROWS * SimilarityKernel.ROW_BYTES).order(ByteOrder.nativeOrder());
+        fill(slab);
+        return slab;
+    }
+
+    private void fill(ByteBuffer slab) {
+        float[] base = randomVector();
+        for (int row = 0; row < ROWS; row++) {
+            // Half the rows are near one face, so scores span the whole range
+            float[] vector = row % 2 == 0 ? perturb(base) : randomVector();
+            SimilarityKernel.writeRow(vector, slab, row * SimilarityKernel.ROW_LENGTH);
+        }
+    }
+
+    private ByteBuffer randomFloats(int count) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(count * Float.BYTES).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < count; i++) {
+            buffer.putFloat(i * Float.BYTES, (float) random.nextGaussian());
+        }
+        return buffer;
+    }
+
+    private float[] randomVector() {
+        float[] raw = new float[SimilarityKernel.VECTOR_LENGTH];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = random.nextFloat();
+        }
+        return SimilarityKernel.normalizeLayout(raw);
+    }
+
+    private float[] perturb(float[] vector) {
+        float[] raw = vector.clone();
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = Math.max(0, raw[i] + (float) random.nextGaussian() * 0.01f);
+        }
+        return SimilarityKernel.normalizeLayout(raw);
+    }
+}
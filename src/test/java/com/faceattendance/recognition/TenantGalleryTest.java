@@ -0,0 +1,250 @@
+package com.faceattendance.recognition;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Whatever shortcut a gallery search takes, the employee it returns and the similarities it
+ * reports must be those of an exact scan over every enrolled face.
+ */
+class TenantGalleryTest {
+
+    private static final int PEOPLE = 40;
+
+    private final Random random = new Random(11);
+    private final float[][] people = new float[PEOPLE][];
+    // Enrolled templates in slot order (a replaced employee moves to the end)
+    private final Map<String, FaceTemplate> enrolled = new LinkedHashMap<>();
+
+    TenantGalleryTest() {
+        for (int p = 0; p < PEOPLE; p++) {
+            people[p] = randomRaw();
+        }
+    }
+
+    @Test
+    void cascadeScanMatchesExactScanAndPrunes() {
+        TenantGallery gallery = enroll(new GallerySettings(), 2000);
+
+        int pruned = 0;
+        for (int i = 0; i < 100; i++) {
+            float[] probe = probe();
+            BestMatch match = gallery.findBest(probe, null);
+            assertSameMatch(exactMatch(probe), match);
+            assertEquals(2000, match.getCandidates());
+            pruned += match.getPruned();
+        }
+        assertTrue(pruned > 0, "the cascade pruned nothing");
+    }
+
+    @Test
+    void parallelCascadeScanMatchesExactScan() {
+        GallerySettings settings = new GallerySettings();
+        settings.setParallelThreshold(100);
+        settings.setParallelChunkSize(64);
+        TenantGallery gallery = enroll(settings, 1500);
+
+        for (int i = 0; i < 50; i++) {
+            float[] probe = probe();
+            assertSameMatch(exactMatch(probe), gallery.findBest(probe, null));
+        }
+    }
+
+    @Test
+    void cascadeScanMatchesExactScanAfterRemovesAndReplaces() {
+        TenantGallery gallery = enroll(new GallerySettings(), 600);
+        for (int i = 0; i < 600; i += 3) {
+            String employeeId = "employee-" + i;
+            assertTrue(gallery.remove(employeeId));
+            enrolled.remove(employeeId);
+        }
+        for (int i = 1; i < 600; i += 7) {
+            String employeeId = "employee-" + i;
+            if (enrolled.remove(employeeId) != null) {
+                FaceTemplate replacement = template(noisy(people[random.nextInt(PEOPLE)]));
+                enrolled.put(employeeId, replacement);
+                gallery.put(employeeId, replacement);
+            }
+        }
+        assertEquals(enrolled.size(), gallery.size());
+
+        for (int i = 0; i < 50; i++) {
+            float[] probe = probe();
+            assertSameMatch(exactMatch(probe), gallery.findBest(probe, null));
+        }
+    }
+
+    @Test
+    void indexedSearchWithFullRerankMatchesExactScan() {
+        GallerySettings settings = new GallerySettings();
+        settings.setHnswEnabled(true);
+        settings.setHnswMinSize(100);
+        settings.setHnswRerank(600);
+        settings.setHnswEfSearch(600);
+        settings.setHnswRecallSampleRate(0);
+        TenantGallery gallery = enroll(settings, 500);
+        assertTrue(gallery.isIndexed());
+
+        for (int i = 0; i < 50; i++) {
+            float[] probe = probe();
+            assertSameMatch(exactMatch(probe), gallery.findBest(probe, null));
+        }
+    }
+
+    @Test
+    void indexedSearchReportsExactSimilarities() {
+        GallerySettings settings = new GallerySettings();
+        settings.setHnswEnabled(true);
+        settings.setHnswMinSize(100);
+        settings.setHnswRecallSampleRate(0);
+        TenantGallery gallery = enroll(settings, 1000);
+        assertTrue(gallery.isIndexed());
+
+        for (int i = 0; i < 50; i++) {
+            float[] probe = probe();
+            BestMatch match = gallery.findBest(probe, null);
+            assertEquals(exactScore(probe, enrolled.get(match.getEmployeeId())), match.getBestSimilarity());
+            assertTrue(match.getBestSimilarity() <= exactMatch(probe).getBestSimilarity());
+        }
+    }
+
+    @Test
+    void indexedTopKWithFullRerankMatchesExactRanking() {
+        GallerySettings settings = new GallerySettings();
+        settings.setHnswEnabled(true);
+        settings.setHnswMinSize(100);
+        settings.setHnswRerank(400);
+        settings.setHnswEfSearch(400);
+        TenantGallery gallery = enroll(settings, 300);
+
+        float[] probe = probe();
+        RankedCandidates indexed = gallery.findTop(probe, null, 5);
+        RankedCandidates exact = enroll(new GallerySettings(), 0).findTop(probe, null, 5);
+
+        assertEquals(5, indexed.size());
+        for (int rank = 0; rank < 5; rank++) {
+            assertEquals(exact.getEmployeeId(rank), indexed.getEmployeeId(rank));
+            assertEquals(exact.getSimilarity(rank), indexed.getSimilarity(rank));
+        }
+    }
+
+    @Test
+    void quantizedScanWithFullRerankMatchesExactScan() {
+        GallerySettings settings = new GallerySettings();
+        settings.setQuantized(true);
+        settings.setQuantizedRerank(1000);
+        TenantGallery gallery = enroll(settings, 800);
+
+        for (int i = 0; i < 50; i++) {
+            float[] probe = probe();
+            BestMatch match = gallery.findBest(probe, null);
+            assertSameMatch(exactMatch(probe), match);
+            assertEquals(800, match.getCandidates());
+        }
+    }
+
+    @Test
+    void quantizedScanReportsExactSimilarities() {
+        GallerySettings settings = new GallerySettings();
+        settings.setQuantized(true);
+        TenantGallery gallery = enroll(settings, 1000);
+
+        for (int i = 0; i < 50; i++) {
+            float[] probe = probe();
+            BestMatch match = gallery.findBest(probe, null);
+            assertEquals(exactScore(probe, enrolled.get(match.getEmployeeId())), match.getBestSimilarity());
+            assertEquals(1000 - settings.getQuantizedRerank(), match.getPruned());
+        }
+    }
+
+    @Test
+    void identicalDigestShortcutsToOneHundred() {
+        TenantGallery gallery = enroll(new GallerySettings(), 50);
+        FaceTemplate face = enrolled.get("employee-17");
+
+        BestMatch match = gallery.findBest(SimilarityKernel.normalize(face), face.getDigest());
+
+        assertEquals("employee-17", match.getEmployeeId());
+        assertEquals(100.0, match.getBestSimilarity());
+    }
+
+    /**
+     * Enrol {@code count} new faces, then build a gallery holding everything enrolled so far
+     */
+    private TenantGallery enroll(GallerySettings settings, int count) {
+        int first = enrolled.size();
+        for (int i = first; i < first + count; i++) {
+            enrolled.put("employee-" + i, template(noisy(people[i % PEOPLE])));
+        }
+        TenantGallery gallery = new TenantGallery("tenant", settings);
+        for (Map.Entry<String, FaceTemplate> entry : enrolled.entrySet()) {
+            gallery.put(entry.getKey(), entry.getValue());
+        }
+        return gallery;
+    }
+
+    /**
+     * The sequential rule every search must reproduce: exact scores offered in slot order
+     */
+    private BestMatch exactMatch(float[] probe) {
+        BestMatch match = new BestMatch();
+        for (Map.Entry<String, FaceTemplate> entry : enrolled.entrySet()) {
+            match.offer(entry.getKey(), exactScore(probe, entry.getValue()));
+        }
+        return match;
+    }
+
+    private static double exactScore(float[] probe, FaceTemplate face) {
+        return SimilarityKernel.score(SimilarityKernel.row(probe), 0, SimilarityKernel.row(SimilarityKernel.normalize(face)), 0);
+    }
+
+    private static void assertSameMatch(BestMatch expected, BestMatch actual) {
+        assertEquals(expected.getEmployeeId(), actual.getEmployeeId());
+        assertEquals(expected.getBestSimilarity(), actual.getBestSimilarity());
+        assertEquals(expected.getSecondBestSimilarity(), actual.getSecondBestSimilarity());
+    }
+
+    private float[] probe() {
+        return SimilarityKernel.normalizeLayout(noisy(people[random.nextInt(PEOPLE)]));
+    }
+
+    /**
+     * Raw section values as small integer counts, which float16 holds exactly
+     */
+    private float[] randomRaw() {
+        float[] raw = new float[SimilarityKernel.VECTOR_LENGTH];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = random.nextInt(200);
+        }
+        return raw;
+    }
+
+    private float[] noisy(float[] person) {
+        float[] raw = new float[person.length];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = Math.max(0, person[i] + random.nextInt(81) - 40);
+        }
+        return raw;
+    }
+
+    private FaceTemplate template(float[] raw) {
+        byte[] digest = new byte[FaceTemplate.DIGEST_LENGTH];
+        random.nextBytes(digest);
+        return new FaceTemplate(digest,
+                section(raw, SimilarityKernel.HIST_OFFSET, FaceTemplate.HIST_LENGTH),
+                section(raw, SimilarityKernel.LBP_OFFSET, FaceTemplate.LBP_LENGTH),
+                section(raw, SimilarityKernel.EDGE_OFFSET, FaceTemplate.EDGE_LENGTH),
+                section(raw, SimilarityKernel.TEXT_OFFSET, FaceTemplate.TEXT_LENGTH));
+    }
+
+    private static float[] section(float[] raw, int offset, int length) {
+        float[] section = new float[length];
+        System.arraycopy(raw, offset, section, 0, length);
+        return section;
+    }
+}
@@ -0,0 +1,233 @@
+package com.faceattendance.service;
+
+import com.faceattendance.model.Attendance;
+import com.faceattendance.model.Employee;
+import com.faceattendance.repository.AttendanceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * The day cache answers from one load per tenant and day, follows every punch, and says "unknown"
+ * whenever it cannot be sure: another day, or past a bound.
+ */
+@ExtendWith(MockitoExtension.class)
+class AttendanceDayCacheTest {
+
+    private static final LocalDate DAY = LocalDate.of(2026, 3, 14);
+
+    @Mock
+    private AttendanceRepository attendanceRepository;
+
+    @Mock
+    private AttendanceJournal attendanceJournal;
+
+    @InjectMocks
+    private AttendanceDayCache cache;
+
+    private final MutableClock clock = new MutableClock(DAY.atTime(9, 0));
+
+    @BeforeEach
+    void configure() {
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxTenants", 1000);
+        ReflectionTestUtils.setField(cache, "maxEmployees", 100000);
+        ReflectionTestUtils.setField(cache, "clock", clock);
+    }
+
+    @Test
+    void warmUpLoadsTheTenantDayOnce() {
+        when(attendanceRepository.findTodayAttendanceByTenantId("tenant-a", DAY))
+                .thenReturn(List.of(session("open", false), session("closed", true),
+                        session("reentered", true), session("reentered", false)));
+
+        assertEquals(AttendanceDayCache.SessionState.OPEN, cache.get("tenant-a", "open", DAY));
+        assertEquals(AttendanceDayCache.SessionState.CLOSED, cache.get("tenant-a", "closed", DAY));
+        // An open session wins over the employee's earlier closed ones
+        assertEquals(AttendanceDayCache.SessionState.OPEN, cache.get("tenant-a", "reentered", DAY));
+        assertEquals(AttendanceDayCache.SessionState.NONE, cache.get("tenant-a", "absent", DAY));
+
+        verify(attendanceRepository, times(1)).findTodayAttendanceByTenantId("tenant-a", DAY);
+    }
+
+    @Test
+    void unflushedJournalSessionsOverrideTheDatabase() {
+        when(attendanceRepository.findTodayAttendanceByTenantId("tenant-a", DAY))
+                .thenReturn(List.of(session("checked-out", false), session("replayed", true)));
+        // A check-out and a check-in still in the journal, e.g. replayed after a restart
+        when(attendanceJournal.getUnflushedSessions("tenant-a", DAY)).thenReturn(Map.of("checked-out", false, "replayed", true));
+
+        assertEquals(AttendanceDayCache.SessionState.CLOSED, cache.get("tenant-a", "checked-out", DAY));
+        assertEquals(AttendanceDayCache.SessionState.OPEN, cache.get("tenant-a", "replayed", DAY));
+    }
+
+    @Test
+    void punchesKeepTheDayCurrent() {
+        when(attendanceRepository.findTodayAttendanceByTenantId("tenant-a", DAY)).thenReturn(List.of());
+
+        cache.checkedIn("tenant-a", "employee", DAY);
+        assertEquals(AttendanceDayCache.SessionState.OPEN, cache.get("tenant-a", "employee", DAY));
+        cache.checkedOut("tenant-a", "employee", DAY);
+        assertEquals(AttendanceDayCache.SessionState.CLOSED, cache.get("tenant-a", "employee", DAY));
+
+        Attendance blocking = session("employee", false);
+        blocking.setOpen(true);
+        cache.observed(blocking);
+        assertEquals(AttendanceDayCache.SessionState.OPEN, cache.get("tenant-a", "employee", DAY));
+        verify(attendanceRepository, times(1)).findTodayAttendanceByTenantId(anyString(), any());
+    }
+
+    @Test
+    void otherDaysAndDisabledCacheAreUnknown() {
+        assertNull(cache.get("tenant-a", "employee", DAY.minusDays(1)));
+        assertNull(cache.get(null, "employee", DAY));
+
+        ReflectionTestUtils.setField(cache, "enabled", false);
+        assertNull(cache.get("tenant-a", "employee", DAY));
+        cache.checkedIn("tenant-a", "employee", DAY);
+
+        verifyNoInteractions(attendanceRepository);
+    }
+
+    @Test
+    void midnightStartsTheNewDayFromTheDatabase() {
+        LocalDate next = DAY.plusDays(1);
+        when(attendanceRepository.findTodayAttendanceByTenantId("tenant-a", DAY)).thenReturn(List.of(session("employee", false)));
+        when(attendanceRepository.findTodayAttendanceByTenantId("tenant-b", DAY)).thenReturn(List.of());
+        when(attendanceRepository.findTodayAttendanceByTenantId("tenant-a", next)).thenReturn(List.of());
+        when(attendanceRepository.findTodayAttendanceByTenantId("tenant-b", next)).thenReturn(List.of());
+        clock.set(DAY.atTime(23, 59));
+        assertEquals(AttendanceDayCache.SessionState.OPEN, cache.get("tenant-a", "employee", DAY));
+        assertEquals(AttendanceDayCache.SessionState.NONE, cache.get("tenant-b", "employee", DAY));
+
+        clock.set(next.atStartOfDay());
+        // Yesterday's session says nothing about today, even before the rollover runs
+        assertNull(cache.get("tenant-a", "employee", DAY));
+        assertEquals(AttendanceDayCache.SessionState.NONE, cache.get("tenant-a", "employee", next));
+
+        cache.rollover();
+
+        // Every tenant seen was loaded afresh for today, so the next punch does not wait for a load
+        verify(attendanceRepository, times(2)).findTodayAttendanceByTenantId("tenant-a", next);
+        verify(attendanceRepository, times(1)).findTodayAttendanceByTenantId("tenant-b", next);
+        assertEquals(AttendanceDayCache.SessionState.NONE, cache.get("tenant-b", "employee", next));
+        verify(attendanceRepository, times(1)).findTodayAttendanceByTenantId("tenant-b", next);
+    }
+
+    @Test
+    void rolloverSurvivesATenantThatFailsToLoad() {
+        when(attendanceRepository.findTodayAttendanceByTenantId("tenant-a", DAY))
+                .thenReturn(List.of())
+                .thenThrow(new RuntimeException("database down"))
+                .thenReturn(List.of(session("employee", false)));
+        cache.get("tenant-a", "employee", DAY);
+
+        cache.rollover();
+
+        // Loaded on its next punch instead
+        assertEquals(AttendanceDayCache.SessionState.OPEN, cache.get("tenant-a", "employee", DAY));
+        verify(attendanceRepository, times(3)).findTodayAttendanceByTenantId("tenant-a", DAY);
+    }
+
+    @Test
+    void tenantsPastTheBoundAreUnknownAndNotLoaded() {
+        ReflectionTestUtils.setField(cache, "maxTenants", 1);
+        when(attendanceRepository.findTodayAttendanceByTenantId("tenant-a", DAY)).thenReturn(List.of());
+
+        assertEquals(AttendanceDayCache.SessionState.NONE, cache.get("tenant-a", "employee", DAY));
+        assertNull(cache.get("tenant-b", "employee", DAY));
+        cache.checkedIn("tenant-b", "employee", DAY);
+        assertNull(cache.get("tenant-b", "employee", DAY));
+
+        verify(attendanceRepository, never()).findTodayAttendanceByTenantId(eq("tenant-b"), any());
+    }
+
+    @Test
+    void employeesPastTheBoundOnLoadAreUnknown() {
+        ReflectionTestUtils.setField(cache, "maxEmployees", 2);
+        when(attendanceRepository.findTodayAttendanceByTenantId("tenant-a", DAY))
+                .thenReturn(List.of(session("first", true), session("second", true), session("third", true)));
+
+        assertEquals(AttendanceDayCache.SessionState.CLOSED, cache.get("tenant-a", "first", DAY));
+        assertEquals(AttendanceDayCache.SessionState.CLOSED, cache.get("tenant-a", "second", DAY));
+        // Not held, so "no session" cannot be claimed for anyone else
+        assertNull(cache.get("tenant-a", "third", DAY));
+        assertNull(cache.get("tenant-a", "absent", DAY));
+    }
+
+    @Test
+    void employeesPastTheBoundOnPunchMakeTheDayIncomplete() {
+        ReflectionTestUtils.setField(cache, "maxEmployees", 2);
+        when(attendanceRepository.findTodayAttendanceByTenantId("tenant-a", DAY)).thenReturn(List.of(session("first", false)));
+
+        cache.checkedIn("tenant-a", "second", DAY);
+        assertEquals(AttendanceDayCache.SessionState.NONE, cache.get("tenant-a", "absent", DAY));
+        cache.checkedIn("tenant-a", "third", DAY);
+
+        assertNull(cache.get("tenant-a", "third", DAY));
+        assertNull(cache.get("tenant-a", "absent", DAY));
+        // Employees already held are still tracked
+        cache.checkedOut("tenant-a", "first", DAY);
+        assertEquals(AttendanceDayCache.SessionState.CLOSED, cache.get("tenant-a", "first", DAY));
+    }
+
+    private static Attendance session(String employeeId, boolean checkedOut) {
+        Employee employee = new Employee();
+        employee.setId(employeeId);
+        Attendance attendance = new Attendance();
+        attendance.setTenantId("tenant-a");
+        attendance.setEmployee(employee);
+        attendance.setAttendanceDate(DAY);
+        attendance.setCheckInTime(DAY.atTime(8, 0));
+        if (checkedOut) {
+            attendance.setCheckOutTime(DAY.atTime(17, 0));
+        }
+        return attendance;
+    }
+
+    /**
+     * A clock the test moves across midnight
+     */
+    private static final class MutableClock extends Clock {
+        private Instant instant;
+
+        MutableClock(LocalDateTime time) {
+            set(time);
+        }
+
+        void set(LocalDateTime time) {
+            instant = time.toInstant(ZoneOffset.UTC);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.faceattendance.service;
+
+import com.faceattendance.model.Attendance;
+import com.faceattendance.model.DroppedPunch;
+import com.faceattendance.model.Employee;
+import com.faceattendance.repository.AttendanceRepositoryCustom;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Journaled punches survive a crash: the restarted journal replays them, still knows their
+ * sessions, and writes them together with the punches that follow.
+ */
+@ExtendWith(MockitoExtension.class)
+class AttendanceJournalTest {
+
+    private static final LocalDate DAY = LocalDate.of(2026, 3, 14);
+
+    @TempDir
+    Path journalDir;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations bulk;
+
+    private final List<AttendanceJournal> started = new ArrayList<>();
+
+    @AfterEach
+    void stop() throws Exception {
+        for (AttendanceJournal journal : started) {
+            crash(journal);
+        }
+    }
+
+    @Test
+    void checkOutAfterRestartClosesTheReplayedSessionAndBothAreFlushed() throws Exception {
+        AttendanceJournal before = start();
+        Attendance session = newSession();
+        assertTrue(before.checkIn(session, false).isCreated());
+        crash(before);
+
+        AttendanceJournal after = start();
+        assertTrue(after.isUnflushed(session));
+        assertEquals(Map.of("employee-1", true), after.getUnflushedSessions("tenant-a", DAY));
+        // The replayed open session blocks a second check-in, without asking the database
+        AttendanceRepositoryCustom.CheckIn again = after.checkIn(newSession(), false);
+        assertFalse(again.isCreated());
+        assertEquals(session.getId(), again.getAttendance().getId());
+
+        LocalDateTime checkOutTime = DAY.atTime(17, 0);
+        Attendance closed = after.checkOut("tenant-a", "employee-1", DAY, checkOutTime, "out.jpg");
+        assertNotNull(closed);
+        assertEquals(session.getId(), closed.getId());
+        assertEquals(DAY.atTime(8, 0), closed.getCheckInTime());
+        assertFalse(closed.getOpen());
+        assertEquals(Map.of("employee-1", false), after.getUnflushedSessions("tenant-a", DAY));
+
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, Attendance.class)).thenReturn(bulk);
+        after.shutdown();
+
+        ArgumentCaptor<Query> checkIn = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Query> checkOut = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> close = ArgumentCaptor.forClass(Update.class);
+        InOrder order = inOrder(bulk);
+        order.verify(bulk).upsert(checkIn.capture(), any(Update.class));
+        order.verify(bulk).updateOne(checkOut.capture(), close.capture());
+        order.verify(bulk).execute();
+        assertEquals(new ObjectId(session.getId()), checkIn.getValue().getQueryObject().get("_id"));
+        assertEquals(new ObjectId(session.getId()), checkOut.getValue().getQueryObject().get("_id"));
+        assertEquals(checkOutTime, close.getValue().getUpdateObject().get("$set", Map.class).get("checkOutTime"));
+        verify(mongoTemplate, never()).save(any(DroppedPunch.class));
+        verify(mongoTemplate, never()).exists(any(Query.class), any(Class.class));
+
+        // Flushed: the sessions are gone and so are the segments
+        assertFalse(after.isUnflushed(session));
+        try (Stream<Path> files = Files.list(journalDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void checkOutReplayedWithItsCheckInLeavesNoOpenSession() throws Exception {
+        AttendanceJournal before = start();
+        Attendance session = newSession();
+        before.checkIn(session, false);
+        before.checkOut("tenant-a", "employee-1", DAY, DAY.atTime(12, 0), null);
+        crash(before);
+
+        AttendanceJournal after = start();
+
+        assertNull(after.checkOut("tenant-a", "employee-1", DAY, DAY.atTime(17, 0), null));
+        // Closed, so a later check-in opens a new session, but once a day it is still refused
+        assertFalse(after.checkIn(newSession(), true).isCreated());
+        assertTrue(after.checkIn(newSession(), false).isCreated());
+    }
+
+    private AttendanceJournal start() throws IOException {
+        AttendanceJournal journal = new AttendanceJournal();
+        ReflectionTestUtils.setField(journal, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(journal, "objectMapper", new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "journalDir", journalDir.toString());
+        // Only shutdown flushes
+        ReflectionTestUtils.setField(journal, "flushIntervalMs", 600_000L);
+        ReflectionTestUtils.setField(journal, "batchSize", 500);
+        journal.init();
+        started.add(journal);
+        return journal;
+    }
+
+    /**
+     * Stop the flusher without flushing and release the segment, like a killed process
+     */
+    private static void crash(AttendanceJournal journal) throws Exception {
+        if (!(Boolean) ReflectionTestUtils.getField(journal, "running")) {
+            return;
+        }
+        ReflectionTestUtils.setField(journal, "running", false);
+        Thread flusher = (Thread) ReflectionTestUtils.getField(journal, "flusher");
+        flusher.interrupt();
+        flusher.join(5_000);
+        FileChannel segment = (FileChannel) ReflectionTestUtils.getField(journal, "segment");
+        if (segment != null) {
+            segment.close();
+        }
+    }
+
+    private static Attendance newSession() {
+        Employee employee = new Employee();
+        employee.setId("employee-1");
+        employee.setTenantId("tenant-a");
+        Attendance attendance = new Attendance();
+        attendance.setTenantId("tenant-a");
+        attendance.setEmployee(employee);
+        attendance.setAttendanceDate(DAY);
+        attendance.setCheckInTime(DAY.atTime(8, 0));
+        attendance.setCheckInImagePath("in.jpg");
+        attendance.setStatus(Attendance.AttendanceStatus.PRESENT);
+        return attendance;
+    }
+}
@@ -0,0 +1,243 @@
+package com.faceattendance.service;
+
+import com.faceattendance.dto.AttendanceRequest;
+import com.faceattendance.dto.AttendanceResponse;
+import com.faceattendance.model.Attendance;
+import com.faceattendance.model.Employee;
+import com.faceattendance.repository.AttendanceRepository;
+import com.faceattendance.repository.AttendanceRepositoryCustom;
+import com.faceattendance.repository.EmployeeRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.awt.image.BufferedImage;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Punch routing by the day cache: a known state saves the database read, and a stale one must
+ * never cost the punch.
+ */
+@ExtendWith(MockitoExtension.class)
+class AttendanceServiceTest {
+
+    @Mock
+    private AttendanceRepository attendanceRepository;
+
+    @Mock
+    private EmployeeRepository employeeRepository;
+
+    @Mock
+    private EmployeeService employeeService;
+
+    @Mock
+    private FaceRecognitionService faceRecognitionService;
+
+    @Mock
+    private PunchOutboxService punchOutboxService;
+
+    @Mock
+    private AttendanceDayCache dayCache;
+
+    @Mock
+    private AttendanceJournal attendanceJournal;
+
+    @InjectMocks
+    private AttendanceService attendanceService;
+
+    private final LocalDate today = LocalDate.now();
+    private final Employee employee = employee();
+
+    @Test
+    void knownOpenSessionIsCheckedOutWithoutCheckingIn() {
+        cacheSays(AttendanceDayCache.SessionState.OPEN);
+        Attendance closed = session(false);
+        when(attendanceRepository.checkOut(eq("tenant-a"), eq(employee), eq(today), any(), isNull())).thenReturn(closed);
+
+        AttendanceResponse response = attendanceService.recordAttendanceDirectly(directPunch());
+
+        assertEquals(closed.getId(), response.getId());
+        assertNotNull(response.getCheckOutTime());
+        verify(attendanceRepository, never()).checkIn(any());
+        verify(dayCache).checkedOut("tenant-a", "employee-1", today);
+    }
+
+    @Test
+    void knownAbsenceChecksInWithoutTryingACheckOut() {
+        cacheSays(AttendanceDayCache.SessionState.NONE);
+        Attendance opened = session(true);
+        when(attendanceRepository.checkIn(any())).thenReturn(new AttendanceRepositoryCustom.CheckIn(opened, true));
+
+        AttendanceResponse response = attendanceService.recordAttendanceDirectly(directPunch());
+
+        assertEquals(opened.getId(), response.getId());
+        assertNull(response.getCheckOutTime());
+        verify(attendanceRepository, never()).checkOut(any(), any(), any(), any(), any());
+        verify(punchOutboxService).enqueue(opened, "EXT-1", false, opened.getCheckInTime());
+    }
+
+    @Test
+    void staleAbsenceChecksOutTheOpenSessionTheCheckInRanInto() {
+        for (AttendanceDayCache.SessionState stale : new AttendanceDayCache.SessionState[] {
+                AttendanceDayCache.SessionState.NONE, AttendanceDayCache.SessionState.CLOSED}) {
+            reset(attendanceRepository, dayCache, punchOutboxService);
+            cacheSays(stale);
+            Attendance closed = session(false);
+            when(attendanceRepository.checkIn(any())).thenReturn(new AttendanceRepositoryCustom.CheckIn(session(true), false));
+            when(attendanceRepository.checkOut(eq("tenant-a"), eq(employee), eq(today), any(), isNull())).thenReturn(closed);
+
+            AttendanceResponse response = attendanceService.recordAttendanceDirectly(directPunch());
+
+            assertEquals(closed.getCheckOutTime(), response.getCheckOutTime(), "cache said " + stale);
+            verify(dayCache).checkedOut("tenant-a", "employee-1", today);
+            verifyNoInteractions(punchOutboxService);
+        }
+    }
+
+    @Test
+    void sessionClosedByAnotherKioskMeanwhileIsReturnedAsIs() {
+        cacheSays(AttendanceDayCache.SessionState.NONE);
+        Attendance open = session(true);
+        when(attendanceRepository.checkIn(any())).thenReturn(new AttendanceRepositoryCustom.CheckIn(open, false));
+        // The open session was closed between the check-in and the check-out
+        when(attendanceRepository.checkOut(any(), any(), any(), any(), any())).thenReturn(null);
+
+        AttendanceResponse response = attendanceService.recordAttendanceDirectly(directPunch());
+
+        assertEquals(open.getId(), response.getId());
+        verify(dayCache, never()).checkedOut(any(), any(), any());
+    }
+
+    @Test
+    void imageUploadWithStaleCacheChecksOut() throws Exception {
+        MockMultipartFile image = new MockMultipartFile("image", new byte[] {1, 2, 3});
+        FaceImageContext faceImage = recognised();
+        when(faceRecognitionService.decodeFaceImage(any(InputStream.class))).thenReturn(faceImage);
+        when(employeeService.findEmployeeByFace(faceImage, "tenant-a")).thenReturn(Optional.of(employee));
+        cacheSays(AttendanceDayCache.SessionState.NONE);
+        Attendance closed = session(false);
+        when(attendanceRepository.checkIn(any())).thenReturn(new AttendanceRepositoryCustom.CheckIn(session(true), false));
+        when(attendanceRepository.checkOut(eq("tenant-a"), eq(employee), eq(today), any(), isNull())).thenReturn(closed);
+
+        AttendanceResponse response = attendanceService.recordAttendanceWithImage(image, "tenant-a");
+
+        assertNotNull(response.getCheckOutTime());
+    }
+
+    @Test
+    void jsonCheckOutWithStaleAbsenceClosesTheOpenSession() {
+        AttendanceRequest request = jsonPunch(true);
+        cacheSays(AttendanceDayCache.SessionState.NONE);
+        Attendance closed = session(false);
+        when(attendanceRepository.checkInOncePerDay(any())).thenReturn(new AttendanceRepositoryCustom.CheckIn(session(true), false));
+        when(attendanceRepository.checkOut(eq("tenant-a"), eq(employee), eq(today), any(), eq("kiosk.jpg"))).thenReturn(closed);
+
+        AttendanceResponse response = attendanceService.recordAttendance(request);
+
+        assertNotNull(response.getCheckOutTime());
+        verify(dayCache).checkedOut("tenant-a", "employee-1", today);
+    }
+
+    @Test
+    void jsonCheckOutOfAClosedDayIsStillRejected() {
+        AttendanceRequest request = jsonPunch(true);
+        cacheSays(AttendanceDayCache.SessionState.CLOSED);
+        when(attendanceRepository.checkInOncePerDay(any())).thenReturn(new AttendanceRepositoryCustom.CheckIn(session(false), false));
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> attendanceService.recordAttendance(request));
+
+        assertEquals("Attendance already recorded for today", e.getMessage());
+        verify(attendanceRepository, never()).checkOut(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void jsonCheckInOfAKnownDayIsRejectedWithoutTheDatabase() {
+        for (AttendanceDayCache.SessionState known : new AttendanceDayCache.SessionState[] {
+                AttendanceDayCache.SessionState.OPEN, AttendanceDayCache.SessionState.CLOSED}) {
+            AttendanceRequest request = jsonPunch(false);
+            cacheSays(known);
+
+            assertThrows(RuntimeException.class, () -> attendanceService.recordAttendance(request));
+        }
+        verifyNoInteractions(attendanceRepository);
+    }
+
+    @Test
+    void unknownStateTriesTheCheckOutFirst() {
+        cacheSays(null);
+        Attendance opened = session(true);
+        when(attendanceRepository.checkOut(any(), any(), any(), any(), any())).thenReturn(null);
+        when(attendanceRepository.checkIn(any())).thenReturn(new AttendanceRepositoryCustom.CheckIn(opened, true));
+
+        AttendanceResponse response = attendanceService.recordAttendanceDirectly(directPunch());
+
+        assertEquals(opened.getId(), response.getId());
+        verify(attendanceRepository, times(1)).checkOut(any(), any(), any(), any(), any());
+    }
+
+    private void cacheSays(AttendanceDayCache.SessionState state) {
+        when(dayCache.get("tenant-a", "employee-1", today)).thenReturn(state);
+    }
+
+    private Map<String, Object> directPunch() {
+        when(employeeRepository.findByExternalId("EXT-1")).thenReturn(employee);
+        Map<String, Object> request = new HashMap<>();
+        request.put("employeeId", "EXT-1");
+        request.put("employeeName", "Test Employee");
+        request.put("punchDate", today.toString());
+        return request;
+    }
+
+    private AttendanceRequest jsonPunch(boolean checkOut) {
+        AttendanceRequest request = new AttendanceRequest();
+        request.setFaceImage(new byte[] {1, 2, 3});
+        request.setTenantId("tenant-a");
+        request.setCheckOut(checkOut);
+        request.setImagePath("kiosk.jpg");
+        FaceImageContext faceImage = recognised();
+        when(faceRecognitionService.decodeFaceImage(request.getFaceImage())).thenReturn(faceImage);
+        when(employeeService.findEmployeeByFace(faceImage, "tenant-a")).thenReturn(Optional.of(employee));
+        return request;
+    }
+
+    private static FaceImageContext recognised() {
+        FaceImageContext faceImage = new FaceImageContext(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB), 8, 8);
+        faceImage.setMatch(new FaceRecognitionService.FaceMatchResult("employee-1", 92.0, true));
+        return faceImage;
+    }
+
+    private Attendance session(boolean open) {
+        Attendance attendance = new Attendance();
+        attendance.setId(open ? "open-session" : "closed-session");
+        attendance.setTenantId("tenant-a");
+        attendance.setEmployee(employee);
+        attendance.setAttendanceDate(today);
+        attendance.setCheckInTime(LocalDateTime.now().minusHours(8));
+        attendance.setStatus(Attendance.AttendanceStatus.PRESENT);
+        attendance.setOpen(open);
+        if (!open) {
+            attendance.setCheckOutTime(LocalDateTime.now());
+        }
+        return attendance;
+    }
+
+    private static Employee employee() {
+        Employee employee = new Employee();
+        employee.setId("employee-1");
+        employee.setTenantId("tenant-a");
+        employee.setName("Test Employee");
+        employee.setExternalId("EXT-1");
+        return employee;
+    }
+}
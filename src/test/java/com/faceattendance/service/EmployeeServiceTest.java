@@ -0,0 +1,85 @@
+package com.faceattendance.service;
+
+import com.faceattendance.model.Employee;
+import com.faceattendance.recognition.FaceTemplate;
+import com.faceattendance.recognition.GallerySettings;
+import com.faceattendance.recognition.TenantGallery;
+import com.faceattendance.repository.EmployeeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+/**
+ * Recognition is confined to the caller's tenant; matching every tenant's employees needs
+ * face.recognition.cross-tenant.enabled.
+ */
+@ExtendWith(MockitoExtension.class)
+class EmployeeServiceTest {
+
+    @Mock
+    private EmployeeRepository employeeRepository;
+
+    @Mock
+    private FaceRecognitionService faceRecognitionService;
+
+    @Mock
+    private FaceGalleryService faceGalleryService;
+
+    @InjectMocks
+    private EmployeeService employeeService;
+
+    private final FaceImageContext faceImage = new FaceImageContext(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB), 8, 8);
+    private final TenantGallery gallery = new TenantGallery("tenant-a", new GallerySettings());
+
+    @BeforeEach
+    void extractAnyImage() {
+        FaceTemplate template = FaceTemplate.fromFeatures(new float[0], new float[0], new float[0], new float[0], false);
+        when(faceRecognitionService.extractFaceTemplate(any(FaceImageContext.class))).thenReturn(template);
+    }
+
+    @Test
+    void matchesOnlyTheGivenTenant() {
+        Employee employee = new Employee();
+        employee.setId("employee-1");
+        when(faceGalleryService.getGallery("tenant-a")).thenReturn(gallery);
+        when(faceRecognitionService.findBestMatch(any(), eq(List.of(gallery))))
+                .thenReturn(new FaceRecognitionService.FaceMatchResult("employee-1", 90.0, true));
+        when(employeeRepository.findById("employee-1")).thenReturn(Optional.of(employee));
+
+        assertSame(employee, employeeService.findEmployeeByFace(faceImage, "tenant-a").orElseThrow());
+        verify(faceGalleryService, never()).getAllGalleries();
+    }
+
+    @Test
+    void refusesRecognitionWithoutTenantByDefault() {
+        assertThrows(RuntimeException.class, () -> employeeService.findEmployeeByFace(faceImage, null));
+        assertThrows(RuntimeException.class, () -> employeeService.findEmployeeByFace(faceImage, " "));
+
+        verify(faceGalleryService, never()).getAllGalleries();
+        verify(faceRecognitionService, never()).findBestMatch(any(), anyCollection());
+    }
+
+    @Test
+    void matchesEveryTenantWhenExplicitlyEnabled() {
+        ReflectionTestUtils.setField(employeeService, "crossTenantEnabled", true);
+        when(faceGalleryService.getAllGalleries()).thenReturn(List.of(gallery));
+        when(faceRecognitionService.findBestMatch(any(), eq(List.of(gallery))))
+                .thenReturn(new FaceRecognitionService.FaceMatchResult(null, 20.0, false));
+
+        assertTrue(employeeService.findEmployeeByFace(faceImage, null).isEmpty());
+        verify(faceGalleryService).getAllGalleries();
+    }
+}
@@ -0,0 +1,60 @@
+package com.faceattendance.service;
+
+import com.faceattendance.recognition.FaceTemplate;
+import com.faceattendance.recognition.GallerySettings;
+import com.faceattendance.recognition.TenantGallery;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A probe extracted in the other mode (face crop vs whole frame) is never scored against a gallery.
+ */
+class FaceRecognitionServiceTest {
+
+    private final Random random = new Random(5);
+    // No cascade is loaded, so the service is in whole-frame mode
+    private final FaceRecognitionService service = new FaceRecognitionService();
+
+    @Test
+    void probeOfTheOtherModeIsNeitherMatchedNorRanked() {
+        TenantGallery gallery = new TenantGallery("tenant", new GallerySettings());
+        FaceTemplate enrolled = randomTemplate(false);
+        gallery.put("employee-1", enrolled);
+        FaceTemplate cropProbe = FaceTemplate.fromFeatures(enrolled.getHistogram(), enrolled.getLbp(),
+                enrolled.getEdge(), enrolled.getTexture(), true);
+
+        assertFalse(service.isFaceCropMode());
+        assertFalse(service.findBestMatch(cropProbe, List.of(gallery)).isMatch());
+        assertTrue(service.findTopMatches(cropProbe, List.of(gallery), 5).isEmpty());
+    }
+
+    @Test
+    void probeOfTheCurrentModeIsRanked() {
+        TenantGallery gallery = new TenantGallery("tenant", new GallerySettings());
+        FaceTemplate enrolled = randomTemplate(false);
+        gallery.put("employee-1", enrolled);
+        gallery.put("employee-2", randomTemplate(false));
+
+        List<FaceRecognitionService.FaceMatchResult> ranked = service.findTopMatches(enrolled, List.of(gallery), 5);
+
+        assertEquals(2, ranked.size());
+        assertEquals("employee-1", ranked.get(0).getEmployeeId());
+    }
+
+    private FaceTemplate randomTemplate(boolean faceCrop) {
+        return FaceTemplate.fromFeatures(randomSection(FaceTemplate.HIST_LENGTH), randomSection(FaceTemplate.LBP_LENGTH),
+                randomSection(FaceTemplate.EDGE_LENGTH), randomSection(FaceTemplate.TEXT_LENGTH), faceCrop);
+    }
+
+    private float[] randomSection(int length) {
+        float[] section = new float[length];
+        for (int i = 0; i < section.length; i++) {
+            section[i] = random.nextInt(200);
+        }
+        return section;
+    }
+}
@@ -0,0 +1,247 @@
+package com.faceattendance.service;
+
+import com.faceattendance.dto.AttendanceResponse;
+import com.faceattendance.model.IdempotencyRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * A key replays its first successful punch, for the same tenant and request only, from memory or
+ * else MongoDB; concurrent retries share one run and failures are never stored.
+ */
+@ExtendWith(MockitoExtension.class)
+class IdempotencyServiceTest {
+
+    private static final byte[] IMAGE = {1, 2, 3, 4};
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private IndexOperations indexOperations;
+
+    @InjectMocks
+    private IdempotencyService service;
+
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @BeforeEach
+    void configure() {
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "ttlHours", 24L);
+        ReflectionTestUtils.setField(service, "cacheSize", 100);
+        service.init();
+        lenient().when(mongoTemplate.indexOps(IdempotencyRecord.class)).thenReturn(indexOperations);
+    }
+
+    @Test
+    void replayIsAnsweredFromMemoryWithoutRunningThePunch() throws Exception {
+        AttendanceResponse first = service.execute("checkin", "tenant-a", "key-1", this::punch, IMAGE, false);
+        AttendanceResponse replay = service.execute("checkin", "tenant-a", " key-1 ", this::punch, IMAGE, false);
+
+        assertSame(first, replay);
+        assertEquals(1, runs.get());
+        // Looked up before and after claiming the key, then never again
+        verify(mongoTemplate, times(2)).findById("checkin:tenant-a:key-1", IdempotencyRecord.class);
+        verify(mongoTemplate).insert(any(IdempotencyRecord.class));
+    }
+
+    @Test
+    void replayMissingFromMemoryIsAnsweredFromMongo() throws Exception {
+        AttendanceResponse stored = response("stored");
+        String fingerprint = IdempotencyService.fingerprint(IMAGE, false);
+        when(mongoTemplate.findById("checkin:tenant-a:key-1", IdempotencyRecord.class)).thenReturn(
+                new IdempotencyRecord("checkin:tenant-a:key-1", "checkin", "tenant-a", fingerprint, stored, LocalDateTime.now()));
+
+        assertSame(stored, service.execute("checkin", "tenant-a", "key-1", this::punch, IMAGE, false));
+        // Now in memory
+        assertSame(stored, service.execute("checkin", "tenant-a", "key-1", this::punch, IMAGE, false));
+
+        assertEquals(0, runs.get());
+        verify(mongoTemplate, times(1)).findById("checkin:tenant-a:key-1", IdempotencyRecord.class);
+        verify(mongoTemplate, never()).insert(any(IdempotencyRecord.class));
+    }
+
+    @Test
+    void expiredRecordIsNotReplayed() throws Exception {
+        when(mongoTemplate.findById("checkin:tenant-a:key-1", IdempotencyRecord.class)).thenReturn(
+                new IdempotencyRecord("checkin:tenant-a:key-1", "checkin", "tenant-a", IdempotencyService.fingerprint(IMAGE),
+                        response("old"), LocalDateTime.now().minusHours(25)));
+
+        AttendanceResponse response = service.execute("checkin", "tenant-a", "key-1", this::punch, (Object) IMAGE);
+
+        assertEquals("punch-1", response.getId());
+    }
+
+    @Test
+    void keyIsScopedByTenantAndEndpoint() throws Exception {
+        AttendanceResponse a = service.execute("checkin", "tenant-a", "1", this::punch, IMAGE);
+        AttendanceResponse b = service.execute("checkin", "tenant-b", "1", this::punch, IMAGE);
+        AttendanceResponse c = service.execute("mark", "tenant-a", "1", this::punch, IMAGE);
+
+        assertEquals(3, runs.get());
+        assertNotEquals(a.getId(), b.getId());
+        assertNotEquals(a.getId(), c.getId());
+        ArgumentCaptor<IdempotencyRecord> stored = ArgumentCaptor.forClass(IdempotencyRecord.class);
+        verify(mongoTemplate, times(3)).insert(stored.capture());
+        assertEquals("checkin:tenant-a:1", stored.getAllValues().get(0).getId());
+        assertEquals("checkin:tenant-b:1", stored.getAllValues().get(1).getId());
+        assertEquals("mark:tenant-a:1", stored.getAllValues().get(2).getId());
+        assertEquals("tenant-b", stored.getAllValues().get(1).getTenantId());
+    }
+
+    @Test
+    void keyReusedForAnotherRequestIsRejected() throws Exception {
+        service.execute("checkin", "tenant-a", "1", this::punch, IMAGE, false);
+
+        assertThrows(IdempotencyService.KeyReusedException.class,
+                () -> service.execute("checkin", "tenant-a", "1", this::punch, new byte[] {9, 9}, false));
+        assertThrows(IdempotencyService.KeyReusedException.class,
+                () -> service.execute("checkin", "tenant-a", "1", this::punch, IMAGE, true));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void keyReusedForAnotherRequestInMongoIsRejected() {
+        when(mongoTemplate.findById("mark-direct:-:1", IdempotencyRecord.class)).thenReturn(
+                new IdempotencyRecord("mark-direct:-:1", "mark-direct", null, "another request", response("theirs"), LocalDateTime.now()));
+
+        assertThrows(IdempotencyService.KeyReusedException.class,
+                () -> service.execute("mark-direct", null, "1", this::punch, Map.of("employeeId", "EXT-1")));
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void fingerprintIgnoresMapOrderAndReadsUploads() throws Exception {
+        Map<String, Object> ordered = new LinkedHashMap<>();
+        ordered.put("employeeId", "EXT-1");
+        ordered.put("punchDate", "2026-03-14");
+        Map<String, Object> reversed = new LinkedHashMap<>();
+        reversed.put("punchDate", "2026-03-14");
+        reversed.put("employeeId", "EXT-1");
+
+        assertEquals(IdempotencyService.fingerprint(ordered), IdempotencyService.fingerprint(reversed));
+        assertEquals(IdempotencyService.fingerprint((Object) IMAGE),
+                IdempotencyService.fingerprint(new MockMultipartFile("image", IMAGE)));
+        assertNotEquals(IdempotencyService.fingerprint("ab", "c"), IdempotencyService.fingerprint("a", "bc"));
+    }
+
+    @Test
+    void failedPunchIsNotStoredAndRunsAgainOnRetry() throws Exception {
+        assertThrows(IllegalStateException.class, () -> service.execute("checkin", "tenant-a", "1", () -> {
+            runs.incrementAndGet();
+            throw new IllegalStateException("Face not recognized");
+        }, IMAGE));
+
+        AttendanceResponse retried = service.execute("checkin", "tenant-a", "1", this::punch, IMAGE);
+
+        assertEquals("punch-2", retried.getId());
+        verify(mongoTemplate, times(1)).insert(any(IdempotencyRecord.class));
+    }
+
+    @Test
+    void concurrentRetryWaitsForTheFirstAttemptAndSharesItsResponse() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<AttendanceResponse> first = pool.submit(() -> service.execute("checkin", "tenant-a", "1", () -> {
+                started.countDown();
+                release.await();
+                return punch();
+            }, IMAGE));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<AttendanceResponse> retry = pool.submit(() -> service.execute("checkin", "tenant-a", "1", this::punch, IMAGE));
+
+            // The retry is parked on the first attempt, not running its own punch
+            assertThrows(TimeoutException.class, () -> retry.get(200, TimeUnit.MILLISECONDS));
+            // A different request under the same key is turned away at once
+            assertThrows(IdempotencyService.KeyReusedException.class,
+                    () -> service.execute("checkin", "tenant-a", "1", this::punch, new byte[] {7}));
+            release.countDown();
+
+            assertSame(first.get(5, TimeUnit.SECONDS), retry.get(5, TimeUnit.SECONDS));
+            assertEquals(1, runs.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentRetrySharesTheFailureWhichIsNotStored() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<AttendanceResponse> first = pool.submit(() -> service.execute("checkin", "tenant-a", "1", () -> {
+                started.countDown();
+                release.await();
+                throw new IllegalStateException("Face not recognized");
+            }, IMAGE));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<AttendanceResponse> retry = pool.submit(() -> service.execute("checkin", "tenant-a", "1", this::punch, IMAGE));
+            assertThrows(TimeoutException.class, () -> retry.get(200, TimeUnit.MILLISECONDS));
+            release.countDown();
+
+            Exception shared = assertThrows(Exception.class, () -> retry.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, shared.getCause());
+            assertThrows(Exception.class, () -> first.get(5, TimeUnit.SECONDS));
+            assertEquals(0, runs.get());
+            verify(mongoTemplate, never()).insert(any(IdempotencyRecord.class));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void ttlIndexIsCreatedWithTheFirstStoredRecordNotAtStartup() throws Exception {
+        verifyNoInteractions(mongoTemplate);
+
+        service.execute("checkin", "tenant-a", "1", this::punch, IMAGE);
+        service.execute("checkin", "tenant-a", "2", this::punch, IMAGE);
+
+        verify(indexOperations, times(1)).ensureIndex(any());
+    }
+
+    @Test
+    void withoutKeyThePunchSimplyRuns() throws Exception {
+        service.execute("checkin", "tenant-a", null, this::punch, IMAGE);
+        service.execute("checkin", "tenant-a", " ", this::punch, IMAGE);
+
+        assertEquals(2, runs.get());
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    private AttendanceResponse punch() {
+        return response("punch-" + runs.incrementAndGet());
+    }
+
+    private static AttendanceResponse response(String id) {
+        AttendanceResponse response = new AttendanceResponse();
+        response.setId(id);
+        return response;
+    }
+}
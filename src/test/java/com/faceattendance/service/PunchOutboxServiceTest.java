@@ -0,0 +1,174 @@
+package com.faceattendance.service;
+
+import com.faceattendance.model.OutboxMessage;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * One dispatch cycle: a due message is leased, and its outcome (delivered, retried after a
+ * capped exponential backoff, or dead-lettered) is recorded only under that lease.
+ */
+@ExtendWith(MockitoExtension.class)
+class PunchOutboxServiceTest {
+
+    private static final LocalDateTime PUNCH_TIME = LocalDateTime.of(2026, 3, 14, 8, 0);
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private ExternalApiService externalApiService;
+
+    @InjectMocks
+    private PunchOutboxService outbox;
+
+    @BeforeEach
+    void configure() {
+        ReflectionTestUtils.setField(outbox, "enabled", true);
+        ReflectionTestUtils.setField(outbox, "maxCycleMs", 60_000L);
+        ReflectionTestUtils.setField(outbox, "batchSize", 1);
+        ReflectionTestUtils.setField(outbox, "maxAttempts", 5);
+        ReflectionTestUtils.setField(outbox, "initialBackoffSeconds", 10L);
+        ReflectionTestUtils.setField(outbox, "maxBackoffSeconds", 60L);
+        ReflectionTestUtils.setField(outbox, "leaseSeconds", 120L);
+        ReflectionTestUtils.setField(outbox, "sweepGraceSeconds", 30L);
+        ReflectionTestUtils.setField(outbox, "tenantLoginId", "kiosk@tenant-a");
+        ReflectionTestUtils.setField(outbox, "tenantPassword", "secret");
+    }
+
+    @Test
+    void claimLeasesTheMostOverdueDueMessage() {
+        ArgumentCaptor<Query> due = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> lease = ArgumentCaptor.forClass(Update.class);
+        when(mongoTemplate.findAndModify(due.capture(), lease.capture(), any(FindAndModifyOptions.class), eq(OutboxMessage.class)))
+                .thenReturn(null);
+
+        LocalDateTime before = LocalDateTime.now();
+        outbox.dispatch();
+        LocalDateTime after = LocalDateTime.now();
+
+        Document query = due.getValue().getQueryObject();
+        assertEquals(OutboxMessage.Status.PENDING, query.get("status"));
+        assertEquals(new Document("nextAttemptAt", 1), due.getValue().getSortObject());
+        Document update = lease.getValue().getUpdateObject();
+        assertEquals(1, update.get("$inc", Document.class).get("attempts"));
+        LocalDateTime leasedUntil = (LocalDateTime) update.get("$set", Document.class).get("nextAttemptAt");
+        assertBetween(before.plusSeconds(120), leasedUntil, after.plusSeconds(120));
+        verifyNoInteractions(externalApiService);
+    }
+
+    @Test
+    void deliveredPunchIsRecordedUnderItsLease() {
+        claims(message(2));
+        when(externalApiService.markAttendanceExternal("EXT-1", false, PUNCH_TIME, "kiosk@tenant-a", "secret")).thenReturn(true);
+
+        Document[] outcome = dispatch();
+
+        assertEquals(new Document("_id", "session-1:IN").append("attempts", 2), outcome[0]);
+        assertEquals(OutboxMessage.Status.DELIVERED, outcome[1].get("$set", Document.class).get("status"));
+        assertTrue(outcome[1].get("$unset", Document.class).containsKey("lastError"));
+    }
+
+    @Test
+    void failedAttemptsBackOffExponentiallyUpToTheCap() {
+        long[] expected = {10, 20, 40, 60};
+        for (int attempts = 1; attempts <= expected.length; attempts++) {
+            reset(mongoTemplate, externalApiService);
+            claims(message(attempts));
+            when(externalApiService.markAttendanceExternal(anyString(), anyBoolean(), any(), anyString(), anyString())).thenReturn(false);
+
+            LocalDateTime before = LocalDateTime.now();
+            Document[] outcome = dispatch();
+            LocalDateTime after = LocalDateTime.now();
+
+            assertEquals(attempts, outcome[0].get("attempts"));
+            Document set = outcome[1].get("$set", Document.class);
+            assertBetween(before.plusSeconds(expected[attempts - 1]), (LocalDateTime) set.get("nextAttemptAt"),
+                    after.plusSeconds(expected[attempts - 1]));
+            assertEquals("MRR did not accept the punch", set.get("lastError"));
+            assertFalse(set.containsKey("status"), "attempt " + attempts + " must stay pending");
+        }
+    }
+
+    @Test
+    void lastAllowedAttemptDeadLettersTheMessage() {
+        claims(message(5));
+        when(externalApiService.markAttendanceExternal(anyString(), anyBoolean(), any(), anyString(), anyString()))
+                .thenThrow(new RuntimeException("MRR unreachable"));
+
+        Document[] outcome = dispatch();
+
+        assertEquals(5, outcome[0].get("attempts"));
+        Document set = outcome[1].get("$set", Document.class);
+        assertEquals(OutboxMessage.Status.DEAD, set.get("status"));
+        assertEquals("MRR unreachable", set.get("lastError"));
+        assertFalse(set.containsKey("nextAttemptAt"));
+    }
+
+    @Test
+    void dispatchedStatsCountTheOutcomes() {
+        claims(message(5));
+        when(externalApiService.markAttendanceExternal(anyString(), anyBoolean(), any(), anyString(), anyString())).thenReturn(false);
+        outbox.dispatch();
+
+        assertEquals(1L, ((LongAdder) ReflectionTestUtils.getField(outbox, "deadLettered")).sum());
+        assertEquals(1L, ((LongAdder) ReflectionTestUtils.getField(outbox, "failedAttempts")).sum());
+    }
+
+    private void claims(OutboxMessage message) {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(OutboxMessage.class)))
+                .thenReturn(message);
+    }
+
+    /**
+     * Run a cycle and return the recorded outcome: the guard query and the update
+     */
+    private Document[] dispatch() {
+        outbox.dispatch();
+        ArgumentCaptor<Query> attempt = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(attempt.capture(), update.capture(), eq(OutboxMessage.class));
+        return new Document[] {attempt.getValue().getQueryObject(), update.getValue().getUpdateObject()};
+    }
+
+    /**
+     * A claimed message: the lease has already counted this attempt
+     */
+    private static OutboxMessage message(int attempts) {
+        OutboxMessage message = new OutboxMessage();
+        message.setId("session-1:IN");
+        message.setTenantId("tenant-a");
+        message.setAttendanceId("session-1");
+        message.setEmployeeId("EXT-1");
+        message.setPunchTime(PUNCH_TIME);
+        message.setStatus(OutboxMessage.Status.PENDING);
+        message.setAttempts(attempts);
+        return message;
+    }
+
+    private static void assertBetween(LocalDateTime from, LocalDateTime actual, LocalDateTime to) {
+        assertFalse(actual.isBefore(from), actual + " is before " + from);
+        assertFalse(actual.isAfter(to), actual + " is after " + to);
+    }
+}
@@ -23,4 +23,4 @@ echo "Time: $(date)"
 echo "----------------------------------------"
 
 # Start the server
-java -jar "$JAR_FILE" --server.port="$PORT"
+java --add-modules jdk.incubator.vector -jar "$JAR_FILE" --server.port="$PORT"